@@ -0,0 +1,55 @@
+package me.snov.newrelic.elasticsearch.benchmarks;
+
+import me.snov.newrelic.elasticsearch.fixtures.FixtureGenerator;
+import me.snov.newrelic.elasticsearch.reporters.NodesStatsReporter;
+import me.snov.newrelic.elasticsearch.services.EpochCounterFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counter lookups and rate calculation of a cycle, one counter per reported field and node
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class EpochCounterBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int nodes;
+
+    private EpochCounterFactory factory;
+    private String[] metricNames;
+    private String[] nodeNames;
+    private long time;
+
+    @Setup
+    public void setUp() {
+        factory = new EpochCounterFactory();
+        metricNames = NodesStatsReporter.REPORTED_FIELDS;
+        nodeNames = new String[nodes];
+        for (int node = 0; node < nodes; node++) {
+            nodeNames[node] = FixtureGenerator.getNodeName(node);
+        }
+        factory.setLimits(EpochCounterFactory.DEFAULT_MAX_IDLE_CYCLES, metricNames.length * nodes);
+        processCycle();
+    }
+
+    @Benchmark
+    public double processCycle() {
+        // One minute per cycle, so that every counter has a rate
+        time += 60000;
+        factory.startCycle();
+        double sum = 0;
+        for (String nodeName : nodeNames) {
+            int nodeId = factory.getNodeId(nodeName);
+            for (String metricName : metricNames) {
+                double rate = factory.process(factory.getMetricId(metricName), nodeId, (double) time, time);
+                if (!Double.isNaN(rate)) {
+                    sum += rate;
+                }
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,67 @@
+package me.snov.newrelic.elasticsearch.benchmarks;
+
+import me.snov.newrelic.elasticsearch.fixtures.FixtureGenerator;
+import me.snov.newrelic.elasticsearch.parsers.ClusterStatsParser;
+import me.snov.newrelic.elasticsearch.parsers.NodesStatsParser;
+import me.snov.newrelic.elasticsearch.responses.ClusterStats;
+import me.snov.newrelic.elasticsearch.responses.NodesStats;
+import me.snov.newrelic.elasticsearch.responses.NodesStatsTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of /_nodes/stats and /_cluster/stats responses of clusters scaled from the test fixtures
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ParserBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int nodes;
+
+    @Param({"1.3.4", "5.1.1"})
+    public String version;
+
+    private byte[] nodesStatsResponse;
+    private byte[] clusterStatsResponse;
+    private NodesStatsParser bindingParser;
+    private NodesStatsParser streamingParser;
+    private ClusterStatsParser clusterStatsParser;
+
+    @Setup
+    public void setUp() throws IOException {
+        String template = FixtureGenerator.readResource("/resources/nodes_stats_" + version + ".json");
+        nodesStatsResponse = FixtureGenerator.scaleNodesStats(template, nodes).getBytes("UTF-8");
+        clusterStatsResponse = FixtureGenerator.readResource("/resources/cluster_stats_" + version + ".json")
+            .getBytes("UTF-8");
+
+        bindingParser = new NodesStatsParser();
+        bindingParser.setStreaming(false);
+        streamingParser = new NodesStatsParser();
+        clusterStatsParser = new ClusterStatsParser();
+    }
+
+    @Benchmark
+    public NodesStats parseNodesStatsBinding() throws IOException {
+        return bindingParser.parse(new ByteArrayInputStream(nodesStatsResponse));
+    }
+
+    @Benchmark
+    public NodesStats parseNodesStatsStreaming() throws IOException {
+        return streamingParser.parse(new ByteArrayInputStream(nodesStatsResponse));
+    }
+
+    @Benchmark
+    public NodesStatsTable parseNodesStatsTable() throws IOException {
+        return streamingParser.parseTable(new ByteArrayInputStream(nodesStatsResponse));
+    }
+
+    @Benchmark
+    public ClusterStats parseClusterStats() throws IOException {
+        return clusterStatsParser.parse(new ByteArrayInputStream(clusterStatsResponse));
+    }
+}
@@ -0,0 +1,59 @@
+package me.snov.newrelic.elasticsearch.benchmarks;
+
+import me.snov.newrelic.elasticsearch.fixtures.FixtureGenerator;
+import me.snov.newrelic.elasticsearch.parsers.NodesStatsParser;
+import me.snov.newrelic.elasticsearch.reporters.MetricBuffer;
+import me.snov.newrelic.elasticsearch.reporters.NodesStatsReporter;
+import me.snov.newrelic.elasticsearch.responses.NodesStats;
+import me.snov.newrelic.elasticsearch.responses.NodesStatsTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One cycle of NodesStatsReporter, counters and metric names are warmed up as in a running agent
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ReporterBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int nodes;
+
+    @Param({"1.3.4", "5.1.1"})
+    public String version;
+
+    private NodesStats nodesStats;
+    private NodesStatsTable nodesStatsTable;
+    private MetricBuffer metrics;
+    private NodesStatsReporter reporter;
+
+    @Setup
+    public void setUp() throws IOException {
+        String template = FixtureGenerator.readResource("/resources/nodes_stats_" + version + ".json");
+        byte[] response = FixtureGenerator.scaleNodesStats(template, nodes).getBytes("UTF-8");
+        nodesStats = new NodesStatsParser().parse(new ByteArrayInputStream(response));
+        nodesStatsTable = new NodesStatsParser().parseTable(new ByteArrayInputStream(response));
+
+        metrics = new MetricBuffer();
+        reporter = new NodesStatsReporter(metrics);
+        reporter.reportNodesStats(nodesStatsTable);
+    }
+
+    @Benchmark
+    public MetricBuffer reportNodesStats() {
+        metrics.clear();
+        reporter.reportNodesStats(nodesStats);
+        return metrics;
+    }
+
+    @Benchmark
+    public MetricBuffer reportNodesStatsTable() {
+        metrics.clear();
+        reporter.reportNodesStats(nodesStatsTable);
+        return metrics;
+    }
+}
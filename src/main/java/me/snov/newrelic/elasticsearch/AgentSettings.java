@@ -0,0 +1,190 @@
+package me.snov.newrelic.elasticsearch;
+
+import com.newrelic.metrics.publish.configuration.ConfigurationException;
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
+import me.snov.newrelic.elasticsearch.reporters.NodesStatsReporter;
+import me.snov.newrelic.elasticsearch.services.AdaptivePollInterval;
+import me.snov.newrelic.elasticsearch.services.CollectorProbe;
+import me.snov.newrelic.elasticsearch.services.CounterSnapshotFile;
+import me.snov.newrelic.elasticsearch.services.EpochCounterFactory;
+import me.snov.newrelic.elasticsearch.services.MetricGroupSchedule;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Settings of an agent from its entry in config/plugin.json, with defaults applied.
+ * Values of the wrong type or out of range are reported as {@link ConfigurationException} before anything is opened.
+ */
+class AgentSettings {
+
+    final String host;
+    final int port;
+    final String protocol;
+    final String basePath;
+    final String username;
+    final String password;
+    // Null to take the cluster name
+    final String name;
+    // Null to keep the default of the parsers
+    final Boolean streamingParser;
+    final boolean nodeFanOut;
+    final int connectTimeout;
+    final int readTimeout;
+    final long pollDeadline;
+    // Cycles after which idle counters are dropped, stretched to outlive the longest interval of a metric group
+    final int counterIdleCycles;
+    final int maxCounters;
+    // Null if the agent polls in every cycle of the Runner
+    final AdaptivePollInterval pollInterval;
+    // Null if every poll requests all metric groups
+    final MetricGroupSchedule metricGroups;
+    // Null if counters are not kept across restarts
+    final String counterSnapshotDir;
+    final long counterSnapshotMaxAge;
+    // Null if New Relic is not probed
+    final URL collectorUrl;
+    // Null if the option is not enabled
+    final Integer prometheusPort;
+    final Integer topIndices;
+    final Integer topSkewedNodes;
+    final Long healthPollInterval;
+
+    private AgentSettings(Map<String, Object> properties) throws ConfigurationException {
+        String host = getString(properties, "host");
+        Long port = getLong(properties, "port");
+        if (host == null || port == null) {
+            throw new ConfigurationException("'host' and 'port' must be specified. Do you have a 'config/plugin.json' file?");
+        }
+        this.host = host;
+        this.port = port.intValue();
+
+        String protocol = getString(properties, "protocol");
+        this.protocol = protocol != null ? protocol : "http";
+        String basePath = getString(properties, "basePath");
+        if (basePath == null) {
+            basePath = "";
+        }
+        if (basePath.endsWith("/")) {
+            basePath = basePath.substring(0, basePath.length() - 1);
+        }
+        this.basePath = basePath;
+        try {
+            new URL(this.protocol, this.host, this.port, this.basePath);
+        } catch (MalformedURLException e) {
+            throw new ConfigurationException(String.format("URL could not be parsed: %s", e.getMessage()));
+        }
+        this.username = getString(properties, "username");
+        this.password = getString(properties, "password");
+        this.name = getString(properties, "name");
+
+        this.streamingParser = getBoolean(properties, "streamingParser");
+        this.nodeFanOut = Boolean.TRUE.equals(getBoolean(properties, "nodeFanOut"));
+        this.connectTimeout = (int) getLong(properties, "connectTimeout",
+            HttpConnectionPool.DEFAULT_CONNECT_TIMEOUT_MILLIS);
+        this.readTimeout = (int) getLong(properties, "readTimeout", HttpConnectionPool.DEFAULT_READ_TIMEOUT_MILLIS);
+        this.pollDeadline = getLong(properties, "pollDeadline", ElasticsearchAgent.DEFAULT_POLL_DEADLINE_MILLIS);
+        this.maxCounters = (int) getLong(properties, "maxCounters", EpochCounterFactory.DEFAULT_MAX_COUNTERS);
+
+        boolean adaptivePolling = Boolean.TRUE.equals(getBoolean(properties, "adaptivePolling"));
+        long minPollInterval = getLong(properties, "minPollInterval", AdaptivePollInterval.DEFAULT_MIN_INTERVAL_MILLIS);
+        long maxPollInterval = getLong(properties, "maxPollInterval", AdaptivePollInterval.DEFAULT_MAX_INTERVAL_MILLIS);
+        Map<String, Object> groupIntervals = getMap(properties, "groupIntervals");
+        try {
+            this.pollInterval = adaptivePolling ? new AdaptivePollInterval(minPollInterval, maxPollInterval) : null;
+            this.metricGroups = groupIntervals != null ? createMetricGroups(groupIntervals) : null;
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException(e.getMessage());
+        }
+
+        int idleCycles = (int) getLong(properties, "counterIdleCycles", EpochCounterFactory.DEFAULT_MAX_IDLE_CYCLES);
+        if (metricGroups != null) {
+            // Counters of a group must outlive the polls which leave the group out
+            long pollSpacing = adaptivePolling ? minPollInterval : AdaptivePollInterval.RUNNER_INTERVAL_MILLIS;
+            idleCycles *= (int) Math.max(1, (metricGroups.getMaxInterval() + pollSpacing - 1) / pollSpacing);
+        }
+        this.counterIdleCycles = idleCycles;
+
+        this.counterSnapshotDir = getString(properties, "counterSnapshotDir");
+        this.counterSnapshotMaxAge = getLong(properties, "counterSnapshotMaxAge",
+            CounterSnapshotFile.DEFAULT_MAX_AGE_MILLIS);
+        String collectorUrl = getString(properties, "collectorUrl");
+        try {
+            this.collectorUrl = Boolean.TRUE.equals(getBoolean(properties, "collectorProbe"))
+                ? new URL(collectorUrl != null ? collectorUrl : CollectorProbe.DEFAULT_URL) : null;
+        } catch (MalformedURLException e) {
+            throw new ConfigurationException(String.format("'collectorUrl' could not be parsed: %s", e.getMessage()));
+        }
+
+        Long prometheusPort = getLong(properties, "prometheusPort");
+        this.prometheusPort = prometheusPort != null ? prometheusPort.intValue() : null;
+        Long topIndices = getPositive(properties, "topIndices");
+        this.topIndices = topIndices != null ? topIndices.intValue() : null;
+        Long topSkewedNodes = getPositive(properties, "topSkewedNodes");
+        this.topSkewedNodes = topSkewedNodes != null ? topSkewedNodes.intValue() : null;
+        this.healthPollInterval = getPositive(properties, "healthPollInterval");
+    }
+
+    static AgentSettings parse(Map<String, Object> properties) throws ConfigurationException {
+        return new AgentSettings(properties);
+    }
+
+    private static MetricGroupSchedule createMetricGroups(Map<String, Object> groupIntervals)
+        throws ConfigurationException {
+        MetricGroupSchedule metricGroups = new MetricGroupSchedule(NodesStatsReporter.REPORTED_FIELDS);
+        for (Map.Entry<String, Object> entry : groupIntervals.entrySet()) {
+            if (!(entry.getValue() instanceof Number)) {
+                throw new ConfigurationException(
+                    String.format("Interval of metric group '%s' must be a number", entry.getKey()));
+            }
+            metricGroups.setInterval(entry.getKey(), ((Number) entry.getValue()).longValue());
+        }
+        return metricGroups;
+    }
+
+    private static String getString(Map<String, Object> properties, String key) throws ConfigurationException {
+        return get(properties, key, String.class, "a string");
+    }
+
+    private static Boolean getBoolean(Map<String, Object> properties, String key) throws ConfigurationException {
+        return get(properties, key, Boolean.class, "true or false");
+    }
+
+    private static Long getLong(Map<String, Object> properties, String key) throws ConfigurationException {
+        Number value = get(properties, key, Number.class, "a number");
+        return value != null ? value.longValue() : null;
+    }
+
+    private static long getLong(Map<String, Object> properties, String key, long defaultValue)
+        throws ConfigurationException {
+        Long value = getLong(properties, key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * @return null if the key is not set
+     */
+    private static Long getPositive(Map<String, Object> properties, String key) throws ConfigurationException {
+        Long value = getLong(properties, key);
+        if (value != null && value <= 0) {
+            throw new ConfigurationException(String.format("'%s' must be positive: %d", key, value));
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getMap(Map<String, Object> properties, String key)
+        throws ConfigurationException {
+        return get(properties, key, Map.class, "an object");
+    }
+
+    private static <T> T get(Map<String, Object> properties, String key, Class<T> type, String expected)
+        throws ConfigurationException {
+        Object value = properties.get(key);
+        if (value != null && !type.isInstance(value)) {
+            throw new ConfigurationException(String.format("'%s' must be %s: %s", key, expected, value));
+        }
+        return type.cast(value);
+    }
+}
@@ -2,29 +2,114 @@ package me.snov.newrelic.elasticsearch;
 
 import com.newrelic.metrics.publish.Agent;
 import com.newrelic.metrics.publish.util.Logger;
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
 import me.snov.newrelic.elasticsearch.interfaces.AgentInterface;
+import me.snov.newrelic.elasticsearch.interfaces.MetricSinkInterface;
+import me.snov.newrelic.elasticsearch.interfaces.NodesStatsSourceInterface;
+import me.snov.newrelic.elasticsearch.interfaces.PublisherStatusInterface;
+import me.snov.newrelic.elasticsearch.parsers.ClusterHealthParser;
 import me.snov.newrelic.elasticsearch.parsers.ClusterStatsParser;
-import me.snov.newrelic.elasticsearch.parsers.NodesStatsParser;
+import me.snov.newrelic.elasticsearch.parsers.IndexStatsParser;
+import me.snov.newrelic.elasticsearch.parsers.PendingTasksParser;
+import me.snov.newrelic.elasticsearch.parsers.ShardStatsParser;
+import me.snov.newrelic.elasticsearch.reporters.AgentStatsReporter;
+import me.snov.newrelic.elasticsearch.reporters.ClusterHealthReporter;
 import me.snov.newrelic.elasticsearch.reporters.ClusterStatsReporter;
+import me.snov.newrelic.elasticsearch.reporters.IndexStatsReporter;
+import me.snov.newrelic.elasticsearch.reporters.MetricBuffer;
 import me.snov.newrelic.elasticsearch.reporters.NodesStatsReporter;
+import me.snov.newrelic.elasticsearch.reporters.ShardStatsReporter;
+import me.snov.newrelic.elasticsearch.responses.ClusterHealth;
+import me.snov.newrelic.elasticsearch.responses.ClusterStats;
+import me.snov.newrelic.elasticsearch.responses.PendingTasks;
+import me.snov.newrelic.elasticsearch.responses.NodesStatsTable;
+import me.snov.newrelic.elasticsearch.services.AdaptivePollInterval;
+import me.snov.newrelic.elasticsearch.services.ClusterStatsService;
+import me.snov.newrelic.elasticsearch.services.CounterSnapshotFile;
+import me.snov.newrelic.elasticsearch.services.MetricGroupSchedule;
+import me.snov.newrelic.elasticsearch.services.MetricNameTable;
+import me.snov.newrelic.elasticsearch.services.NodesStatsService;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
 
 /**
  * Agent for Elasticsearch cluster
  */
-public class ElasticsearchAgent extends Agent implements AgentInterface {
+public class ElasticsearchAgent extends Agent implements AgentInterface, MetricSinkInterface {
 
     private static final String GUID = "me.snov.newrelic-elasticsearch";
     private static final String VERSION = "2.3.2";
 
+    public static final long DEFAULT_POLL_DEADLINE_MILLIS = 30000;
+
     private final String clusterName;
     private final Logger logger;
+    private final ClusterStatsService clusterStatsService = new ClusterStatsService();
+    private final NodesStatsService nodesStatsService = new NodesStatsService();
 
     private ClusterStatsParser clusterStatsParser;
     private ClusterStatsReporter clusterStatsReporter;
-    private NodesStatsParser nodesStatsParser;
+    private NodesStatsSourceInterface nodesStatsParser;
     private NodesStatsReporter nodesStatsReporter;
+    private AgentStatsReporter agentStatsReporter;
+    // Null if per-index stats are not requested
+    private IndexStatsParser indexStatsParser;
+    private IndexStatsReporter indexStatsReporter;
+    // Null if shard skew is not reported
+    private ShardStatsParser shardStatsParser;
+    private ShardStatsReporter shardStatsReporter;
+    // Null if cluster health is not polled between polls
+    private ClusterHealthParser clusterHealthParser;
+    private PendingTasksParser pendingTasksParser;
+    private ClusterHealthReporter clusterHealthReporter;
+    private HttpConnectionPool connectionPool;
+    // Metrics of the requests finished since the last cycle
+    private MetricBuffer metricBuffer;
+    private PollScheduler pollScheduler;
+    private long pollDeadline = DEFAULT_POLL_DEADLINE_MILLIS;
+    // Null if the agent polls in every cycle of the Runner
+    private AdaptivePollInterval pollInterval;
+    // Null if every poll requests all metric groups
+    private MetricGroupSchedule metricGroups;
+    // Null if counters are not kept across restarts
+    private CounterSnapshotFile counterSnapshot;
+    // Null if New Relic is not probed
+    private PublisherStatusInterface publisher;
+    private long undeliveredCycles;
+    // Get metrics of every poll besides New Relic
+    private final List<MetricSinkInterface> metricSinks = new CopyOnWriteArrayList<MetricSinkInterface>();
+
+    // State of the cluster seen by the last poll, drives the adaptive poll interval
+    private volatile boolean clusterRed;
+    private volatile boolean clusterYellow;
+    private volatile double maxQueueSize = Double.NaN;
+
+    // Round of the scheduler this agent has last taken part in
+    private long lastRound;
+
+    // Requests of the poll started by the scheduler, guarded by this
+    private final PollRequest clusterStatsRequest = new PollRequest();
+    private final PollRequest nodesStatsRequest = new PollRequest();
+    private final PollRequest indexStatsRequest = new PollRequest();
+    private final PollRequest shardStatsRequest = new PollRequest();
+    private final List<PollRequest> pollRequests =
+        Arrays.asList(clusterStatsRequest, nodesStatsRequest, indexStatsRequest, shardStatsRequest);
+    private long pollRound;
+    private long pollStartedAt;
+    private long pollFinishedAt;
+    private long pollId;
+    private int pendingRequests;
+    private long nextPollAt;
+    // Health poll started by the scheduler's timer, guarded by this
+    private final PollRequest clusterHealthRequest = new PollRequest();
+
+    // Start of the last poll reported by collectPoll()
+    private long collectedStartedAt;
 
     public ElasticsearchAgent(String clusterName) {
         super(GUID, VERSION);
@@ -39,19 +124,529 @@ public class ElasticsearchAgent extends Agent implements AgentInterface {
 
     @Override
     public void pollCycle() {
+        lastRound = pollScheduler.joinRound(lastRound);
+        collectPoll();
+        agentStatsReporter.reportConnectionPoolStats(connectionPool);
+        agentStatsReporter.reportCompressionStats(connectionPool);
+        if (publisher != null) {
+            agentStatsReporter.reportPublisherStats(undeliveredCycles);
+        }
+    }
+
+    @Override
+    public void reportMetrics(MetricBuffer metrics) {
+        MetricNameTable metricNames = metrics.getMetricNames();
+        synchronized (metrics) {
+            for (int i = 0; i < metrics.size(); i++) {
+                int metricId = metrics.getMetricId(i);
+                reportMetric(metricNames.getName(metricId), metricNames.getUnits(metricId), metrics.getValue(i));
+            }
+        }
+    }
+
+    /**
+     * Submits requests of cluster stats and nodes stats to the executor, unless the previous ones are still running
+     *
+     * @param roundStart Whether the poll is started by a new round rather than by the timer
+     */
+    synchronized void startPoll(ExecutorService executor, long round, boolean roundStart) {
+        if (isPollRunning()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        // Within half a Runner cycle of the due time is close enough, otherwise the poll waits for a later round
+        if (roundStart && pollInterval != null
+            && now < nextPollAt - AdaptivePollInterval.RUNNER_INTERVAL_MILLIS / 2) {
+            return;
+        }
+
+        pollRound = round;
+        pollStartedAt = now;
+        pollFinishedAt = pollStartedAt;
+        pendingRequests = 2 + (indexStatsParser != null ? 1 : 0) + (shardStatsParser != null ? 1 : 0);
+        final long poll = ++pollId;
+        final long startedAt = pollStartedAt;
+
+        // Null if all groups are requested
+        final boolean clusterStatsDue;
+        final Set<String> nodesStatsGroups;
+        if (metricGroups != null) {
+            nodesStatsGroups = metricGroups.getDueGroups(now);
+            clusterStatsDue = nodesStatsGroups.remove(MetricGroupSchedule.CLUSTER);
+        } else {
+            nodesStatsGroups = null;
+            clusterStatsDue = true;
+        }
+
+        // Per-index and per-shard stats go along with the indices group of nodes stats
+        final boolean indexStatsDue = nodesStatsGroups == null || nodesStatsGroups.contains("indices");
+
+        // Requests run at the same time, each one is reported as soon as it arrives
+        submitRequest(executor, clusterStatsRequest, poll, new Runnable() {
+            @Override
+            public void run() {
+                if (clusterStatsDue) {
+                    pollClusterStats(startedAt);
+                }
+            }
+        });
+        submitRequest(executor, nodesStatsRequest, poll, new Runnable() {
+            @Override
+            public void run() {
+                if (nodesStatsGroups == null || !nodesStatsGroups.isEmpty()) {
+                    pollNodesStats(startedAt, nodesStatsGroups);
+                }
+            }
+        });
+        if (indexStatsParser != null) {
+            submitRequest(executor, indexStatsRequest, poll, new Runnable() {
+                @Override
+                public void run() {
+                    if (indexStatsDue) {
+                        pollIndexStats();
+                    }
+                }
+            });
+        }
+        if (shardStatsParser != null) {
+            submitRequest(executor, shardStatsRequest, poll, new Runnable() {
+                @Override
+                public void run() {
+                    if (indexStatsDue) {
+                        pollShardStats();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Submits a request of cluster health to the executor, unless the previous one is still running.
+     * Health polls are independent of the polls of stats, their metrics go with the next cycle of the Runner.
+     */
+    synchronized void startHealthPoll(ExecutorService executor) {
+        if (clusterHealthParser == null || clusterHealthRequest.isRunning()) {
+            return;
+        }
+        submitRequest(executor, clusterHealthRequest, 0, new Runnable() {
+            @Override
+            public void run() {
+                pollClusterHealth();
+            }
+        });
+    }
+
+    private boolean isPollRunning() {
+        for (PollRequest request : pollRequests) {
+            if (request.isRunning()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the request on the executor, unless its poll is abandoned before a worker gets to it.
+     * Connections it leases belong to the request, so that they can be aborted without touching other requests.
+     */
+    private void submitRequest(ExecutorService executor, final PollRequest request, long poll, final Runnable work) {
+        request.submit(poll);
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (!startRequest(request)) {
+                    return;
+                }
+                connectionPool.setOwner(request);
+                try {
+                    work.run();
+                } finally {
+                    connectionPool.setOwner(null);
+                    finishRequest(request);
+                }
+            }
+        });
+    }
+
+    private synchronized boolean startRequest(PollRequest request) {
+        if (request.start()) {
+            return true;
+        }
+        request.finish();
+        notifyAll();
+        return false;
+    }
+
+    /**
+     * Passes metrics of the request on to the next cycle, unless its poll has missed the deadline
+     */
+    private synchronized void finishRequest(PollRequest request) {
+        request.finish();
+        notifyAll();
+        if (!request.isAbandoned()) {
+            metricBuffer.addAll(request.getMetrics());
+        }
+        request.getMetrics().clear();
+        // Health poll, or request of a poll that missed its deadline
+        if (request == clusterHealthRequest || request.isAbandoned() || request.getPollId() != pollId) {
+            return;
+        }
+        pollFinishedAt = System.currentTimeMillis();
+        if (--pendingRequests == 0 && pollInterval != null) {
+            scheduleNextPoll();
+        }
+    }
+
+
+    private void pollClusterStats(long startedAt) {
+        boolean failed = true;
         try {
-            clusterStatsReporter.reportClusterStats(clusterStatsParser.request());
-            nodesStatsReporter.reportNodesStats(nodesStatsParser.request());
+            ClusterStats clusterStats = clusterStatsParser.request();
+            clusterStatsReporter.reportClusterStats(clusterStats);
+            clusterRed = clusterStatsService.isRed(clusterStats);
+            clusterYellow = clusterStatsService.isYellow(clusterStats);
+            if (metricGroups != null) {
+                metricGroups.setPolled(Collections.singleton(MetricGroupSchedule.CLUSTER), startedAt);
+            }
+            failed = false;
         } catch (IOException e) {
-            logger.error("Unable to perform poll cycle", e);
+            logger.error("Unable to request cluster stats", e);
+        } catch (RuntimeException e) {
+            logger.error("Unable to report cluster stats", e);
+        } finally {
+            // Component/V1/Agent/Errors/ClusterStats
+            clusterStatsRequest.getMetrics().reportMetric("V1/Agent/Errors/ClusterStats", "errors", failed ? 1 : 0);
         }
     }
 
-    public void configure(ClusterStatsParser clusterStatsParser, ClusterStatsReporter clusterStatsReporter,
-                          NodesStatsParser nodesStatsParser, NodesStatsReporter nodesStatsReporter) {
+    /**
+     * @param groups Metric groups to request, null for all
+     */
+    private void pollNodesStats(long startedAt, Set<String> groups) {
+        boolean failed = true;
+        try {
+            if (groups != null) {
+                nodesStatsParser.setMetricGroups(groups);
+            }
+            // Version known from the previous cluster stats, it only changes on a rolling upgrade
+            nodesStatsParser.setClusterVersion(clusterStatsParser.getClusterVersion());
+            nodesStatsParser.setNodeCount(clusterStatsParser.getNodeCount());
+            NodesStatsTable nodesStats = nodesStatsParser.requestTable();
+            nodesStatsReporter.reportNodesStats(nodesStats);
+            saveCounters();
+            if (groups == null || groups.contains("thread_pool")) {
+                maxQueueSize = nodesStatsService.getMaxQueueSize(nodesStats);
+            }
+            if (groups != null) {
+                metricGroups.setPolled(groups, startedAt);
+            }
+            failed = false;
+        } catch (IOException e) {
+            logger.error("Unable to request nodes stats", e);
+        } catch (RuntimeException e) {
+            logger.error("Unable to report nodes stats", e);
+        } finally {
+            // Component/V1/Agent/Errors/NodesStats
+            nodesStatsRequest.getMetrics().reportMetric("V1/Agent/Errors/NodesStats", "errors", failed ? 1 : 0);
+        }
+    }
+
+    private void pollIndexStats() {
+        boolean failed = true;
+        try {
+            indexStatsParser.setClusterVersion(clusterStatsParser.getClusterVersion());
+            indexStatsReporter.reportIndexStats(indexStatsParser.request());
+            failed = false;
+        } catch (IOException e) {
+            logger.error("Unable to request index stats", e);
+        } catch (RuntimeException e) {
+            logger.error("Unable to report index stats", e);
+        } finally {
+            // Component/V1/Agent/Errors/IndexStats
+            indexStatsRequest.getMetrics().reportMetric("V1/Agent/Errors/IndexStats", "errors", failed ? 1 : 0);
+        }
+    }
+
+    private void pollShardStats() {
+        boolean failed = true;
+        try {
+            shardStatsReporter.reportShardStats(shardStatsParser.request());
+            failed = false;
+        } catch (IOException e) {
+            logger.error("Unable to request shard stats", e);
+        } catch (RuntimeException e) {
+            logger.error("Unable to report shard stats", e);
+        } finally {
+            // Component/V1/Agent/Errors/ShardStats
+            shardStatsRequest.getMetrics().reportMetric("V1/Agent/Errors/ShardStats", "errors", failed ? 1 : 0);
+        }
+    }
+
+    private void pollClusterHealth() {
+        boolean failed = true;
+        try {
+            ClusterHealth clusterHealth = clusterHealthParser.request();
+            // Tasks are only listed while some are pending, and only if health doesn't tell their longest wait
+            PendingTasks pendingTasks = clusterStatsService.isPendingTasksRequestNeeded(clusterHealth)
+                ? pendingTasksParser.request() : null;
+            clusterHealthReporter.reportClusterHealth(clusterHealth, pendingTasks);
+            clusterRed = clusterStatsService.isRed(clusterHealth);
+            clusterYellow = clusterStatsService.isYellow(clusterHealth);
+            failed = false;
+        } catch (IOException e) {
+            logger.error("Unable to request cluster health", e);
+        } catch (RuntimeException e) {
+            logger.error("Unable to report cluster health", e);
+        } finally {
+            // Component/V1/Agent/Errors/ClusterHealth
+            clusterHealthRequest.getMetrics().reportMetric("V1/Agent/Errors/ClusterHealth", "errors", failed ? 1 : 0);
+        }
+    }
+
+    private void saveCounters() {
+        if (counterSnapshot == null) {
+            return;
+        }
+        try {
+            counterSnapshot.save(nodesStatsReporter, System.currentTimeMillis());
+        } catch (IOException e) {
+            logger.error("Unable to save counters to ", counterSnapshot.getFile(), e);
+        }
+    }
+
+    private void scheduleNextPoll() {
+        long interval = pollInterval.next(clusterRed, clusterYellow, maxQueueSize, pollFinishedAt - pollStartedAt);
+        nextPollAt = pollStartedAt + interval;
+        // Component/V1/Agent/PollInterval
+        metricBuffer.reportMetric("V1/Agent/PollInterval", "milliseconds", interval);
+
+        // Polls further apart are started by the rounds they are due in
+        if (interval < AdaptivePollInterval.RUNNER_INTERVAL_MILLIS) {
+            pollScheduler.schedule(this, Math.max(nextPollAt - System.currentTimeMillis(), 0));
+        }
+    }
+
+    /**
+     * Reports metrics of all requests finished since the last cycle, the Runner aggregates them.
+     * Requests of the current round which have not finished by the deadline are abandoned, their metrics are dropped.
+     */
+    private void collectPoll() {
+        try {
+            awaitPoll();
+        } finally {
+            synchronized (metricBuffer) {
+                publishMetrics(metricBuffer);
+                metricBuffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Waits until the requests of the current round are finished or the deadline has passed
+     */
+    private void awaitPoll() {
+        long poll;
+        long round;
+        long startedAt;
+        synchronized (this) {
+            poll = pollId;
+            round = pollRound;
+            startedAt = pollStartedAt;
+        }
+        if (poll == 0) {
+            return;
+        }
+
+        // Polls between rounds belong to the previous one, they are waited for as well
+        if (round != lastRound && pollInterval == null) {
+            logger.warn("Poll of ", clusterName, " started ",
+                System.currentTimeMillis() - startedAt, " ms ago is still running, skipping cycle");
+            return;
+        }
+
+        long deadline = startedAt + pollDeadline;
+        long finishedAt;
+        int cancelled = 0;
+        int aborted = 0;
+        synchronized (this) {
+            try {
+                long now = System.currentTimeMillis();
+                while (isPollRunning() && now < deadline) {
+                    wait(deadline - now);
+                    now = System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            for (PollRequest request : pollRequests) {
+                if (!request.isRunning() || request.isAbandoned()) {
+                    continue;
+                }
+                // Requests still queued are skipped by their worker, the ones in flight lose their connections
+                if (request.abandon()) {
+                    connectionPool.abort(request);
+                    aborted++;
+                } else {
+                    cancelled++;
+                }
+            }
+            finishedAt = pollFinishedAt;
+        }
+
+        if (cancelled + aborted > 0) {
+            logger.warn("Poll of ", clusterName, " has not finished within ", pollDeadline, " ms");
+            finishedAt = System.currentTimeMillis();
+        }
+        // Round without a poll of this agent
+        if (startedAt == collectedStartedAt) {
+            return;
+        }
+        collectedStartedAt = startedAt;
+        // Component/V1/Agent/PollDuration
+        reportMetric("V1/Agent/PollDuration", "milliseconds", finishedAt - startedAt);
+        // Component/V1/Agent/Timeouts/Cancelled
+        reportMetric("V1/Agent/Timeouts/Cancelled", "requests", cancelled);
+        // Component/V1/Agent/Timeouts/Aborted
+        reportMetric("V1/Agent/Timeouts/Aborted", "requests", aborted);
+    }
+
+    /**
+     * Passes metrics of the poll to the other sinks and reports them, counting cycles reported while New Relic can't
+     * be reached. The publisher keeps undelivered metrics in memory and sends them aggregated with its next request,
+     * for up to 20 minutes, then drops them. The plugin API takes no timestamps, so keeping them any longer
+     * wouldn't restore the gap either.
+     *
+     * The publisher delivers metrics after pollCycle() returns and doesn't tell its agents whether that worked, so
+     * the probe decides.
+     */
+    private void publishMetrics(MetricBuffer metrics) {
+        for (MetricSinkInterface sink : metricSinks) {
+            try {
+                sink.reportMetrics(metrics);
+            } catch (RuntimeException e) {
+                logger.error("Unable to pass metrics to ", sink, e);
+            }
+        }
+
+        if (publisher != null && !publisher.isReachable()) {
+            undeliveredCycles++;
+        }
+        reportMetrics(metrics);
+    }
+
+    public void configure(AgentStatsReporter agentStatsReporter, HttpConnectionPool connectionPool) {
+        this.agentStatsReporter = agentStatsReporter;
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * @param metrics Buffer the reporter writes to, its metrics are published once the request has finished
+     */
+    public synchronized void setClusterStats(ClusterStatsParser clusterStatsParser,
+                                             ClusterStatsReporter clusterStatsReporter, MetricBuffer metrics) {
         this.clusterStatsParser = clusterStatsParser;
         this.clusterStatsReporter = clusterStatsReporter;
+        clusterStatsRequest.setMetrics(metrics);
+    }
+
+    /**
+     * @param metrics Buffer the reporter writes to, its metrics are published once the request has finished
+     */
+    public synchronized void setNodesStats(NodesStatsSourceInterface nodesStatsParser,
+                                           NodesStatsReporter nodesStatsReporter, MetricBuffer metrics) {
         this.nodesStatsParser = nodesStatsParser;
         this.nodesStatsReporter = nodesStatsReporter;
+        nodesStatsRequest.setMetrics(metrics);
+    }
+
+    /**
+     * Requests per-index stats along with nodes stats, and reports the hottest indices
+     */
+    public synchronized void setIndexStats(IndexStatsParser indexStatsParser, IndexStatsReporter indexStatsReporter,
+                                           MetricBuffer metrics) {
+        this.indexStatsParser = indexStatsParser;
+        this.indexStatsReporter = indexStatsReporter;
+        indexStatsRequest.setMetrics(metrics);
+    }
+
+    /**
+     * Requests the shard list along with nodes stats, and reports shard skew of every node
+     */
+    public synchronized void setShardStats(ShardStatsParser shardStatsParser, ShardStatsReporter shardStatsReporter,
+                                           MetricBuffer metrics) {
+        this.shardStatsParser = shardStatsParser;
+        this.shardStatsReporter = shardStatsReporter;
+        shardStatsRequest.setMetrics(metrics);
+    }
+
+    /**
+     * Polls cluster health and pending tasks between the polls of stats, see {@link PollScheduler#scheduleHealthPolls}
+     */
+    public synchronized void setClusterHealth(ClusterHealthParser clusterHealthParser,
+                                              PendingTasksParser pendingTasksParser,
+                                              ClusterHealthReporter clusterHealthReporter, MetricBuffer metrics) {
+        this.clusterHealthParser = clusterHealthParser;
+        this.pendingTasksParser = pendingTasksParser;
+        this.clusterHealthReporter = clusterHealthReporter;
+        clusterHealthRequest.setMetrics(metrics);
+    }
+
+    /**
+     * Polls at an interval driven by cluster health and load instead of in every cycle of the Runner
+     */
+    public synchronized void setPollInterval(AdaptivePollInterval pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Requests every metric group at its own interval instead of all of them in every poll
+     */
+    public synchronized void setMetricGroups(MetricGroupSchedule metricGroups) {
+        this.metricGroups = metricGroups;
+    }
+
+    /**
+     * Restores counters of the previous run from the snapshot, and keeps it up to date after every poll
+     *
+     * @param maxAge Milliseconds after which saved counters are discarded
+     */
+    public void setCounterSnapshot(CounterSnapshotFile counterSnapshot, long maxAge) {
+        try {
+            int restored = counterSnapshot.load(nodesStatsReporter, System.currentTimeMillis() - maxAge);
+            logger.info("Restored ", restored, " counters of ", clusterName, " from ", counterSnapshot.getFile());
+        } catch (IOException e) {
+            logger.warn("Unable to restore counters from ", counterSnapshot.getFile(), ": ", e.getMessage());
+        }
+        synchronized (this) {
+            this.counterSnapshot = counterSnapshot;
+        }
+    }
+
+    /**
+     * Counts cycles reported while the publisher can't reach New Relic
+     */
+    public synchronized void setPublisherStatus(PublisherStatusInterface publisher) {
+        this.publisher = publisher;
+    }
+
+    /**
+     * Passes metrics of every poll to the sink as well
+     */
+    public void addMetricSink(MetricSinkInterface sink) {
+        metricSinks.add(sink);
+    }
+
+    /**
+     * @param metricBuffer Buffer metrics of finished requests are collected in until the next cycle, it must share
+     *                     the {@link MetricNameTable} of the buffers of the requests
+     * @param pollDeadline Time in milliseconds the agent waits for its poll
+     */
+    public void configurePolling(PollScheduler pollScheduler, MetricBuffer metricBuffer, long pollDeadline) {
+        this.pollScheduler = pollScheduler;
+        this.metricBuffer = metricBuffer;
+        this.pollDeadline = pollDeadline;
+        pollScheduler.register(this);
     }
 }
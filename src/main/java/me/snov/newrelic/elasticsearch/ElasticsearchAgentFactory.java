@@ -3,59 +3,177 @@ package me.snov.newrelic.elasticsearch;
 import com.newrelic.metrics.publish.Agent;
 import com.newrelic.metrics.publish.AgentFactory;
 import com.newrelic.metrics.publish.configuration.ConfigurationException;
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
+import me.snov.newrelic.elasticsearch.interfaces.NodesStatsSourceInterface;
+import me.snov.newrelic.elasticsearch.parsers.ClusterHealthParser;
 import me.snov.newrelic.elasticsearch.parsers.ClusterStatsParser;
+import me.snov.newrelic.elasticsearch.parsers.IndexStatsParser;
+import me.snov.newrelic.elasticsearch.parsers.PendingTasksParser;
+import me.snov.newrelic.elasticsearch.parsers.ShardStatsParser;
+import me.snov.newrelic.elasticsearch.parsers.NodesStatsFanOutParser;
 import me.snov.newrelic.elasticsearch.parsers.NodesStatsParser;
+import me.snov.newrelic.elasticsearch.reporters.AgentStatsReporter;
+import me.snov.newrelic.elasticsearch.reporters.ClusterHealthReporter;
 import me.snov.newrelic.elasticsearch.reporters.ClusterStatsReporter;
+import me.snov.newrelic.elasticsearch.reporters.IndexStatsReporter;
+import me.snov.newrelic.elasticsearch.reporters.ShardStatsReporter;
+import me.snov.newrelic.elasticsearch.reporters.MetricBuffer;
 import me.snov.newrelic.elasticsearch.reporters.NodesStatsReporter;
+import me.snov.newrelic.elasticsearch.services.CollectorProbe;
+import me.snov.newrelic.elasticsearch.services.CounterSnapshotFile;
+import me.snov.newrelic.elasticsearch.services.MetricNameTable;
+import me.snov.newrelic.elasticsearch.services.PrometheusEndpoint;
+import me.snov.newrelic.elasticsearch.services.PrometheusExporter;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
 import java.util.Map;
 
 public class ElasticsearchAgentFactory extends AgentFactory {
 
+    // Polls of all agents run on the same worker pool
+    private final PollScheduler pollScheduler = new PollScheduler();
+    // Agents which probe the same URL share the probe
+    private final Map<String, CollectorProbe> collectorProbes = new HashMap<String, CollectorProbe>();
+    // Agents configured with the same port are served by one endpoint
+    private final Map<Integer, PrometheusEndpoint> prometheusEndpoints = new HashMap<Integer, PrometheusEndpoint>();
+
     @Override
     public Agent createConfiguredAgent(Map<String, Object> properties) throws ConfigurationException {
-        String host = (String) properties.get("host");
-        String protocol = (String) properties.get("protocol");
-        String basePath = (String) properties.get("basePath");
-        String username = (String) properties.get("username");
-        String password = (String) properties.get("password");
-        Long port = (Long) properties.get("port");
-        String name = (String) properties.get("name");
-
-        if (host == null || port == null) {
-            throw new ConfigurationException("'host' and 'port' must be specified. Do you have a 'config/plugin.json' file?");
-        }
-
-        if (protocol == null) {
-            protocol = "http";
-        }
+        AgentSettings settings = AgentSettings.parse(properties);
+        String protocol = settings.protocol;
+        String host = settings.host;
+        int port = settings.port;
+        String basePath = settings.basePath;
+        String username = settings.username;
+        String password = settings.password;
 
-        if (basePath == null) {
-            basePath = "";
-        }
-
-        if (basePath.endsWith("/")) {
-            basePath = basePath.substring(0, basePath.length() - 1);
-        }
+        // Connections are shared by all parsers of the agent and kept open between poll cycles
+        // With fan-out, the pool grows to a connection per node once the nodes are discovered
+        HttpConnectionPool connectionPool = new HttpConnectionPool();
+        connectionPool.setTimeouts(settings.connectTimeout, settings.readTimeout);
 
+        // The pool is closed unless the agent owning it has been created
+        boolean created = false;
         try {
-            ClusterStatsParser clusterStatsParser = new ClusterStatsParser(protocol, host, port.intValue(), basePath, username, password);
-            String clusterName = name != null && name.length() > 0  ? name  : clusterStatsParser.request().cluster_name;
+            ClusterStatsParser clusterStatsParser = new ClusterStatsParser(protocol, host, port, basePath,
+                username, password, connectionPool);
+            String clusterName = settings.name != null && settings.name.length() > 0
+                ? settings.name : clusterStatsParser.request().cluster_name;
             ElasticsearchAgent agent = new ElasticsearchAgent(clusterName);
 
-            ClusterStatsReporter clusterStatsReporter = new ClusterStatsReporter(agent);
-            NodesStatsParser nodeStatsParser = new NodesStatsParser(protocol, host, port.intValue(), basePath, username, password);
-            NodesStatsReporter nodeStatsReporter = new NodesStatsReporter(agent);
-            agent.configure(clusterStatsParser, clusterStatsReporter, nodeStatsParser, nodeStatsReporter);
+            // Reporters run on a worker thread, each request has a buffer of its own until it has finished.
+            // Metrics of finished requests are passed to the agent in pollCycle()
+            MetricBuffer metricBuffer = new MetricBuffer();
+            MetricNameTable metricNames = metricBuffer.getMetricNames();
+            MetricBuffer clusterStatsMetrics = new MetricBuffer(metricNames);
+            ClusterStatsReporter clusterStatsReporter = new ClusterStatsReporter(clusterStatsMetrics);
+            NodesStatsSourceInterface nodeStatsParser;
+            if (settings.nodeFanOut) {
+                NodesStatsFanOutParser fanOutParser = new NodesStatsFanOutParser(protocol, host, port,
+                    basePath, username, password, connectionPool);
+                if (settings.streamingParser != null) {
+                    fanOutParser.setStreaming(settings.streamingParser);
+                }
+                // Nodes which haven't responded are of no use once the poll has missed its deadline
+                fanOutParser.setTimeout(settings.pollDeadline);
+                nodeStatsParser = fanOutParser;
+            } else {
+                NodesStatsParser parser = new NodesStatsParser(protocol, host, port, basePath,
+                    username, password, connectionPool);
+                if (settings.streamingParser != null) {
+                    parser.setStreaming(settings.streamingParser);
+                }
+                nodeStatsParser = parser;
+            }
+            nodeStatsParser.setClusterVersion(clusterStatsParser.getClusterVersion());
+            MetricBuffer nodesStatsMetrics = new MetricBuffer(metricNames);
+            NodesStatsReporter nodeStatsReporter = new NodesStatsReporter(nodesStatsMetrics);
+            nodeStatsReporter.setCounterLimits(settings.counterIdleCycles, settings.maxCounters);
+            if (settings.topIndices != null) {
+                IndexStatsParser indexStatsParser = new IndexStatsParser(protocol, host, port, basePath,
+                    username, password, connectionPool, settings.topIndices);
+                indexStatsParser.getRanking().setCounterLimits(settings.counterIdleCycles, settings.maxCounters);
+                MetricBuffer indexStatsMetrics = new MetricBuffer(metricNames);
+                agent.setIndexStats(indexStatsParser, new IndexStatsReporter(indexStatsMetrics), indexStatsMetrics);
+            }
+            if (settings.topSkewedNodes != null) {
+                ShardStatsParser shardStatsParser = new ShardStatsParser(protocol, host, port, basePath,
+                    username, password, connectionPool);
+                shardStatsParser.getShardSkew().setCounterLimits(settings.counterIdleCycles, settings.maxCounters);
+                MetricBuffer shardStatsMetrics = new MetricBuffer(metricNames);
+                agent.setShardStats(shardStatsParser,
+                    new ShardStatsReporter(shardStatsMetrics, settings.topSkewedNodes), shardStatsMetrics);
+            }
+            AgentStatsReporter agentStatsReporter = new AgentStatsReporter(agent);
+            agent.configure(agentStatsReporter, connectionPool);
+            agent.setClusterStats(clusterStatsParser, clusterStatsReporter, clusterStatsMetrics);
+            agent.setNodesStats(nodeStatsParser, nodeStatsReporter, nodesStatsMetrics);
+            agent.setPollInterval(settings.pollInterval);
+            agent.setMetricGroups(settings.metricGroups);
+            if (settings.counterSnapshotDir != null) {
+                agent.setCounterSnapshot(
+                    new CounterSnapshotFile(
+                        new File(settings.counterSnapshotDir, CounterSnapshotFile.getFileName(clusterName))),
+                    settings.counterSnapshotMaxAge);
+            }
+            if (settings.collectorUrl != null) {
+                agent.setPublisherStatus(getCollectorProbe(settings.collectorUrl));
+            }
+            if (settings.prometheusPort != null) {
+                PrometheusExporter exporter = new PrometheusExporter(clusterName);
+                getPrometheusEndpoint(settings.prometheusPort).register(exporter);
+                agent.addMetricSink(exporter);
+            }
+            if (settings.healthPollInterval != null) {
+                MetricBuffer clusterHealthMetrics = new MetricBuffer(metricNames);
+                agent.setClusterHealth(
+                    new ClusterHealthParser(protocol, host, port, basePath, username, password, connectionPool),
+                    new PendingTasksParser(protocol, host, port, basePath, username, password, connectionPool),
+                    new ClusterHealthReporter(clusterHealthMetrics), clusterHealthMetrics);
+            }
+            agent.configurePolling(pollScheduler, metricBuffer, settings.pollDeadline);
+            if (settings.healthPollInterval != null) {
+                pollScheduler.scheduleHealthPolls(agent, settings.healthPollInterval);
+            }
 
+            created = true;
             return agent;
         } catch (MalformedURLException e) {
             throw new ConfigurationException(String.format("URL could not be parsed: %s", e.getMessage()));
         } catch (IOException e) {
             throw new ConfigurationException(
                     String.format("Can't connect to elasticsearch at %s:%d: %s", host, port, e.getMessage()), e);
+        } finally {
+            if (!created) {
+                connectionPool.close();
+            }
+        }
+    }
+
+    private synchronized PrometheusEndpoint getPrometheusEndpoint(int port) throws ConfigurationException {
+        PrometheusEndpoint endpoint = prometheusEndpoints.get(port);
+        if (endpoint == null) {
+            try {
+                endpoint = new PrometheusEndpoint(port);
+            } catch (IOException e) {
+                throw new ConfigurationException(
+                    String.format("Can't serve Prometheus metrics on port %d: %s", port, e.getMessage()), e);
+            }
+            prometheusEndpoints.put(port, endpoint);
+        }
+        return endpoint;
+    }
+
+    private synchronized CollectorProbe getCollectorProbe(URL url) {
+        CollectorProbe probe = collectorProbes.get(url.toString());
+        if (probe == null) {
+            probe = new CollectorProbe(url);
+            collectorProbes.put(url.toString(), probe);
         }
+        return probe;
     }
 }
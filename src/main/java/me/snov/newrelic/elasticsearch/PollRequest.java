@@ -0,0 +1,81 @@
+package me.snov.newrelic.elasticsearch;
+
+import me.snov.newrelic.elasticsearch.reporters.MetricBuffer;
+
+/**
+ * Request of a poll run on a worker thread, its state is guarded by the agent.
+ *
+ * Whether a request is still running is tracked here rather than by its Future: a cancelled Future is done right
+ * away, while its worker thread may still be busy with the request.
+ * Its metrics are kept apart until it has finished, so that the ones of a request which missed the deadline
+ * can be dropped without the ones of the other requests.
+ */
+class PollRequest {
+
+    // Null until the request is configured
+    private MetricBuffer metrics;
+
+    private long pollId;
+    // From submission until the worker is done with the request, or has skipped it
+    private boolean running;
+    private boolean started;
+    // Poll missed its deadline while the request was running
+    private boolean abandoned;
+
+    void submit(long pollId) {
+        this.pollId = pollId;
+        running = true;
+        started = false;
+        abandoned = false;
+    }
+
+    /**
+     * Called by the worker before it sends the request
+     *
+     * @return false if the poll was abandoned while the request waited for a worker, it must be skipped then
+     */
+    boolean start() {
+        if (abandoned) {
+            return false;
+        }
+        started = true;
+        return true;
+    }
+
+    void finish() {
+        running = false;
+    }
+
+    /**
+     * Called once the poll has missed its deadline
+     *
+     * @return Whether the request is in flight, rather than still waiting for a worker
+     */
+    boolean abandon() {
+        abandoned = true;
+        return started;
+    }
+
+    void setMetrics(MetricBuffer metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return Buffer the reporters of the request write to
+     */
+    MetricBuffer getMetrics() {
+        return metrics;
+    }
+
+    long getPollId() {
+        return pollId;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    boolean isAbandoned() {
+        return abandoned;
+    }
+}
@@ -0,0 +1,84 @@
+package me.snov.newrelic.elasticsearch;
+
+import me.snov.newrelic.elasticsearch.services.DaemonThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Polls all agents in parallel on a bounded pool of worker threads.
+ *
+ * The Runner calls pollCycle() of every agent one after another. The first agent called in a cycle starts a new
+ * round, which submits polls of all agents at once, then every agent waits only for its own poll.
+ * Agents with an adaptive poll interval skip rounds they are not due in, and poll between rounds on a timer.
+ * Cluster health is polled on the timer as well, at a fixed rate independent of the rounds.
+ */
+public class PollScheduler {
+
+    public static final int MAX_THREADS = 16;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService timer;
+    private final List<ElasticsearchAgent> agents;
+    private long round;
+
+    public PollScheduler() {
+        this(MAX_THREADS);
+    }
+
+    public PollScheduler(int maxThreads) {
+        this.agents = new ArrayList<ElasticsearchAgent>();
+        this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("elasticsearch-poll"));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("elasticsearch-timer"));
+    }
+
+    public synchronized void register(ElasticsearchAgent agent) {
+        agents.add(agent);
+    }
+
+    /**
+     * Starts a new round if the agent has already taken part in the current one
+     *
+     * @return Current round
+     */
+    public synchronized long joinRound(long lastRound) {
+        if (lastRound >= round) {
+            round++;
+            for (ElasticsearchAgent agent : agents) {
+                agent.startPoll(executor, round, true);
+            }
+        }
+        return round;
+    }
+
+    /**
+     * Starts a poll of the agent after the delay, as part of the current round
+     */
+    public void schedule(final ElasticsearchAgent agent, long delayMillis) {
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                long currentRound;
+                synchronized (PollScheduler.this) {
+                    currentRound = round;
+                }
+                agent.startPoll(executor, currentRound, false);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts health polls of the agent every interval, a poll still running when the next one is due is not doubled
+     */
+    public void scheduleHealthPolls(final ElasticsearchAgent agent, long intervalMillis) {
+        timer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                agent.startHealthPoll(executor);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,101 @@
+package me.snov.newrelic.elasticsearch.http;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response body sent with "Transfer-Encoding: chunked", leaves the underlying connection open
+ */
+class ChunkedInputStream extends FilterInputStream {
+
+    private long chunkRemaining;
+    private boolean finished;
+
+    ChunkedInputStream(InputStream in) {
+        super(in);
+    }
+
+    private boolean nextChunk() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (chunkRemaining == 0) {
+            String line = HttpConnection.readLine(in);
+            if (line == null) {
+                throw new EOFException("Unexpected end of chunked response body");
+            }
+            int extension = line.indexOf(';');
+            String size = (extension >= 0 ? line.substring(0, extension) : line).trim();
+            try {
+                chunkRemaining = Long.parseLong(size, 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk size: " + line);
+            }
+            if (chunkRemaining == 0) {
+                // Skip trailers
+                String trailer;
+                while ((trailer = HttpConnection.readLine(in)) != null && !trailer.isEmpty()) {
+                    // Ignored
+                }
+                finished = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void endOfChunk() throws IOException {
+        if (chunkRemaining == 0) {
+            // Chunk data is followed by CRLF
+            HttpConnection.readLine(in);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        int c = in.read();
+        if (c == -1) {
+            throw new EOFException("Unexpected end of chunked response body");
+        }
+        chunkRemaining--;
+        endOfChunk();
+        return c;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int read = in.read(b, off, (int) Math.min(len, chunkRemaining));
+        if (read == -1) {
+            throw new EOFException("Unexpected end of chunked response body");
+        }
+        chunkRemaining -= read;
+        endOfChunk();
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return finished ? 0 : (int) Math.min(in.available(), chunkRemaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        // Connection is released by HttpResponse
+    }
+}
@@ -0,0 +1,60 @@
+package me.snov.newrelic.elasticsearch.http;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response body with a known Content-Length, leaves the underlying connection open
+ */
+class ContentLengthInputStream extends FilterInputStream {
+
+    private long remaining;
+
+    ContentLengthInputStream(InputStream in, long length) {
+        super(in);
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int c = in.read();
+        if (c == -1) {
+            throw new EOFException("Unexpected end of response body, " + remaining + " bytes missing");
+        }
+        remaining--;
+        return c;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int read = in.read(b, off, (int) Math.min(len, remaining));
+        if (read == -1) {
+            throw new EOFException("Unexpected end of response body, " + remaining + " bytes missing");
+        }
+        remaining -= read;
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        // Connection is released by HttpResponse
+    }
+}
@@ -0,0 +1,60 @@
+package me.snov.newrelic.elasticsearch.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+class CountingInputStream extends FilterInputStream {
+
+    private long count;
+    private boolean finished;
+
+    CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Whether the end of the stream has been read
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = in.read();
+        if (c != -1) {
+            count++;
+        } else {
+            finished = true;
+        }
+        return c;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            count += read;
+        } else if (read == -1) {
+            finished = true;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        count += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,283 @@
+package me.snov.newrelic.elasticsearch.http;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single HTTP/1.1 connection to elasticsearch, kept open between requests by {@link HttpConnectionPool}.
+ *
+ * Proxies are chosen by the default ProxySelector like HttpURLConnection does, so the http.proxyHost,
+ * https.proxyHost, socksProxyHost and http.nonProxyHosts system properties apply. HTTPS goes through an HTTP proxy
+ * in a CONNECT tunnel. Proxies asking for authentication are not supported.
+ */
+class HttpConnection {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String route;
+    private final Socket socket;
+    // Plain HTTP through an HTTP proxy, requests carry the whole URL
+    private final boolean proxied;
+    private final InputStream input;
+    private final OutputStream output;
+    private long lastUsed;
+
+    private HttpConnection(String route, Socket socket, boolean proxied) throws IOException {
+        this.route = route;
+        this.socket = socket;
+        this.proxied = proxied;
+        this.input = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+        this.output = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    static String getRoute(URL url) {
+        return url.getProtocol() + "://" + url.getHost() + ":" + getPort(url);
+    }
+
+    /**
+     * @param connectTimeout Milliseconds to wait for the connection to be established, 0 waits forever
+     * @param readTimeout Milliseconds to wait for data from the server, 0 waits forever
+     */
+    static HttpConnection open(URL url, int connectTimeout, int readTimeout) throws IOException {
+        Proxy proxy = selectProxy(url);
+        boolean https = "https".equalsIgnoreCase(url.getProtocol());
+        Socket socket = proxy.type() == Proxy.Type.SOCKS ? new Socket(proxy) : new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            InetSocketAddress address;
+            if (proxy.type() == Proxy.Type.HTTP) {
+                // Selectors return the proxy unresolved
+                InetSocketAddress proxyAddress = (InetSocketAddress) proxy.address();
+                address = new InetSocketAddress(proxyAddress.getHostString(), proxyAddress.getPort());
+            } else if (proxy.type() == Proxy.Type.SOCKS) {
+                // Resolved by the proxy
+                address = InetSocketAddress.createUnresolved(url.getHost(), getPort(url));
+            } else {
+                address = new InetSocketAddress(url.getHost(), getPort(url));
+            }
+            socket.connect(address, connectTimeout);
+            socket.setSoTimeout(readTimeout);
+            if (https) {
+                if (proxy.type() == Proxy.Type.HTTP) {
+                    openTunnel(socket, url);
+                }
+                socket = startTls(socket, url);
+            }
+            return new HttpConnection(getRoute(url), socket, !https && proxy.type() == Proxy.Type.HTTP);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static Proxy selectProxy(URL url) throws IOException {
+        ProxySelector selector = ProxySelector.getDefault();
+        if (selector == null) {
+            return Proxy.NO_PROXY;
+        }
+        try {
+            List<Proxy> proxies = selector.select(url.toURI());
+            return proxies == null || proxies.isEmpty() ? Proxy.NO_PROXY : proxies.get(0);
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid URL: " + url, e);
+        }
+    }
+
+    /**
+     * Asks the HTTP proxy for a tunnel to the host, the socket is connected to the host once it returns
+     */
+    private static void openTunnel(Socket socket, URL url) throws IOException {
+        String target = url.getHost() + ":" + getPort(url);
+        OutputStream output = socket.getOutputStream();
+        output.write(("CONNECT " + target + " HTTP/1.1\r\nHost: " + target + "\r\n\r\n").getBytes("ISO-8859-1"));
+        output.flush();
+
+        // Read byte by byte from the socket, nothing of the tunnel must end up in a buffer
+        InputStream input = socket.getInputStream();
+        String statusLine = readLine(input);
+        if (statusLine == null) {
+            throw new EOFException("Connection closed by proxy before response to CONNECT");
+        }
+        int statusCode = parseStatusCode(statusLine);
+        String line;
+        do {
+            line = readLine(input);
+        } while (line != null && !line.isEmpty());
+        if (statusCode < 200 || statusCode >= 300) {
+            throw new IOException("Proxy refused tunnel to " + target + ": " + statusLine);
+        }
+    }
+
+    private static Socket startTls(Socket plain, URL url) throws IOException {
+        SSLSocket socket = (SSLSocket) HttpsURLConnection.getDefaultSSLSocketFactory()
+            .createSocket(plain, url.getHost(), getPort(url), true);
+
+        // Same host name verification HttpsURLConnection would do
+        SSLParameters parameters = socket.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        socket.setSSLParameters(parameters);
+        socket.startHandshake();
+
+        return socket;
+    }
+
+    private static int getPort(URL url) {
+        return url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    }
+
+    String getRoute() {
+        return route;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Checks without blocking whether the connection is known to be unusable: closed on our side, or the server has
+     * sent data nobody asked for. A close by the server can't be seen without a read, the pool retries requests
+     * failing on a reused connection instead.
+     */
+    boolean isReusable() {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return false;
+        }
+        try {
+            return input.available() == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    HttpResponse get(URL url, Map<String, String> headers, HttpConnectionPool pool) throws IOException {
+        String target = url.getFile().isEmpty() ? "/" : url.getFile();
+        if (proxied) {
+            target = url.getProtocol() + "://" + url.getHost() + (url.getPort() != -1 ? ":" + url.getPort() : "")
+                + target;
+        }
+        StringBuilder request = new StringBuilder(256)
+            .append("GET ").append(target).append(" HTTP/1.1\r\n")
+            .append("Host: ").append(url.getHost());
+        if (url.getPort() != -1) {
+            request.append(':').append(url.getPort());
+        }
+        request.append("\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        request.append("\r\n");
+
+        output.write(request.toString().getBytes("ISO-8859-1"));
+        output.flush();
+
+        return readResponse(pool);
+    }
+
+    private HttpResponse readResponse(HttpConnectionPool pool) throws IOException {
+        String statusLine;
+        int statusCode;
+        Map<String, String> headers;
+        do {
+            statusLine = readLine();
+            if (statusLine == null) {
+                throw new EOFException("Connection closed by server before response");
+            }
+            statusCode = parseStatusCode(statusLine);
+            headers = readHeaders();
+        } while (statusCode >= 100 && statusCode < 200);
+
+        boolean keepAlive = statusLine.startsWith("HTTP/1.1")
+            ? !"close".equalsIgnoreCase(headers.get("connection"))
+            : "keep-alive".equalsIgnoreCase(headers.get("connection"));
+
+        InputStream body;
+        String transferEncoding = headers.get("transfer-encoding");
+        String contentLength = headers.get("content-length");
+        if (statusCode == 204 || statusCode == 304) {
+            body = new ContentLengthInputStream(input, 0);
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            body = new ChunkedInputStream(input);
+        } else if (contentLength != null) {
+            try {
+                body = new ContentLengthInputStream(input, Long.parseLong(contentLength.trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+        } else {
+            // Body is delimited by the end of the stream, the connection can't be reused
+            body = input;
+            keepAlive = false;
+        }
+
+        return new HttpResponse(statusCode, headers, body, this, keepAlive, pool);
+    }
+
+    private static int parseStatusCode(String statusLine) throws IOException {
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+            throw new IOException("Invalid HTTP status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid HTTP status line: " + statusLine);
+        }
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        String line;
+        while ((line = readLine()) != null && !line.isEmpty()) {
+            int separator = line.indexOf(':');
+            if (separator > 0) {
+                headers.put(line.substring(0, separator).trim().toLowerCase(), line.substring(separator + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    private String readLine() throws IOException {
+        return readLine(input);
+    }
+
+    static String readLine(InputStream input) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int c;
+        while ((c = input.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing to do
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package me.snov.newrelic.elasticsearch.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of keep-alive connections to elasticsearch, shared by all parsers of an agent
+ */
+public class HttpConnectionPool {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 5 * 60 * 1000L;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 20000;
+
+    // Same limit as HttpURLConnection
+    private static final int MAX_REDIRECTS = 20;
+    // Not sent along to another host, so credentials don't leak to it
+    private static final Set<String> CREDENTIAL_HEADERS =
+        new HashSet<String>(Arrays.asList("authorization", "proxy-authorization", "cookie"));
+
+    private int maxConnections;
+    private final long keepAliveMillis;
+    private final Semaphore permits;
+    private final Map<String, Deque<HttpConnection>> idleConnections;
+    // Leased connections by their owner, see setOwner()
+    private final Map<HttpConnection, Object> leasedConnections;
+    private final ThreadLocal<Object> owner;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong bytesReceived;
+    private final AtomicLong bytesDecoded;
+    private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile int readTimeout = DEFAULT_READ_TIMEOUT_MILLIS;
+    private int idleCount;
+    private boolean closed;
+
+    public HttpConnectionPool() {
+        this(DEFAULT_MAX_CONNECTIONS, DEFAULT_KEEP_ALIVE_MILLIS);
+    }
+
+    public HttpConnectionPool(int maxConnections, long keepAliveMillis) {
+        this.maxConnections = maxConnections;
+        this.keepAliveMillis = keepAliveMillis;
+        this.permits = new Semaphore(maxConnections, true);
+        this.idleConnections = new HashMap<String, Deque<HttpConnection>>();
+        this.leasedConnections = new HashMap<HttpConnection, Object>();
+        this.owner = new ThreadLocal<Object>();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.bytesReceived = new AtomicLong();
+        this.bytesDecoded = new AtomicLong();
+    }
+
+    /**
+     * Timeouts of connections opened from now on, in milliseconds. 0 waits forever.
+     */
+    public void setTimeouts(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Raises the number of connections open at most, it is never lowered
+     */
+    public synchronized void ensureMaxConnections(int connections) {
+        if (connections > maxConnections) {
+            permits.release(connections - maxConnections);
+            maxConnections = connections;
+        }
+    }
+
+    /**
+     * Connections leased by the current thread from now on belong to the owner, until it is reset to null.
+     * Requests of the owner can be aborted with {@link #abort(Object)} without touching the ones of others.
+     */
+    public void setOwner(Object owner) {
+        this.owner.set(owner);
+    }
+
+    /**
+     * @return Owner of connections leased by the current thread, null if there is none
+     */
+    public Object getOwner() {
+        return owner.get();
+    }
+
+    /**
+     * Sends GET request, reusing an idle connection to the same host if there is one.
+     * Redirects are followed like HttpURLConnection does, as long as they keep the protocol. Credentials are only
+     * sent along to the same host, the other headers to any host.
+     */
+    public HttpResponse get(URL url, Map<String, String> headers) throws IOException {
+        for (int redirects = 0; ; redirects++) {
+            HttpResponse response = send(url, headers);
+            URL location = getRedirect(url, response);
+            if (location == null) {
+                return response;
+            }
+            response.close();
+            if (redirects == MAX_REDIRECTS) {
+                throw new IOException("Too many redirects, last one to " + location);
+            }
+            if (!location.getHost().equalsIgnoreCase(url.getHost())) {
+                headers = withoutCredentials(headers);
+            }
+            url = location;
+        }
+    }
+
+    private static Map<String, String> withoutCredentials(Map<String, String> headers) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (!CREDENTIAL_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                result.put(header.getKey(), header.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Location to follow, null if the response is not a redirect to the same protocol
+     */
+    private static URL getRedirect(URL url, HttpResponse response) throws MalformedURLException {
+        int statusCode = response.getStatusCode();
+        if (statusCode != 301 && statusCode != 302 && statusCode != 303 && statusCode != 307
+            && statusCode != 308) {
+            return null;
+        }
+        String location = response.getHeader("Location");
+        if (location == null) {
+            return null;
+        }
+        URL target = new URL(url, location);
+        return target.getProtocol().equalsIgnoreCase(url.getProtocol()) ? target : null;
+    }
+
+    private HttpResponse send(URL url, Map<String, String> headers) throws IOException {
+        acquirePermit();
+        boolean success = false;
+        try {
+            HttpResponse response = execute(url, headers);
+            success = true;
+            return response;
+        } finally {
+            if (!success) {
+                permits.release();
+            }
+        }
+    }
+
+    private HttpResponse execute(URL url, Map<String, String> headers) throws IOException {
+        HttpConnection connection = takeIdleConnection(HttpConnection.getRoute(url));
+        if (connection != null) {
+            hits.incrementAndGet();
+            lease(connection);
+            try {
+                return connection.get(url, headers, this);
+            } catch (SocketTimeoutException e) {
+                discard(connection);
+                throw e;
+            } catch (IOException e) {
+                // Failed because the request was aborted, rather than because the server closed the idle
+                // connection right before we used it
+                if (!discard(connection)) {
+                    throw e;
+                }
+                // Retry on a new connection
+            }
+        }
+
+        misses.incrementAndGet();
+        makeRoomForConnection();
+        connection = HttpConnection.open(url, connectTimeout, readTimeout);
+        lease(connection);
+        try {
+            return connection.get(url, headers, this);
+        } catch (IOException e) {
+            discard(connection);
+            throw e;
+        }
+    }
+
+    private void lease(HttpConnection connection) {
+        Object leaseOwner = owner.get();
+        synchronized (this) {
+            leasedConnections.put(connection, leaseOwner);
+        }
+    }
+
+    /**
+     * @return false if the connection was not leased anymore, because its request was aborted
+     */
+    private synchronized boolean discard(HttpConnection connection) {
+        boolean leased = leasedConnections.containsKey(connection);
+        leasedConnections.remove(connection);
+        connection.close();
+        return leased;
+    }
+
+    /**
+     * Closes connections with a request in flight, so threads blocked reading them fail right away
+     *
+     * @return Number of aborted requests
+     */
+    public synchronized int abort() {
+        int aborted = leasedConnections.size();
+        for (HttpConnection connection : leasedConnections.keySet()) {
+            connection.close();
+        }
+        leasedConnections.clear();
+        return aborted;
+    }
+
+    /**
+     * Closes connections with a request in flight which were leased for the owner
+     *
+     * @return Number of aborted requests
+     */
+    public synchronized int abort(Object leaseOwner) {
+        int aborted = 0;
+        Iterator<Map.Entry<HttpConnection, Object>> leases = leasedConnections.entrySet().iterator();
+        while (leases.hasNext()) {
+            Map.Entry<HttpConnection, Object> lease = leases.next();
+            if (lease.getValue() == leaseOwner) {
+                lease.getKey().close();
+                leases.remove();
+                aborted++;
+            }
+        }
+        return aborted;
+    }
+
+    private void acquirePermit() throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection");
+        }
+    }
+
+    private HttpConnection takeIdleConnection(String route) {
+        HttpConnection connection;
+        // Checked outside the lock, other threads don't wait for it
+        while ((connection = pollIdleConnection(route)) != null) {
+            if (connection.isReusable()) {
+                return connection;
+            }
+            connection.close();
+        }
+        return null;
+    }
+
+    private synchronized HttpConnection pollIdleConnection(String route) {
+        evictExpiredConnections();
+        Deque<HttpConnection> connections = idleConnections.get(route);
+        if (connections == null || connections.isEmpty()) {
+            return null;
+        }
+        idleCount--;
+        return connections.pollFirst();
+    }
+
+    /**
+     * Closes the least recently used idle connection if opening one more would exceed the limit
+     */
+    private synchronized void makeRoomForConnection() {
+        int leased = maxConnections - permits.availablePermits();
+        if (leased + idleCount <= maxConnections) {
+            return;
+        }
+        Deque<HttpConnection> oldestConnections = null;
+        for (Deque<HttpConnection> connections : idleConnections.values()) {
+            if (!connections.isEmpty() && (oldestConnections == null
+                    || connections.peekLast().getLastUsed() < oldestConnections.peekLast().getLastUsed())) {
+                oldestConnections = connections;
+            }
+        }
+        if (oldestConnections != null) {
+            oldestConnections.pollLast().close();
+            idleCount--;
+        }
+    }
+
+    void recordTransfer(long received, long decoded) {
+        bytesReceived.addAndGet(received);
+        bytesDecoded.addAndGet(decoded);
+    }
+
+    synchronized void release(HttpConnection connection, boolean reusable) {
+        try {
+            // Not leased anymore if the request was aborted
+            boolean leased = leasedConnections.containsKey(connection);
+            leasedConnections.remove(connection);
+            if (leased && reusable && !closed) {
+                connection.touch();
+                Deque<HttpConnection> connections = idleConnections.get(connection.getRoute());
+                if (connections == null) {
+                    connections = new ArrayDeque<HttpConnection>();
+                    idleConnections.put(connection.getRoute(), connections);
+                }
+                connections.offerFirst(connection);
+                idleCount++;
+            } else {
+                connection.close();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void evictExpiredConnections() {
+        long now = System.currentTimeMillis();
+        Iterator<Deque<HttpConnection>> routes = idleConnections.values().iterator();
+        while (routes.hasNext()) {
+            Deque<HttpConnection> connections = routes.next();
+            // Most recently used connections are at the head
+            while (!connections.isEmpty() && now - connections.peekLast().getLastUsed() > keepAliveMillis) {
+                connections.pollLast().close();
+                idleCount--;
+            }
+            if (connections.isEmpty()) {
+                routes.remove();
+            }
+        }
+    }
+
+    /**
+     * @return Number of requests served by an already open connection
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of requests which had to open a new connection
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Response body bytes received over the wire
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return Response body bytes after decompression
+     */
+    public long getBytesDecoded() {
+        return bytesDecoded.get();
+    }
+
+    public synchronized int getIdleConnections() {
+        evictExpiredConnections();
+        return idleCount;
+    }
+
+    public synchronized void close() {
+        closed = true;
+        for (Deque<HttpConnection> connections : idleConnections.values()) {
+            for (HttpConnection connection : connections) {
+                connection.close();
+            }
+        }
+        idleConnections.clear();
+        idleCount = 0;
+    }
+}
@@ -0,0 +1,108 @@
+package me.snov.newrelic.elasticsearch.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Response of {@link HttpConnectionPool#get}. Must be closed to return the connection to the pool.
+ * Body compressed with gzip or deflate is decoded while it is read.
+ */
+public class HttpResponse implements Closeable {
+
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private final int statusCode;
+    private final Map<String, String> headers;
+    private final CountingInputStream body;
+    private final HttpConnection connection;
+    private final boolean keepAlive;
+    private final HttpConnectionPool pool;
+    private CountingInputStream decodedBody;
+    private InputStream decoder;
+    private boolean closed;
+
+    HttpResponse(int statusCode, Map<String, String> headers, InputStream body, HttpConnection connection,
+                 boolean keepAlive, HttpConnectionPool pool) {
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.body = new CountingInputStream(body);
+        this.connection = connection;
+        this.keepAlive = keepAlive;
+        this.pool = pool;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    public InputStream getInputStream() throws IOException {
+        if (decodedBody == null) {
+            String encoding = getHeader("Content-Encoding");
+            if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+                decoder = new GZIPInputStream(body, 8192);
+            } else if ("deflate".equalsIgnoreCase(encoding)) {
+                decoder = new InflaterInputStream(body);
+            } else {
+                decoder = body;
+            }
+            decodedBody = new CountingInputStream(decoder);
+        }
+        return decodedBody;
+    }
+
+    /**
+     * Reads what is left of the stream, at most {@link #MAX_DRAIN_BYTES}
+     *
+     * @return Whether the end of the stream was reached
+     */
+    private static boolean drain(InputStream stream) {
+        try {
+            byte[] buffer = new byte[4096];
+            int drained = 0;
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                drained += read;
+                if (drained > MAX_DRAIN_BYTES) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // Decoding the rest keeps decoded and received bytes counts of the same body
+        boolean decoded = decodedBody == null || drain(decodedBody);
+        if (decoder != null && decoder != body) {
+            try {
+                // Releases the native inflater, the connection itself is left open
+                decoder.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+        }
+        // What is left of the still encoded body, so the connection can serve the next request
+        boolean reusable = keepAlive && drain(body);
+        if (decodedBody == null) {
+            pool.recordTransfer(body.getCount(), body.getCount());
+        } else if (decoded && decodedBody.isFinished()) {
+            pool.recordTransfer(body.getCount(), decodedBody.getCount());
+        }
+        pool.release(connection, reusable);
+    }
+}
@@ -0,0 +1,18 @@
+package me.snov.newrelic.elasticsearch.interfaces;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Holder of counters whose state can be saved and restored across restarts
+ */
+public interface CounterStateInterface {
+    void saveCounters(DataOutput out) throws IOException;
+
+    /**
+     * @param minTimeMillis Counters last updated before are discarded
+     * @return Number of restored counters
+     */
+    int loadCounters(DataInput in, long minTimeMillis) throws IOException;
+}
@@ -0,0 +1,10 @@
+package me.snov.newrelic.elasticsearch.interfaces;
+
+import me.snov.newrelic.elasticsearch.reporters.MetricBuffer;
+
+public interface MetricSinkInterface {
+    /**
+     * Publishes all metrics of the buffer
+     */
+    void reportMetrics(MetricBuffer metrics);
+}
@@ -0,0 +1,25 @@
+package me.snov.newrelic.elasticsearch.interfaces;
+
+import me.snov.newrelic.elasticsearch.responses.NodesStats;
+import me.snov.newrelic.elasticsearch.responses.NodesStatsTable;
+
+import java.io.IOException;
+import java.util.Set;
+
+public interface NodesStatsSourceInterface {
+    void setClusterVersion(String clusterVersion);
+
+    /**
+     * @param nodeCount Number of nodes in cluster, -1 if it is not known
+     */
+    void setNodeCount(int nodeCount);
+
+    /**
+     * @param groups Top level objects to request (e.g. "jvm"), null for all reported ones
+     */
+    void setMetricGroups(Set<String> groups);
+
+    NodesStats request() throws IOException;
+
+    NodesStatsTable requestTable() throws IOException;
+}
@@ -0,0 +1,8 @@
+package me.snov.newrelic.elasticsearch.interfaces;
+
+public interface PublisherStatusInterface {
+    /**
+     * @return false if metrics reported now would not reach New Relic
+     */
+    boolean isReachable();
+}
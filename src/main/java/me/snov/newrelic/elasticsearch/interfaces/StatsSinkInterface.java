@@ -0,0 +1,23 @@
+package me.snov.newrelic.elasticsearch.interfaces;
+
+/**
+ * Receives values picked from a stats response by the streaming parser.
+ * Fields are identified by their index in the parser's {@link me.snov.newrelic.elasticsearch.parsers.FieldSet}.
+ */
+public interface StatsSinkInterface {
+    /**
+     * Start of an entry, e.g. a node of /_nodes/stats
+     */
+    void startEntry(String key);
+
+    /**
+     * Object field is present, called before any of its children
+     */
+    void startObject(int field);
+
+    void value(int field, double value);
+
+    void value(int field, String value);
+
+    void endEntry();
+}
@@ -4,34 +4,32 @@ import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
+import me.snov.newrelic.elasticsearch.http.HttpResponse;
 import org.apache.commons.codec.binary.Base64;
 
 import java.io.*;
-import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 abstract class AbstractParser<T> {
 
     private final Class<T> typeParameterClass;
-    private final URL url;
+    private volatile URL url;
     private final Gson gson;
-    private final String username;
-    private final String password;
-    private HttpURLConnection connection;
+    private final HttpConnectionPool connectionPool;
+    private final Map<String, String> headers;
 
-    public AbstractParser(Class<T> typeParameterClass, URL url, String username, String password) {
+    public AbstractParser(Class<T> typeParameterClass, URL url, String username, String password,
+                          HttpConnectionPool connectionPool) {
         this.typeParameterClass = typeParameterClass;
         this.url = url;
-        this.username = username;
-        this.password = password;
-        this.gson = new GsonBuilder()
-            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-            .create();
-    }
-
-    private InputStream getInputStream(URL url) throws IOException {
-        connection = (HttpURLConnection) url.openConnection();
-        connection.addRequestProperty("Accept", "application/json");
+        this.connectionPool = connectionPool;
+        this.headers = new LinkedHashMap<String, String>();
+        this.headers.put("Accept", "application/json");
+        // Used only if http.compression is enabled in elasticsearch
+        this.headers.put("Accept-Encoding", "gzip, deflate");
 
         // If we have basic authentication credentials defined, generate the Authorization header.
         if (username != null && password != null
@@ -40,27 +38,53 @@ abstract class AbstractParser<T> {
             byte[] authEncBytes = Base64.encodeBase64(authString.getBytes());
             String authStringEnc = new String(authEncBytes);
 
-            connection.setRequestProperty("Authorization", "Basic " + authStringEnc);
+            this.headers.put("Authorization", "Basic " + authStringEnc);
         }
-        return connection.getInputStream();
+
+        this.gson = new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .create();
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    protected void setUrl(URL url) {
+        this.url = url;
     }
 
     public final T request() throws IOException {
-        InputStream inputStream = null;
+        HttpResponse response = get();
         try {
-            inputStream = getInputStream(url);
-            return parse(inputStream);
+            return parse(response.getInputStream());
         } finally {
-            if (inputStream != null) {
-                inputStream.close();
-            }
-            if (connection != null) {
-                connection.disconnect();
-            }
+            response.close();
         }
     }
 
+    /**
+     * Sends the request, the response must be closed by the caller
+     */
+    protected final HttpResponse get() throws IOException {
+        URL url = this.url;
+        HttpResponse response = connectionPool.get(url, headers);
+        if (response.getStatusCode() >= 400) {
+            response.close();
+            throw new IOException(String.format("Server returned HTTP response code: %d for URL: %s",
+                response.getStatusCode(), url));
+        }
+        return response;
+    }
+
     public final T parse(InputStream stream) throws IOException {
-        return gson.fromJson(new InputStreamReader(stream), typeParameterClass);
+        return read(new InputStreamReader(stream));
+    }
+
+    /**
+     * Binds the whole response to the response class
+     */
+    protected T read(Reader reader) throws IOException {
+        return gson.fromJson(reader, typeParameterClass);
     }
 }
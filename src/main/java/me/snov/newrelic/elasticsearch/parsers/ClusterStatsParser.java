@@ -1,7 +1,12 @@
 package me.snov.newrelic.elasticsearch.parsers;
 
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
+import me.snov.newrelic.elasticsearch.reporters.ClusterStatsReporter;
 import me.snov.newrelic.elasticsearch.responses.ClusterStats;
+import me.snov.newrelic.elasticsearch.services.ClusterStatsService;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -9,11 +14,75 @@ public class ClusterStatsParser extends AbstractParser<ClusterStats> {
 
     private static final String URL_CLUSTER_STATS = "/_cluster/stats";
 
+    private final ClusterStatsService clusterStatsService = new ClusterStatsService();
+    private final URL baseUrl;
+    private volatile String clusterVersion;
+    private volatile int nodeCount = -1;
+
     public ClusterStatsParser() {
-        super(ClusterStats.class, null, null, null);
+        super(ClusterStats.class, null, null, null, null);
+        this.baseUrl = null;
+    }
+
+    public ClusterStatsParser(String protocol, String host, int port, String basePath, String username, String password,
+                              HttpConnectionPool connectionPool) throws MalformedURLException {
+        super(ClusterStats.class, new URL(protocol, host, port, basePath + URL_CLUSTER_STATS), username, password,
+            connectionPool);
+        this.baseUrl = getUrl();
+    }
+
+    /**
+     * @return Lowest version of a node in cluster, as of the last response
+     */
+    public String getClusterVersion() {
+        return clusterVersion;
+    }
+
+    /**
+     * @return Number of nodes in cluster as of the last response, -1 if it is not known
+     */
+    public int getNodeCount() {
+        return nodeCount;
     }
 
-    public ClusterStatsParser(String protocol, String host, int port, String basePath, String username, String password) throws MalformedURLException {
-        super(ClusterStats.class, new URL(protocol, host, port, basePath + URL_CLUSTER_STATS), username, password);
+    @Override
+    protected ClusterStats read(Reader reader) throws IOException {
+        ClusterStats clusterStats = super.read(reader);
+
+        if (clusterStats.nodes != null && clusterStats.nodes.count != null
+            && clusterStats.nodes.count.total != null) {
+            nodeCount = clusterStats.nodes.count.total.intValue();
+        }
+
+        String version = clusterStatsService.getMinimumVersion(clusterStats);
+        if (version != null && !version.equals(clusterVersion)) {
+            clusterVersion = version;
+            updateUrl();
+        }
+
+        return clusterStats;
+    }
+
+    /**
+     * Requests only reported fields with filter_path (1.6+)
+     */
+    private void updateUrl() {
+        if (baseUrl == null) {
+            return;
+        }
+
+        String file = baseUrl.getPath();
+        if (clusterStatsService.isVersionAtLeast(clusterVersion, 1, 6)) {
+            String filterPath = FilterPath.build("", ClusterStatsReporter.REPORTED_FIELDS, FilterPath.MAX_LENGTH);
+            if (filterPath != null) {
+                file += "?filter_path=" + filterPath;
+            }
+        }
+
+        try {
+            setUrl(new URL(baseUrl, file));
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
     }
 }
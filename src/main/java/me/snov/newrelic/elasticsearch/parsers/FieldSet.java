@@ -0,0 +1,89 @@
+package me.snov.newrelic.elasticsearch.parsers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Set of JSON paths (e.g. "jvm.mem.heap_used_percent") with a numeric id for every path and its parents
+ */
+public class FieldSet {
+
+    public static final int ROOT = -1;
+
+    private final List<String> paths;
+    private final List<Integer> parents;
+    private final List<Map<String, Integer>> children;
+    private final Map<String, Integer> ids;
+
+    public FieldSet(String... leafPaths) {
+        paths = new ArrayList<String>();
+        parents = new ArrayList<Integer>();
+        children = new ArrayList<Map<String, Integer>>();
+        ids = new HashMap<String, Integer>();
+
+        // Children of ROOT are stored at index 0
+        children.add(new HashMap<String, Integer>());
+        for (String path : leafPaths) {
+            add(path);
+        }
+    }
+
+    private int add(String path) {
+        Integer id = ids.get(path);
+        if (id != null) {
+            return id;
+        }
+
+        int separator = path.lastIndexOf('.');
+        int parent = separator < 0 ? ROOT : add(path.substring(0, separator));
+        String name = path.substring(separator + 1);
+
+        id = paths.size();
+        paths.add(path);
+        parents.add(parent);
+        children.add(new HashMap<String, Integer>());
+        children.get(parent + 1).put(name, id);
+        ids.put(path, id);
+
+        return id;
+    }
+
+    public int size() {
+        return paths.size();
+    }
+
+    public String getPath(int field) {
+        return paths.get(field);
+    }
+
+    public String getName(int field) {
+        String path = paths.get(field);
+        return path.substring(path.lastIndexOf('.') + 1);
+    }
+
+    public int getParent(int field) {
+        return parents.get(field);
+    }
+
+    /**
+     * @return Id of the child field or -1 if it is not in the set
+     */
+    public int getChild(int parent, String name) {
+        Integer id = children.get(parent + 1).get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return Id of the path or -1 if it is not in the set
+     */
+    public int getField(String path) {
+        Integer id = ids.get(path);
+        return id == null ? -1 : id;
+    }
+
+    public boolean isObject(int field) {
+        return !children.get(field + 1).isEmpty();
+    }
+}
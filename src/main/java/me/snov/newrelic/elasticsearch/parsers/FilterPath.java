@@ -0,0 +1,119 @@
+package me.snov.newrelic.elasticsearch.parsers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds filter_path and metric groups of stats requests from the fields read by a reporter
+ */
+class FilterPath {
+
+    /**
+     * Elasticsearch rejects request lines longer than 4kb (http.max_initial_line_length)
+     */
+    static final int MAX_LENGTH = 2048;
+
+    /**
+     * @return Comma separated paths with the prefix (e.g. "nodes.*."), shortened by replacing sibling fields with
+     *         their parent until it fits into maxLength
+     */
+    static String build(String prefix, String[] fields, int maxLength) {
+        List<String> paths = new ArrayList<String>(new LinkedHashSet<String>(Arrays.asList(fields)));
+        while (true) {
+            String filterPath = join(prefix, paths);
+            if (filterPath.length() <= maxLength) {
+                return filterPath;
+            }
+            String parent = getParentToCollapse(paths);
+            if (parent == null) {
+                return null;
+            }
+            List<String> collapsed = new ArrayList<String>();
+            for (String path : paths) {
+                if (path.startsWith(parent + ".")) {
+                    if (!collapsed.contains(parent)) {
+                        collapsed.add(parent);
+                    }
+                } else {
+                    collapsed.add(path);
+                }
+            }
+            paths = collapsed;
+        }
+    }
+
+    /**
+     * @return Top level objects of the fields, e.g. "jvm,thread_pool"
+     */
+    static String getGroups(String[] fields) {
+        Set<String> groups = new LinkedHashSet<String>();
+        for (String field : fields) {
+            int separator = field.indexOf('.');
+            if (separator > 0) {
+                groups.add(field.substring(0, separator));
+            }
+        }
+        return join("", new ArrayList<String>(groups));
+    }
+
+    /**
+     * @param groups Top level objects to keep, null for all
+     * @return Fields in one of the groups, and fields which are not in any group (e.g. "name")
+     */
+    static String[] selectGroups(String[] fields, Set<String> groups) {
+        if (groups == null) {
+            return fields;
+        }
+        List<String> selected = new ArrayList<String>();
+        for (String field : fields) {
+            int separator = field.indexOf('.');
+            if (separator < 0 || groups.contains(field.substring(0, separator))) {
+                selected.add(field);
+            }
+        }
+        return selected.toArray(new String[selected.size()]);
+    }
+
+    /**
+     * Deepest parents are collapsed first, they pull in the least of unused data
+     */
+    private static String getParentToCollapse(List<String> paths) {
+        String best = null;
+        int bestDepth = -1;
+        int bestChildren = 0;
+        for (String path : paths) {
+            int separator = path.lastIndexOf('.');
+            if (separator < 0) {
+                continue;
+            }
+            String parent = path.substring(0, separator);
+            int depth = parent.split("\\.").length;
+            int children = 0;
+            for (String other : paths) {
+                if (other.startsWith(parent + ".")) {
+                    children++;
+                }
+            }
+            if (depth > bestDepth || (depth == bestDepth && children > bestChildren)) {
+                best = parent;
+                bestDepth = depth;
+                bestChildren = children;
+            }
+        }
+        return best;
+    }
+
+    private static String join(String prefix, List<String> paths) {
+        StringBuilder result = new StringBuilder();
+        for (String path : paths) {
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(prefix).append(path);
+        }
+        return result.toString();
+    }
+}
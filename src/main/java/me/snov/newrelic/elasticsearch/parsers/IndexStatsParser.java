@@ -0,0 +1,96 @@
+package me.snov.newrelic.elasticsearch.parsers;
+
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
+import me.snov.newrelic.elasticsearch.reporters.IndexStatsReporter;
+import me.snov.newrelic.elasticsearch.services.ClusterStatsService;
+import me.snov.newrelic.elasticsearch.services.IndexRanking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Streams the per-index section of /_stats into an {@link IndexRanking}, indices are never bound or kept
+ */
+public class IndexStatsParser extends AbstractParser<IndexRanking> {
+
+    private static final String URL_INDEX_STATS = "/_stats";
+    private static final String METRIC_GROUPS = "indexing,search,store";
+
+    private final FieldSet fields = new FieldSet(IndexStatsReporter.REPORTED_FIELDS);
+    private final ClusterStatsService clusterStatsService = new ClusterStatsService();
+    private final IndexRanking ranking;
+    private final URL baseUrl;
+
+    /**
+     * @param topIndices Number of indices kept per ranking
+     */
+    public IndexStatsParser(int topIndices) {
+        super(IndexRanking.class, null, null, null, null);
+        this.ranking = new IndexRanking(fields, topIndices);
+        this.baseUrl = null;
+    }
+
+    public IndexStatsParser(String protocol, String host, int port, String basePath, String username, String password,
+                            HttpConnectionPool connectionPool, int topIndices) throws MalformedURLException {
+        super(IndexRanking.class, new URL(protocol, host, port, basePath + URL_INDEX_STATS), username, password,
+            connectionPool);
+        this.ranking = new IndexRanking(fields, topIndices);
+        this.baseUrl = getUrl();
+    }
+
+    /**
+     * Ranking reused by every request, valid until the next one
+     */
+    public IndexRanking getRanking() {
+        return ranking;
+    }
+
+    /**
+     * Requests only ranked metric groups (1.0+) and fields (filter_path, 1.6+)
+     */
+    public synchronized void setClusterVersion(String clusterVersion) {
+        if (baseUrl == null) {
+            return;
+        }
+
+        StringBuilder file = new StringBuilder(baseUrl.getPath());
+        if (clusterStatsService.isVersionAtLeast(clusterVersion, 1, 0)) {
+            file.append('/').append(METRIC_GROUPS);
+        }
+        if (clusterStatsService.isVersionAtLeast(clusterVersion, 1, 6)) {
+            String filterPath = FilterPath.build("indices.*.", IndexStatsReporter.REPORTED_FIELDS,
+                FilterPath.MAX_LENGTH);
+            if (filterPath != null) {
+                file.append("?filter_path=").append(filterPath);
+            }
+        }
+
+        try {
+            setUrl(new URL(baseUrl, file.toString()));
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * @param timeMillis Time of the response, for the rates
+     */
+    public IndexRanking parse(InputStream stream, long timeMillis) throws IOException {
+        return read(new InputStreamReader(stream), timeMillis);
+    }
+
+    @Override
+    protected IndexRanking read(Reader reader) throws IOException {
+        return read(reader, System.currentTimeMillis());
+    }
+
+    private IndexRanking read(Reader reader, long timeMillis) throws IOException {
+        ranking.startCycle(timeMillis);
+        new StreamingStatsReader(fields).readEntries(reader, "indices", ranking);
+        return ranking;
+    }
+}
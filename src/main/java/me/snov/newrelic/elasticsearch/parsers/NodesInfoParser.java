@@ -0,0 +1,54 @@
+package me.snov.newrelic.elasticsearch.parsers;
+
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
+import me.snov.newrelic.elasticsearch.responses.NodesInfo;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+public class NodesInfoParser extends AbstractParser<NodesInfo> {
+
+    private static final String URL_NODES_HTTP = "/_nodes/http";
+
+    public NodesInfoParser() {
+        super(NodesInfo.class, null, null, null, null);
+    }
+
+    public NodesInfoParser(String protocol, String host, int port, String basePath, String username, String password,
+                           HttpConnectionPool connectionPool) throws MalformedURLException {
+        super(NodesInfo.class, new URL(protocol, host, port, basePath + URL_NODES_HTTP), username, password,
+            connectionPool);
+    }
+
+    /**
+     * Extracts host and port from publish_address, which looks like "inet[/10.0.0.1:9200]" (1.x),
+     * "10.0.0.1:9200" (2.x) or "es-node-1/10.0.0.1:9200" (5.x)
+     *
+     * @return host:port, or null if the address can't be parsed
+     */
+    public static String getPublishAddress(NodesInfo.NodeInfo nodeInfo) {
+        if (nodeInfo == null || nodeInfo.http == null || nodeInfo.http.publish_address == null) {
+            return null;
+        }
+
+        String address = nodeInfo.http.publish_address.trim();
+        if (address.startsWith("inet[") && address.endsWith("]")) {
+            address = address.substring("inet[".length(), address.length() - 1);
+        }
+        int slash = address.lastIndexOf('/');
+        if (slash != -1) {
+            address = address.substring(slash + 1);
+        }
+
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            return null;
+        }
+        try {
+            Integer.parseInt(address.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return address;
+    }
+}
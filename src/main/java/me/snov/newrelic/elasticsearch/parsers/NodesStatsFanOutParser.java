@@ -0,0 +1,274 @@
+package me.snov.newrelic.elasticsearch.parsers;
+
+import com.newrelic.metrics.publish.util.Logger;
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
+import me.snov.newrelic.elasticsearch.interfaces.NodesStatsSourceInterface;
+import me.snov.newrelic.elasticsearch.responses.NodesInfo;
+import me.snov.newrelic.elasticsearch.reporters.NodesStatsReporter;
+import me.snov.newrelic.elasticsearch.responses.NodesStats;
+import me.snov.newrelic.elasticsearch.responses.NodesStatsTable;
+import me.snov.newrelic.elasticsearch.services.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Requests stats of every node directly from the node, instead of letting one coordinating node gather them.
+ * HTTP addresses of nodes are discovered with /_nodes/http, and again after a node couldn't be reached or once
+ * the number of nodes in the cluster has changed.
+ */
+public class NodesStatsFanOutParser implements NodesStatsSourceInterface {
+
+    public static final int MAX_PARALLEL_REQUESTS = 8;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+    private final String protocol;
+    private final String username;
+    private final String password;
+    private final HttpConnectionPool connectionPool;
+    private final NodesInfoParser nodesInfoParser;
+    private final ExecutorService executor;
+    private final Logger logger;
+    private final NodesStatsTable table = new NodesStatsTable(new FieldSet(NodesStatsReporter.REPORTED_FIELDS));
+    private volatile String clusterVersion;
+    private volatile Set<String> metricGroups;
+    private volatile boolean streaming = true;
+    private volatile long timeout = DEFAULT_TIMEOUT_MILLIS;
+    private List<NodesStatsParser> nodeParsers;
+    // Nodes in cluster as told by setNodeCount(), and as of the last discovery, -1 if not known
+    private int nodeCount = -1;
+    private int discoveredNodeCount = -1;
+
+    /**
+     * Nodes are requested at their publish address, without basePath of the cluster
+     */
+    public NodesStatsFanOutParser(String protocol, String host, int port, String basePath, String username,
+                                  String password, HttpConnectionPool connectionPool) throws MalformedURLException {
+        this.protocol = protocol;
+        this.username = username;
+        this.password = password;
+        this.connectionPool = connectionPool;
+        this.nodesInfoParser = new NodesInfoParser(protocol, host, port, basePath, username, password, connectionPool);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_REQUESTS, MAX_PARALLEL_REQUESTS,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("elasticsearch-node"));
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+        this.logger = Logger.getLogger(NodesStatsFanOutParser.class);
+    }
+
+    /**
+     * @param streaming Read only reported fields (default) or bind the whole response
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * @param timeout Milliseconds to wait for all nodes, the ones which haven't responded by then are aborted
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public synchronized void setClusterVersion(String clusterVersion) {
+        this.clusterVersion = clusterVersion;
+        if (nodeParsers != null) {
+            for (NodesStatsParser nodeParser : nodeParsers) {
+                nodeParser.setClusterVersion(clusterVersion);
+            }
+        }
+    }
+
+    /**
+     * Nodes are discovered again on the next request if the number differs from the one of the last discovery
+     */
+    @Override
+    public synchronized void setNodeCount(int nodeCount) {
+        this.nodeCount = nodeCount;
+    }
+
+    @Override
+    public synchronized void setMetricGroups(Set<String> groups) {
+        this.metricGroups = groups;
+        if (nodeParsers != null) {
+            for (NodesStatsParser nodeParser : nodeParsers) {
+                nodeParser.setMetricGroups(groups);
+            }
+        }
+    }
+
+    /**
+     * @return Stats of all nodes which responded. Fails only if none of them did.
+     */
+    @Override
+    public NodesStats request() throws IOException {
+        NodesStats nodesStats = new NodesStats();
+        nodesStats.nodes = new LinkedHashMap<String, NodesStats.NodeStats>();
+        List<NodesStats> responses = requestNodes(new NodeRequest<NodesStats>() {
+            @Override
+            public NodesStats request(NodesStatsParser parser) throws IOException {
+                return parser.request();
+            }
+        });
+        for (NodesStats response : responses) {
+            if (response.nodes != null) {
+                nodesStats.nodes.putAll(response.nodes);
+            }
+        }
+        return nodesStats;
+    }
+
+    /**
+     * @return Stats of all nodes which responded, in a table reused by every request
+     */
+    @Override
+    public NodesStatsTable requestTable() throws IOException {
+        List<NodesStatsTable> responses = requestNodes(new NodeRequest<NodesStatsTable>() {
+            @Override
+            public NodesStatsTable request(NodesStatsParser parser) throws IOException {
+                return parser.requestTable();
+            }
+        });
+        table.clear();
+        for (NodesStatsTable response : responses) {
+            table.addAll(response);
+        }
+        return table;
+    }
+
+    private interface NodeRequest<R> {
+        R request(NodesStatsParser parser) throws IOException;
+    }
+
+    /**
+     * Requests all nodes in parallel
+     *
+     * @return Responses of nodes which responded
+     */
+    private <R> List<R> requestNodes(final NodeRequest<R> nodeRequest) throws IOException {
+        List<NodesStatsParser> parsers = getNodeParsers();
+
+        // Connections leased for nodes belong to the owner of the whole request, so that aborting it aborts them too.
+        // Without one, they get an owner of their own so that the nodes which don't respond in time can be aborted
+        final Object owner = connectionPool.getOwner() != null ? connectionPool.getOwner() : new Object();
+        List<Future<R>> futures = new ArrayList<Future<R>>(parsers.size());
+        for (final NodesStatsParser parser : parsers) {
+            futures.add(executor.submit(new Callable<R>() {
+                @Override
+                public R call() throws IOException {
+                    connectionPool.setOwner(owner);
+                    try {
+                        return nodeRequest.request(parser);
+                    } finally {
+                        connectionPool.setOwner(null);
+                    }
+                }
+            }));
+        }
+
+        List<R> responses = new ArrayList<R>(futures.size());
+        IOException failure = null;
+        int timedOut = 0;
+        long deadline = System.currentTimeMillis() + timeout;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                responses.add(futures.get(i).get(Math.max(deadline - System.currentTimeMillis(), 0),
+                    TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                timedOut++;
+            } catch (ExecutionException e) {
+                failure = e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException(e.getCause());
+                logger.warn("Unable to request stats of node at ", parsers.get(i).getUrl(), ": ", e.getCause());
+            } catch (InterruptedException e) {
+                for (Future<R> future : futures) {
+                    future.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for stats of nodes");
+            }
+        }
+
+        if (timedOut > 0) {
+            // Queued requests are dropped, the ones in flight lose their connections
+            for (Future<R> future : futures) {
+                future.cancel(true);
+            }
+            connectionPool.abort(owner);
+            logger.warn(timedOut, " of ", futures.size(), " nodes have not responded within ", timeout, " ms");
+            if (failure == null) {
+                failure = new SocketTimeoutException("No response of " + timedOut + " nodes within " + timeout + " ms");
+            }
+        } else if (failure != null) {
+            // Node may have left the cluster or changed address
+            resetNodeParsers(parsers);
+        }
+        if (failure != null && responses.isEmpty()) {
+            throw failure;
+        }
+
+        return responses;
+    }
+
+    private synchronized List<NodesStatsParser> getNodeParsers() throws IOException {
+        if (nodeParsers == null) {
+            nodeParsers = discoverNodes();
+        } else if (nodeCount >= 0 && nodeCount != discoveredNodeCount) {
+            // Nodes joined or left the cluster, the known ones are requested until the new ones are discovered
+            try {
+                nodeParsers = discoverNodes();
+            } catch (IOException e) {
+                logger.warn("Unable to discover nodes at ", nodesInfoParser.getUrl(), ": ", e);
+            }
+        }
+        return nodeParsers;
+    }
+
+    private synchronized void resetNodeParsers(List<NodesStatsParser> parsers) {
+        if (nodeParsers == parsers) {
+            nodeParsers = null;
+        }
+    }
+
+    private List<NodesStatsParser> discoverNodes() throws IOException {
+        NodesInfo nodesInfo = nodesInfoParser.request();
+        // Count of the cluster if it is known, so that nodes aren't discovered on every request while
+        // /_nodes/http lags behind the cluster stats
+        discoveredNodeCount = nodeCount >= 0 ? nodeCount : nodesInfo.nodes != null ? nodesInfo.nodes.size() : 0;
+        List<NodesStatsParser> parsers = new ArrayList<NodesStatsParser>();
+        if (nodesInfo.nodes == null) {
+            return parsers;
+        }
+
+        for (Map.Entry<String, NodesInfo.NodeInfo> entry : nodesInfo.nodes.entrySet()) {
+            String address = NodesInfoParser.getPublishAddress(entry.getValue());
+            if (address == null) {
+                // Node without HTTP enabled
+                continue;
+            }
+            int colon = address.lastIndexOf(':');
+            String host = address.substring(0, colon);
+            int port = Integer.parseInt(address.substring(colon + 1));
+
+            NodesStatsParser parser = new NodesStatsParser(protocol, host, port, "", username, password,
+                connectionPool, true);
+            parser.setStreaming(streaming);
+            parser.setClusterVersion(clusterVersion);
+            parser.setMetricGroups(metricGroups);
+            parsers.add(parser);
+        }
+
+        if (parsers.isEmpty()) {
+            throw new IOException("No node with HTTP enabled found at " + nodesInfoParser.getUrl());
+        }
+        // One connection per node is kept open, besides the ones of the other requests of the agent
+        connectionPool.ensureMaxConnections(parsers.size() + HttpConnectionPool.DEFAULT_MAX_CONNECTIONS);
+        return parsers;
+    }
+}
@@ -1,19 +1,151 @@
 package me.snov.newrelic.elasticsearch.parsers;
 
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
+import me.snov.newrelic.elasticsearch.http.HttpResponse;
+import me.snov.newrelic.elasticsearch.interfaces.NodesStatsSourceInterface;
+import me.snov.newrelic.elasticsearch.reporters.NodesStatsReporter;
 import me.snov.newrelic.elasticsearch.responses.NodesStats;
+import me.snov.newrelic.elasticsearch.responses.NodesStatsTable;
+import me.snov.newrelic.elasticsearch.services.ClusterStatsService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Set;
 
-public class NodesStatsParser extends AbstractParser<NodesStats> {
+public class NodesStatsParser extends AbstractParser<NodesStats> implements NodesStatsSourceInterface {
 
     private static final String URL_CLUSTER_STATS = "/_nodes/stats";
+    private static final String URL_LOCAL_NODE_STATS = "/_nodes/_local/stats";
+
+    private final String[] reportedFields = NodesStatsReporter.REPORTED_FIELDS;
+    private final FieldSet fields = new FieldSet(reportedFields);
+    private final ClusterStatsService clusterStatsService = new ClusterStatsService();
+    private final URL baseUrl;
+    private final NodesStatsTable table = new NodesStatsTable(fields);
+    private boolean streaming = true;
+    private String clusterVersion;
+    private Set<String> metricGroups;
 
     public NodesStatsParser() {
-        super(NodesStats.class, null, null, null);
+        super(NodesStats.class, null, null, null, null);
+        this.baseUrl = null;
+    }
+
+    public NodesStatsParser(String protocol, String host, int port, String basePath, String username, String password,
+                            HttpConnectionPool connectionPool) throws MalformedURLException {
+        this(protocol, host, port, basePath, username, password, connectionPool, false);
+    }
+
+    /**
+     * @param localNode Request stats of the node at host:port only
+     */
+    public NodesStatsParser(String protocol, String host, int port, String basePath, String username, String password,
+                            HttpConnectionPool connectionPool, boolean localNode) throws MalformedURLException {
+        super(NodesStats.class,
+            new URL(protocol, host, port, basePath + (localNode ? URL_LOCAL_NODE_STATS : URL_CLUSTER_STATS)),
+            username, password, connectionPool);
+        this.baseUrl = getUrl();
+    }
+
+    /**
+     * @param streaming Read only reported fields (default) or bind the whole response
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Requests only reported metric groups (1.0+) and fields (filter_path, 1.6+), depending on the lowest
+     * version of a node in cluster. The whole response is requested while the version is unknown.
+     */
+    @Override
+    public synchronized void setClusterVersion(String clusterVersion) {
+        this.clusterVersion = clusterVersion;
+        updateUrl();
+    }
+
+    /**
+     * Nodes are gathered by the coordinating node, their number doesn't matter
+     */
+    @Override
+    public void setNodeCount(int nodeCount) {
+    }
+
+    /**
+     * Groups are only left out of the response on 1.0+, older versions always return all of them
+     */
+    @Override
+    public synchronized void setMetricGroups(Set<String> groups) {
+        this.metricGroups = groups;
+        updateUrl();
+    }
+
+    private void updateUrl() {
+        if (baseUrl == null) {
+            return;
+        }
+
+        String[] requestedFields = FilterPath.selectGroups(reportedFields, metricGroups);
+        StringBuilder file = new StringBuilder(baseUrl.getPath());
+        if (clusterStatsService.isVersionAtLeast(clusterVersion, 1, 0)) {
+            file.append('/').append(FilterPath.getGroups(requestedFields));
+        }
+        if (clusterStatsService.isVersionAtLeast(clusterVersion, 1, 6)) {
+            String filterPath = FilterPath.build("nodes.*.", requestedFields, FilterPath.MAX_LENGTH);
+            if (filterPath != null) {
+                file.append("?filter_path=").append(filterPath);
+            }
+        }
+
+        try {
+            setUrl(new URL(baseUrl, file.toString()));
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * @return Table reused by every request, valid until the next one
+     */
+    @Override
+    public NodesStatsTable requestTable() throws IOException {
+        if (!streaming) {
+            NodesStats nodesStats = request();
+            table.clear();
+            table.add(nodesStats);
+            return table;
+        }
+
+        HttpResponse response = get();
+        try {
+            return parseTable(response.getInputStream());
+        } finally {
+            response.close();
+        }
+    }
+
+    public NodesStatsTable parseTable(InputStream stream) throws IOException {
+        table.clear();
+        new StreamingStatsReader(fields).readEntries(new InputStreamReader(stream), "nodes", table);
+        return table;
     }
 
-    public NodesStatsParser(String protocol, String host, int port, String basePath, String username, String password) throws MalformedURLException {
-        super(NodesStats.class, new URL(protocol, host, port, basePath + URL_CLUSTER_STATS), username, password);
+    @Override
+    protected NodesStats read(Reader reader) throws IOException {
+        if (!streaming) {
+            return super.read(reader);
+        }
+
+        ObjectBindingSink<NodesStats.NodeStats> sink =
+            new ObjectBindingSink<NodesStats.NodeStats>(fields, NodesStats.NodeStats.class);
+        new StreamingStatsReader(fields).readEntries(reader, "nodes", sink);
+
+        NodesStats nodesStats = new NodesStats();
+        nodesStats.nodes = sink.getEntries();
+        return nodesStats;
     }
 }
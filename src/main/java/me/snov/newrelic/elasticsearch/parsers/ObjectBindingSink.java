@@ -0,0 +1,128 @@
+package me.snov.newrelic.elasticsearch.parsers;
+
+import me.snov.newrelic.elasticsearch.interfaces.StatsSinkInterface;
+
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builds response objects (e.g. {@link me.snov.newrelic.elasticsearch.responses.NodesStats.NodeStats})
+ * with only the fields of a {@link FieldSet} populated.
+ */
+class ObjectBindingSink<T> implements StatsSinkInterface {
+
+    private static final double MAX_LONG = (double) Long.MAX_VALUE;
+
+    private final FieldSet fields;
+    private final Class<T> entryClass;
+    private final Field[] javaFields;
+    private final Object[] objects;
+    private final Map<String, T> entries;
+    private T entry;
+
+    ObjectBindingSink(FieldSet fields, Class<T> entryClass) {
+        this.fields = fields;
+        this.entryClass = entryClass;
+        this.javaFields = resolveFields(fields, entryClass);
+        this.objects = new Object[fields.size()];
+        this.entries = new LinkedHashMap<String, T>();
+    }
+
+    /**
+     * Maps every path of the set to a field of the response class, paths missing in the class are ignored
+     */
+    private static Field[] resolveFields(FieldSet fields, Class<?> entryClass) {
+        Field[] javaFields = new Field[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            int parent = fields.getParent(i);
+            Class<?> parentClass = parent == FieldSet.ROOT
+                ? entryClass
+                : (javaFields[parent] != null ? javaFields[parent].getType() : null);
+            if (parentClass == null) {
+                continue;
+            }
+            try {
+                Field field = parentClass.getDeclaredField(fields.getName(i));
+                field.setAccessible(true);
+                javaFields[i] = field;
+            } catch (NoSuchFieldException e) {
+                javaFields[i] = null;
+            }
+        }
+        return javaFields;
+    }
+
+    public Map<String, T> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public void startEntry(String key) {
+        entry = newInstance(entryClass);
+        entries.put(key, entry);
+    }
+
+    @Override
+    public void startObject(int field) {
+        if (javaFields[field] != null) {
+            Object object = newInstance(javaFields[field].getType());
+            objects[field] = set(field, object) ? object : null;
+        }
+    }
+
+    @Override
+    public void value(int field, double value) {
+        if (javaFields[field] == null) {
+            return;
+        }
+        Class<?> type = javaFields[field].getType();
+        if (type == Number.class || type == Object.class) {
+            // Integral values are kept as Long to preserve precision of large counters
+            set(field, value == Math.rint(value) && Math.abs(value) < MAX_LONG
+                ? (Number) Long.valueOf((long) value)
+                : (Number) Double.valueOf(value));
+        } else if (type == Double.class) {
+            set(field, value);
+        }
+    }
+
+    @Override
+    public void value(int field, String value) {
+        if (javaFields[field] != null && javaFields[field].getType() == String.class) {
+            set(field, value);
+        }
+    }
+
+    @Override
+    public void endEntry() {
+        entry = null;
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = null;
+        }
+    }
+
+    private boolean set(int field, Object value) {
+        int parent = fields.getParent(field);
+        Object target = parent == FieldSet.ROOT ? entry : objects[parent];
+        if (target == null) {
+            return false;
+        }
+        try {
+            javaFields[field].set(target, value);
+            return true;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <O> O newInstance(Class<O> type) {
+        try {
+            return type.newInstance();
+        } catch (InstantiationException e) {
+            throw new IllegalStateException("Can't create " + type.getName(), e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Can't create " + type.getName(), e);
+        }
+    }
+}
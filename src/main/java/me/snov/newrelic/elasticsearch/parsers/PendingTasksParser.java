@@ -0,0 +1,64 @@
+package me.snov.newrelic.elasticsearch.parsers;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
+import me.snov.newrelic.elasticsearch.responses.PendingTasks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Counts the tasks of /_cluster/pending_tasks and finds the longest wait while streaming them,
+ * a congested master can have many thousands of them queued.
+ */
+public class PendingTasksParser extends AbstractParser<PendingTasks> {
+
+    private static final String URL_PENDING_TASKS = "/_cluster/pending_tasks";
+
+    public PendingTasksParser() {
+        super(PendingTasks.class, null, null, null, null);
+    }
+
+    public PendingTasksParser(String protocol, String host, int port, String basePath, String username,
+                              String password, HttpConnectionPool connectionPool) throws MalformedURLException {
+        super(PendingTasks.class, new URL(protocol, host, port, basePath + URL_PENDING_TASKS), username, password,
+            connectionPool);
+    }
+
+    @Override
+    protected PendingTasks read(Reader reader) throws IOException {
+        PendingTasks pendingTasks = new PendingTasks();
+        JsonReader json = new JsonReader(reader);
+        json.beginObject();
+        while (json.hasNext()) {
+            if (!"tasks".equals(json.nextName()) || json.peek() != JsonToken.BEGIN_ARRAY) {
+                json.skipValue();
+                continue;
+            }
+            json.beginArray();
+            while (json.hasNext()) {
+                readTask(json, pendingTasks);
+            }
+            json.endArray();
+        }
+        json.endObject();
+        return pendingTasks;
+    }
+
+    private void readTask(JsonReader json, PendingTasks pendingTasks) throws IOException {
+        pendingTasks.count++;
+        json.beginObject();
+        while (json.hasNext()) {
+            if ("time_in_queue_millis".equals(json.nextName()) && json.peek() == JsonToken.NUMBER) {
+                pendingTasks.max_time_in_queue_millis =
+                    Math.max(pendingTasks.max_time_in_queue_millis, json.nextLong());
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+}
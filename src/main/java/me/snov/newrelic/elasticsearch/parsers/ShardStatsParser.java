@@ -0,0 +1,105 @@
+package me.snov.newrelic.elasticsearch.parsers;
+
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
+import me.snov.newrelic.elasticsearch.services.ShardSkew;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Streams the shard list of /_cat/shards (1.0+) line by line into a {@link ShardSkew}, shards are never kept.
+ * The plain text table is requested, as JSON it would be a single array of all shards.
+ */
+public class ShardStatsParser extends AbstractParser<ShardSkew> {
+
+    // Node is last, it may contain spaces, and "a -> b" while a shard is relocating
+    private static final String URL_CAT_SHARDS =
+        "/_cat/shards?format=text&bytes=b&h=index,shard,prirep,state,store,indexing.index_total,node";
+
+    private static final String RELOCATION_SEPARATOR = " -> ";
+
+    private final ShardSkew shardSkew = new ShardSkew();
+
+    public ShardStatsParser() {
+        super(ShardSkew.class, null, null, null, null);
+    }
+
+    public ShardStatsParser(String protocol, String host, int port, String basePath, String username, String password,
+                            HttpConnectionPool connectionPool) throws MalformedURLException {
+        super(ShardSkew.class, new URL(protocol, host, port, basePath + URL_CAT_SHARDS), username, password,
+            connectionPool);
+    }
+
+    /**
+     * Skew reused by every request, valid until the next one
+     */
+    public ShardSkew getShardSkew() {
+        return shardSkew;
+    }
+
+    /**
+     * @param timeMillis Time of the response, for the rates
+     */
+    public ShardSkew parse(InputStream stream, long timeMillis) throws IOException {
+        return read(new InputStreamReader(stream), timeMillis);
+    }
+
+    @Override
+    protected ShardSkew read(Reader reader) throws IOException {
+        return read(reader, System.currentTimeMillis());
+    }
+
+    private ShardSkew read(Reader reader, long timeMillis) throws IOException {
+        shardSkew.startCycle(timeMillis);
+        BufferedReader lines = new BufferedReader(reader);
+        String[] columns = new String[6];
+        String line;
+        while ((line = lines.readLine()) != null) {
+            int nodeStart = split(line, columns);
+            // Unassigned and initializing shards have no store yet
+            if (nodeStart < 0 || !("STARTED".equals(columns[3]) || "RELOCATING".equals(columns[3]))) {
+                continue;
+            }
+            String node = line.substring(nodeStart).trim();
+            int relocation = node.indexOf(RELOCATION_SEPARATOR);
+            if (relocation >= 0) {
+                node = node.substring(0, relocation);
+            }
+
+            String shard = columns[0] + "/" + columns[1];
+            shardSkew.addShard(node, shard, shard + "/" + columns[2] + "/" + node,
+                parseNumber(columns[4]), parseNumber(columns[5]));
+        }
+        return shardSkew;
+    }
+
+    /**
+     * Splits the first columns at runs of spaces
+     *
+     * @return Start of the rest of the line, -1 if the line has fewer columns
+     */
+    private static int split(String line, String[] columns) {
+        int position = 0;
+        for (int column = 0; column < columns.length; column++) {
+            while (position < line.length() && line.charAt(position) == ' ') {
+                position++;
+            }
+            int end = line.indexOf(' ', position);
+            if (end < 0) {
+                return -1;
+            }
+            columns[column] = line.substring(position, end);
+            position = end;
+        }
+        return position < line.length() ? position : -1;
+    }
+
+    private static double parseNumber(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package me.snov.newrelic.elasticsearch.parsers;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import me.snov.newrelic.elasticsearch.interfaces.StatsSinkInterface;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads only the fields of a {@link FieldSet} from a stats response and passes them to a sink,
+ * everything else is skipped without being materialized.
+ */
+class StreamingStatsReader {
+
+    private final FieldSet fields;
+
+    StreamingStatsReader(FieldSet fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Reads {"nodes": {"id": {...}, ...}} response, every node is an entry
+     */
+    void readEntries(Reader input, String entriesField, StatsSinkInterface sink) throws IOException {
+        JsonReader reader = new JsonReader(input);
+        reader.setLenient(true);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (entriesField.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    sink.startEntry(reader.nextName());
+                    readObject(reader, FieldSet.ROOT, sink);
+                    sink.endEntry();
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readObject(JsonReader reader, int parent, StatsSinkInterface sink) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int field = fields.getChild(parent, reader.nextName());
+            if (field == -1) {
+                reader.skipValue();
+            } else if (fields.isObject(field)) {
+                if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    sink.startObject(field);
+                }
+                readObject(reader, field, sink);
+            } else {
+                readValue(reader, field, sink);
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readValue(JsonReader reader, int field, StatsSinkInterface sink) throws IOException {
+        switch (reader.peek()) {
+            case NUMBER:
+                sink.value(field, reader.nextDouble());
+                break;
+            case STRING:
+                sink.value(field, reader.nextString());
+                break;
+            case BEGIN_ARRAY:
+                // E.g. os.load_average [1m, 5m, 15m] in 1.x, only the first value is used
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    readValue(reader, field, sink);
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+                break;
+            default:
+                reader.skipValue();
+        }
+    }
+}
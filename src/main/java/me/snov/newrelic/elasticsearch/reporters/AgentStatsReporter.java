@@ -0,0 +1,61 @@
+package me.snov.newrelic.elasticsearch.reporters;
+
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
+import me.snov.newrelic.elasticsearch.interfaces.AgentInterface;
+
+/**
+ * Reports metrics about the agent itself
+ */
+public class AgentStatsReporter {
+
+    private final AgentInterface agent;
+    private long lastHits;
+    private long lastMisses;
+    private long lastBytesReceived;
+    private long lastBytesDecoded;
+    private long lastUndeliveredCycles;
+
+    public AgentStatsReporter(AgentInterface agent) {
+        this.agent = agent;
+    }
+
+    public void reportConnectionPoolStats(HttpConnectionPool connectionPool) {
+        long hits = connectionPool.getHits();
+        long misses = connectionPool.getMisses();
+
+        // Requests since last poll cycle, served by an open connection or by a new one
+        // Component/V1/Agent/ConnectionPool/*
+        agent.reportMetric("V1/Agent/ConnectionPool/Hits", "requests", hits - lastHits);
+        agent.reportMetric("V1/Agent/ConnectionPool/Misses", "requests", misses - lastMisses);
+        agent.reportMetric("V1/Agent/ConnectionPool/Idle", "connections", connectionPool.getIdleConnections());
+
+        lastHits = hits;
+        lastMisses = misses;
+    }
+
+    public void reportCompressionStats(HttpConnectionPool connectionPool) {
+        long bytesReceived = connectionPool.getBytesReceived();
+        long bytesDecoded = connectionPool.getBytesDecoded();
+
+        // Response bytes since last poll cycle, and how much less was transferred thanks to compression
+        // Component/V1/Agent/Http/*
+        agent.reportMetric("V1/Agent/Http/BytesReceived", "bytes", bytesReceived - lastBytesReceived);
+        // Never negative, a body can't be smaller once decoded than on the wire
+        agent.reportMetric("V1/Agent/Http/CompressionSavedBytes", "bytes",
+            Math.max((bytesDecoded - lastBytesDecoded) - (bytesReceived - lastBytesReceived), 0));
+
+        lastBytesReceived = bytesReceived;
+        lastBytesDecoded = bytesDecoded;
+    }
+
+    /**
+     * @param undeliveredCycles Cycles reported while New Relic could not be reached, since the agent started
+     */
+    public void reportPublisherStats(long undeliveredCycles) {
+        // Cycles since last poll cycle which the publisher could not deliver right away
+        // Component/V1/Agent/Publisher/UndeliveredCycles
+        agent.reportMetric("V1/Agent/Publisher/UndeliveredCycles", "cycles", undeliveredCycles - lastUndeliveredCycles);
+
+        lastUndeliveredCycles = undeliveredCycles;
+    }
+}
@@ -0,0 +1,49 @@
+package me.snov.newrelic.elasticsearch.reporters;
+
+import me.snov.newrelic.elasticsearch.interfaces.AgentInterface;
+import me.snov.newrelic.elasticsearch.responses.ClusterHealth;
+import me.snov.newrelic.elasticsearch.responses.PendingTasks;
+import me.snov.newrelic.elasticsearch.services.ClusterStatsService;
+
+/**
+ * Reports cluster health polled between the polls of cluster stats, the Runner aggregates the values of a cycle
+ */
+public class ClusterHealthReporter {
+
+    private final AgentInterface agent;
+    private final ClusterStatsService clusterStatsService;
+
+    public ClusterHealthReporter(AgentInterface agent) {
+        this.agent = agent;
+        this.clusterStatsService = new ClusterStatsService();
+    }
+
+    /**
+     * @param pendingTasks Null if the longest wait is known from cluster health, or if no tasks are pending
+     */
+    public void reportClusterHealth(ClusterHealth clusterHealth, PendingTasks pendingTasks) {
+        // Component/V1/ClusterHealth/Status/*
+        agent.reportMetric("V1/ClusterHealth/Status/IsYellow", "bool", asInt(clusterStatsService.isYellow(clusterHealth)));
+        agent.reportMetric("V1/ClusterHealth/Status/IsRed", "bool", asInt(clusterStatsService.isRed(clusterHealth)));
+
+        // Component/V1/ClusterHealth/Shards/*
+        agent.reportMetric("V1/ClusterHealth/Shards/Unassigned", "shards", clusterHealth.unassigned_shards);
+        agent.reportMetric("V1/ClusterHealth/Shards/Initializing", "shards", clusterHealth.initializing_shards);
+        agent.reportMetric("V1/ClusterHealth/Shards/Relocating", "shards", clusterHealth.relocating_shards);
+
+        // Component/V1/ClusterHealth/PendingTasks/*
+        Number maxTimeInQueue = clusterHealth.task_max_waiting_in_queue_millis;
+        if (pendingTasks != null) {
+            maxTimeInQueue = pendingTasks.max_time_in_queue_millis;
+        } else if (maxTimeInQueue == null && clusterHealth.number_of_pending_tasks != null
+            && clusterHealth.number_of_pending_tasks.intValue() == 0) {
+            maxTimeInQueue = 0;
+        }
+        agent.reportMetric("V1/ClusterHealth/PendingTasks/Count", "tasks", clusterHealth.number_of_pending_tasks);
+        agent.reportMetric("V1/ClusterHealth/PendingTasks/MaxTimeInQueue", "milliseconds", maxTimeInQueue);
+    }
+
+    private int asInt(boolean value) {
+        return value ? 1 : 0;
+    }
+}
@@ -6,6 +6,29 @@ import me.snov.newrelic.elasticsearch.services.ClusterStatsService;
 
 public class ClusterStatsReporter {
 
+    /**
+     * Fields read by this reporter and {@link ClusterStatsService}, used to build filter_path.
+     * Keep in sync with reportClusterStats.
+     */
+    public static final String[] REPORTED_FIELDS = {
+        "cluster_name",
+        "status",
+        "indices.count",
+        "indices.docs.count",
+        "indices.docs.deleted",
+        "indices.shards.total",
+        "indices.shards.primaries",
+        "indices.shards.replication",
+        "indices.segments.count",
+        "indices.store.size_in_bytes",
+        "nodes.count.total",
+        "nodes.count.master_data",
+        "nodes.count.master_only",
+        "nodes.count.data_only",
+        "nodes.count.client",
+        "nodes.versions",
+    };
+
     private final AgentInterface agent;
     private final ClusterStatsService clusterStatsService;
 
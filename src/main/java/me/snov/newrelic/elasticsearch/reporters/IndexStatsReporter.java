@@ -0,0 +1,68 @@
+package me.snov.newrelic.elasticsearch.reporters;
+
+import me.snov.newrelic.elasticsearch.services.IndexRanking;
+import me.snov.newrelic.elasticsearch.services.MetricNameTable;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reports the hottest indices of an {@link IndexRanking}, an index in more than one ranking is reported once
+ */
+public class IndexStatsReporter {
+
+    /**
+     * Fields of an index read by {@link IndexRanking}, the rest of the response is skipped by the streaming parser
+     */
+    public static final String[] REPORTED_FIELDS = {
+        "total.indexing.index_total",
+        "total.search.query_total",
+        "total.store.size_in_bytes",
+    };
+
+    private final MetricBuffer metrics;
+    private final MetricNameTable metricNames;
+    private final int indexingRate;
+    private final int searchRate;
+    private final int storeGrowth;
+    private final int storeSize;
+    private final Set<String> reported = new HashSet<String>();
+
+    public IndexStatsReporter(MetricBuffer metrics) {
+        this.metrics = metrics;
+        this.metricNames = metrics.getMetricNames();
+        // Per index names are dropped once an index has left the top for a while
+        this.indexingRate = metricNames.getMetricId("V1/IndexStats/Indexing", "documents/second", true);
+        this.searchRate = metricNames.getMetricId("V1/IndexStats/Search", "queries/second", true);
+        this.storeGrowth = metricNames.getMetricId("V1/IndexStats/StoreGrowth", "bytes/second", true);
+        this.storeSize = metricNames.getMetricId("V1/IndexStats/StoreSize", "bytes", false);
+    }
+
+    public void reportIndexStats(IndexRanking ranking) {
+        metricNames.startCycle(MetricNameTable.INDEX);
+        reported.clear();
+        for (int ranked : new int[]{IndexRanking.INDEXING, IndexRanking.SEARCH, IndexRanking.STORE_GROWTH}) {
+            IndexRanking.Top top = ranking.getTop(ranked);
+            for (int i = 0; i < top.size(); i++) {
+                String index = top.getName(i);
+                if (!reported.add(index)) {
+                    continue;
+                }
+                // Component/V1/IndexStats/*/{index}
+                reportIndexMetric(indexingRate, index, top.getValue(i, IndexRanking.INDEXING));
+                reportIndexMetric(searchRate, index, top.getValue(i, IndexRanking.SEARCH));
+                reportIndexMetric(storeGrowth, index, top.getValue(i, IndexRanking.STORE_GROWTH));
+                reportIndexMetric(storeSize, index, top.getValue(i, IndexRanking.STORE_SIZE));
+            }
+        }
+
+        // Component/V1/IndexStats/Count
+        metrics.reportMetric("V1/IndexStats/Count", "indices", ranking.getIndexCount());
+    }
+
+    private void reportIndexMetric(int metricId, String index, double value) {
+        if (!Double.isNaN(value)) {
+            metrics.add(metricNames.getIndexMetricId(metricId, index), value);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package me.snov.newrelic.elasticsearch.reporters;
+
+import me.snov.newrelic.elasticsearch.interfaces.AgentInterface;
+import me.snov.newrelic.elasticsearch.services.MetricNameTable;
+
+import java.util.Arrays;
+
+/**
+ * Metrics of a poll cycle as columns of metric ids and values, collected on worker threads until the agent
+ * passes them to a {@link me.snov.newrelic.elasticsearch.interfaces.MetricSinkInterface}.
+ * Ids are resolved to names and units with the buffer's {@link MetricNameTable}.
+ */
+public class MetricBuffer implements AgentInterface {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final MetricNameTable metricNames;
+    private int[] metricIds;
+    private double[] values;
+    private int size;
+
+    public MetricBuffer() {
+        this(new MetricNameTable());
+    }
+
+    public MetricBuffer(MetricNameTable metricNames) {
+        this.metricNames = metricNames;
+        this.metricIds = new int[INITIAL_CAPACITY];
+        this.values = new double[INITIAL_CAPACITY];
+    }
+
+    public MetricNameTable getMetricNames() {
+        return metricNames;
+    }
+
+    public synchronized void add(int metricId, double value) {
+        if (size == metricIds.length) {
+            metricIds = Arrays.copyOf(metricIds, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        metricIds[size] = metricId;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Adds metric by name, null values are skipped like the publisher does
+     */
+    @Override
+    public void reportMetric(String metricName, String units, Number value) {
+        if (value != null) {
+            add(metricNames.getMetricId(metricName, units, false), value.doubleValue());
+        }
+    }
+
+    /**
+     * Adds all metrics of the other buffer, which must share the same {@link MetricNameTable}
+     */
+    public void addAll(MetricBuffer other) {
+        synchronized (other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.metricIds[i], other.values[i]);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int getMetricId(int index) {
+        return metricIds[index];
+    }
+
+    public synchronized double getValue(int index) {
+        return values[index];
+    }
+
+    public synchronized void clear() {
+        size = 0;
+    }
+}
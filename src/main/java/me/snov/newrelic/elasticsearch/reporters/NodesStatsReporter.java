@@ -1,402 +1,859 @@
 package me.snov.newrelic.elasticsearch.reporters;
 
-import me.snov.newrelic.elasticsearch.interfaces.AgentInterface;
+import me.snov.newrelic.elasticsearch.interfaces.CounterStateInterface;
+import me.snov.newrelic.elasticsearch.parsers.FieldSet;
 import me.snov.newrelic.elasticsearch.responses.NodesStats;
+import me.snov.newrelic.elasticsearch.responses.NodesStatsTable;
 import me.snov.newrelic.elasticsearch.services.EpochCounterFactory;
+import me.snov.newrelic.elasticsearch.services.LogHistogram;
+import me.snov.newrelic.elasticsearch.services.MetricNameTable;
 import me.snov.newrelic.elasticsearch.services.NodesStatsService;
 
-public class NodesStatsReporter {
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-    private final AgentInterface agent;
+public class NodesStatsReporter implements CounterStateInterface {
+
+    /**
+     * Fields of a node read by this reporter and {@link NodesStatsService}, the rest of the response is skipped
+     * by the streaming parser. Keep in sync with report* methods.
+     */
+    public static final String[] REPORTED_FIELDS = {
+        "name",
+        "indices.docs.count",
+        "indices.docs.deleted",
+        "indices.store.size_in_bytes",
+        "indices.store.throttle_time_in_millis",
+        "indices.indexing.index_total",
+        "indices.indexing.index_time_in_millis",
+        "indices.indexing.delete_total",
+        "indices.indexing.delete_time_in_millis",
+        "indices.get.total",
+        "indices.get.time_in_millis",
+        "indices.search.query_total",
+        "indices.search.query_time_in_millis",
+        "indices.search.fetch_total",
+        "indices.search.fetch_time_in_millis",
+        "indices.merges.total",
+        "indices.merges.total_size_in_bytes",
+        "indices.merges.total_time_in_millis",
+        "indices.merges.total_docs",
+        "indices.refresh.total",
+        "indices.refresh.total_time_in_millis",
+        "indices.flush.total",
+        "indices.flush.total_time_in_millis",
+        "indices.warmer.total",
+        "indices.warmer.total_time_in_millis",
+        "indices.filter_cache.memory_size_in_bytes",
+        "indices.filter_cache.evictions",
+        "indices.fielddata.memory_size_in_bytes",
+        "indices.fielddata.evictions",
+        "indices.id_cache.memory_size_in_bytes",
+        "indices.completion.size_in_bytes",
+        "indices.segments.count",
+        "indices.suggest.total",
+        "indices.suggest.time_in_millis",
+        "os.uptime_in_millis",
+        "os.load_average",
+        "os.mem.used_percent",
+        "os.mem.used_in_bytes",
+        "os.swap.used_in_bytes",
+        "os.swap.free_in_bytes",
+        "process.open_file_descriptors",
+        "process.cpu.percent",
+        "jvm.uptime_in_millis",
+        "jvm.mem.heap_used_percent",
+        "jvm.mem.heap_used_in_bytes",
+        "jvm.mem.non_heap_used_in_bytes",
+        "jvm.gc.collectors.old.collection_count",
+        "jvm.gc.collectors.old.collection_time_in_millis",
+        "jvm.gc.collectors.young.collection_count",
+        "jvm.gc.collectors.young.collection_time_in_millis",
+        "thread_pool.search.completed",
+        "thread_pool.search.queue",
+        "thread_pool.search.rejected",
+        "thread_pool.get.completed",
+        "thread_pool.get.queue",
+        "thread_pool.get.rejected",
+        "thread_pool.suggest.completed",
+        "thread_pool.suggest.queue",
+        "thread_pool.suggest.rejected",
+        "thread_pool.index.completed",
+        "thread_pool.index.queue",
+        "thread_pool.index.rejected",
+        "thread_pool.force_merge.completed",
+        "thread_pool.force_merge.queue",
+        "thread_pool.force_merge.rejected",
+        "thread_pool.merge.completed",
+        "thread_pool.merge.queue",
+        "thread_pool.merge.rejected",
+        "thread_pool.bulk.completed",
+        "thread_pool.bulk.queue",
+        "thread_pool.bulk.rejected",
+        "thread_pool.warmer.completed",
+        "thread_pool.warmer.queue",
+        "thread_pool.warmer.rejected",
+        "thread_pool.flush.completed",
+        "thread_pool.flush.queue",
+        "thread_pool.flush.rejected",
+        "thread_pool.refresh.completed",
+        "thread_pool.refresh.queue",
+        "thread_pool.refresh.rejected",
+        "fs.total.disk_read_size_in_bytes",
+        "fs.total.disk_write_size_in_bytes",
+        "transport.server_open",
+        "transport.rx_size_in_bytes",
+        "transport.tx_size_in_bytes",
+        "http.current_open",
+    };
+
+    // Paths read by the report* methods, resolved to the fields of a table once per FieldSet rather than per value
+    private static final List<String> PATHS = new ArrayList<String>();
+    // Objects, a group or section missing from a response is not reported
+    private static final int FS = path("fs");
+    private static final int FS_TOTAL = path("fs.total");
+    private static final int HTTP = path("http");
+    private static final int INDICES = path("indices");
+    private static final int INDICES_COMPLETION = path("indices.completion");
+    private static final int INDICES_FIELDDATA = path("indices.fielddata");
+    private static final int INDICES_FILTER_CACHE = path("indices.filter_cache");
+    private static final int INDICES_FLUSH = path("indices.flush");
+    private static final int INDICES_ID_CACHE = path("indices.id_cache");
+    private static final int INDICES_MERGES = path("indices.merges");
+    private static final int INDICES_REFRESH = path("indices.refresh");
+    private static final int INDICES_SEGMENTS = path("indices.segments");
+    private static final int INDICES_STORE = path("indices.store");
+    private static final int INDICES_SUGGEST = path("indices.suggest");
+    private static final int INDICES_WARMER = path("indices.warmer");
+    private static final int JVM = path("jvm");
+    private static final int OS = path("os");
+    private static final int OS_MEM = path("os.mem");
+    private static final int OS_SWAP = path("os.swap");
+    private static final int PROCESS = path("process");
+    private static final int THREAD_POOL = path("thread_pool");
+    private static final int THREAD_POOL_FORCE_MERGE = path("thread_pool.force_merge");
+    private static final int THREAD_POOL_MERGE = path("thread_pool.merge");
+    private static final int THREAD_POOL_SUGGEST = path("thread_pool.suggest");
+    private static final int TRANSPORT = path("transport");
+    // Values, in the order of REPORTED_FIELDS
+    private static final int NAME = path("name");
+    private static final int INDICES_DOCS_COUNT = path("indices.docs.count");
+    private static final int INDICES_DOCS_DELETED = path("indices.docs.deleted");
+    private static final int INDICES_STORE_SIZE_IN_BYTES = path("indices.store.size_in_bytes");
+    private static final int INDICES_STORE_THROTTLE_TIME_IN_MILLIS = path("indices.store.throttle_time_in_millis");
+    private static final int INDICES_INDEXING_INDEX_TOTAL = path("indices.indexing.index_total");
+    private static final int INDICES_INDEXING_INDEX_TIME_IN_MILLIS = path("indices.indexing.index_time_in_millis");
+    private static final int INDICES_INDEXING_DELETE_TOTAL = path("indices.indexing.delete_total");
+    private static final int INDICES_INDEXING_DELETE_TIME_IN_MILLIS = path("indices.indexing.delete_time_in_millis");
+    private static final int INDICES_GET_TOTAL = path("indices.get.total");
+    private static final int INDICES_GET_TIME_IN_MILLIS = path("indices.get.time_in_millis");
+    private static final int INDICES_SEARCH_QUERY_TOTAL = path("indices.search.query_total");
+    private static final int INDICES_SEARCH_QUERY_TIME_IN_MILLIS = path("indices.search.query_time_in_millis");
+    private static final int INDICES_SEARCH_FETCH_TOTAL = path("indices.search.fetch_total");
+    private static final int INDICES_SEARCH_FETCH_TIME_IN_MILLIS = path("indices.search.fetch_time_in_millis");
+    private static final int INDICES_MERGES_TOTAL = path("indices.merges.total");
+    private static final int INDICES_MERGES_TOTAL_SIZE_IN_BYTES = path("indices.merges.total_size_in_bytes");
+    private static final int INDICES_MERGES_TOTAL_TIME_IN_MILLIS = path("indices.merges.total_time_in_millis");
+    private static final int INDICES_MERGES_TOTAL_DOCS = path("indices.merges.total_docs");
+    private static final int INDICES_REFRESH_TOTAL = path("indices.refresh.total");
+    private static final int INDICES_REFRESH_TOTAL_TIME_IN_MILLIS = path("indices.refresh.total_time_in_millis");
+    private static final int INDICES_FLUSH_TOTAL = path("indices.flush.total");
+    private static final int INDICES_FLUSH_TOTAL_TIME_IN_MILLIS = path("indices.flush.total_time_in_millis");
+    private static final int INDICES_WARMER_TOTAL = path("indices.warmer.total");
+    private static final int INDICES_WARMER_TOTAL_TIME_IN_MILLIS = path("indices.warmer.total_time_in_millis");
+    private static final int INDICES_FILTER_CACHE_MEMORY_SIZE_IN_BYTES =
+        path("indices.filter_cache.memory_size_in_bytes");
+    private static final int INDICES_FILTER_CACHE_EVICTIONS = path("indices.filter_cache.evictions");
+    private static final int INDICES_FIELDDATA_MEMORY_SIZE_IN_BYTES = path("indices.fielddata.memory_size_in_bytes");
+    private static final int INDICES_FIELDDATA_EVICTIONS = path("indices.fielddata.evictions");
+    private static final int INDICES_ID_CACHE_MEMORY_SIZE_IN_BYTES = path("indices.id_cache.memory_size_in_bytes");
+    private static final int INDICES_COMPLETION_SIZE_IN_BYTES = path("indices.completion.size_in_bytes");
+    private static final int INDICES_SEGMENTS_COUNT = path("indices.segments.count");
+    private static final int INDICES_SUGGEST_TOTAL = path("indices.suggest.total");
+    private static final int INDICES_SUGGEST_TIME_IN_MILLIS = path("indices.suggest.time_in_millis");
+    private static final int OS_UPTIME_IN_MILLIS = path("os.uptime_in_millis");
+    private static final int OS_LOAD_AVERAGE = path("os.load_average");
+    private static final int OS_MEM_USED_PERCENT = path("os.mem.used_percent");
+    private static final int OS_MEM_USED_IN_BYTES = path("os.mem.used_in_bytes");
+    private static final int OS_SWAP_USED_IN_BYTES = path("os.swap.used_in_bytes");
+    private static final int OS_SWAP_FREE_IN_BYTES = path("os.swap.free_in_bytes");
+    private static final int PROCESS_OPEN_FILE_DESCRIPTORS = path("process.open_file_descriptors");
+    private static final int PROCESS_CPU_PERCENT = path("process.cpu.percent");
+    private static final int JVM_UPTIME_IN_MILLIS = path("jvm.uptime_in_millis");
+    private static final int JVM_MEM_HEAP_USED_PERCENT = path("jvm.mem.heap_used_percent");
+    private static final int JVM_MEM_HEAP_USED_IN_BYTES = path("jvm.mem.heap_used_in_bytes");
+    private static final int JVM_MEM_NON_HEAP_USED_IN_BYTES = path("jvm.mem.non_heap_used_in_bytes");
+    private static final int JVM_GC_COLLECTORS_OLD_COLLECTION_COUNT = path("jvm.gc.collectors.old.collection_count");
+    private static final int JVM_GC_COLLECTORS_OLD_COLLECTION_TIME_IN_MILLIS =
+        path("jvm.gc.collectors.old.collection_time_in_millis");
+    private static final int JVM_GC_COLLECTORS_YOUNG_COLLECTION_COUNT =
+        path("jvm.gc.collectors.young.collection_count");
+    private static final int JVM_GC_COLLECTORS_YOUNG_COLLECTION_TIME_IN_MILLIS =
+        path("jvm.gc.collectors.young.collection_time_in_millis");
+    private static final int THREAD_POOL_SEARCH_COMPLETED = path("thread_pool.search.completed");
+    private static final int THREAD_POOL_SEARCH_QUEUE = path("thread_pool.search.queue");
+    private static final int THREAD_POOL_SEARCH_REJECTED = path("thread_pool.search.rejected");
+    private static final int THREAD_POOL_GET_COMPLETED = path("thread_pool.get.completed");
+    private static final int THREAD_POOL_GET_QUEUE = path("thread_pool.get.queue");
+    private static final int THREAD_POOL_GET_REJECTED = path("thread_pool.get.rejected");
+    private static final int THREAD_POOL_SUGGEST_COMPLETED = path("thread_pool.suggest.completed");
+    private static final int THREAD_POOL_SUGGEST_QUEUE = path("thread_pool.suggest.queue");
+    private static final int THREAD_POOL_SUGGEST_REJECTED = path("thread_pool.suggest.rejected");
+    private static final int THREAD_POOL_INDEX_COMPLETED = path("thread_pool.index.completed");
+    private static final int THREAD_POOL_INDEX_QUEUE = path("thread_pool.index.queue");
+    private static final int THREAD_POOL_INDEX_REJECTED = path("thread_pool.index.rejected");
+    private static final int THREAD_POOL_FORCE_MERGE_COMPLETED = path("thread_pool.force_merge.completed");
+    private static final int THREAD_POOL_FORCE_MERGE_QUEUE = path("thread_pool.force_merge.queue");
+    private static final int THREAD_POOL_FORCE_MERGE_REJECTED = path("thread_pool.force_merge.rejected");
+    private static final int THREAD_POOL_MERGE_COMPLETED = path("thread_pool.merge.completed");
+    private static final int THREAD_POOL_MERGE_QUEUE = path("thread_pool.merge.queue");
+    private static final int THREAD_POOL_MERGE_REJECTED = path("thread_pool.merge.rejected");
+    private static final int THREAD_POOL_BULK_COMPLETED = path("thread_pool.bulk.completed");
+    private static final int THREAD_POOL_BULK_QUEUE = path("thread_pool.bulk.queue");
+    private static final int THREAD_POOL_BULK_REJECTED = path("thread_pool.bulk.rejected");
+    private static final int THREAD_POOL_WARMER_COMPLETED = path("thread_pool.warmer.completed");
+    private static final int THREAD_POOL_WARMER_QUEUE = path("thread_pool.warmer.queue");
+    private static final int THREAD_POOL_WARMER_REJECTED = path("thread_pool.warmer.rejected");
+    private static final int THREAD_POOL_FLUSH_COMPLETED = path("thread_pool.flush.completed");
+    private static final int THREAD_POOL_FLUSH_QUEUE = path("thread_pool.flush.queue");
+    private static final int THREAD_POOL_FLUSH_REJECTED = path("thread_pool.flush.rejected");
+    private static final int THREAD_POOL_REFRESH_COMPLETED = path("thread_pool.refresh.completed");
+    private static final int THREAD_POOL_REFRESH_QUEUE = path("thread_pool.refresh.queue");
+    private static final int THREAD_POOL_REFRESH_REJECTED = path("thread_pool.refresh.rejected");
+    private static final int FS_TOTAL_DISK_READ_SIZE_IN_BYTES = path("fs.total.disk_read_size_in_bytes");
+    private static final int FS_TOTAL_DISK_WRITE_SIZE_IN_BYTES = path("fs.total.disk_write_size_in_bytes");
+    private static final int TRANSPORT_SERVER_OPEN = path("transport.server_open");
+    private static final int TRANSPORT_RX_SIZE_IN_BYTES = path("transport.rx_size_in_bytes");
+    private static final int TRANSPORT_TX_SIZE_IN_BYTES = path("transport.tx_size_in_bytes");
+    private static final int HTTP_CURRENT_OPEN = path("http.current_open");
+
+    // Operations with a latency, by index in the cluster wide sums
+    private static final int QUERY = 0;
+    private static final int FETCH = 1;
+    private static final int GET = 2;
+    private static final int INDEX = 3;
+    private static final String[] LATENCY_METRICS = {
+        "V1/Latency/Query",
+        "V1/Latency/Fetch",
+        "V1/Latency/Get",
+        "V1/Latency/Index",
+    };
+
+    // Metrics whose distribution across nodes is reported, latencies last in the order of LATENCY_METRICS
+    private static final int HEAP_USED = 0;
+    private static final int CPU_USAGE = 1;
+    private static final int SEARCH_QUEUE = 2;
+    private static final int GC_TIME = 3;
+    private static final int LATENCY = 4;
+    private static final String[][] DISTRIBUTION_METRICS = {
+        {"V1/Summary/Nodes/Jvm/Mem/HeapUsedPercent", "percent"},
+        {"V1/Summary/Nodes/Os/Cpu/Usage", "percent"},
+        {"V1/Summary/Nodes/ThreadPool/Search/Queue", "threads"},
+        {"V1/Summary/Nodes/Jvm/Gc/CollectionTime", "milliseconds"},
+        {"V1/Summary/Nodes/Latency/Query", "milliseconds"},
+        {"V1/Summary/Nodes/Latency/Fetch", "milliseconds"},
+        {"V1/Summary/Nodes/Latency/Get", "milliseconds"},
+        {"V1/Summary/Nodes/Latency/Index", "milliseconds"},
+    };
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 1};
+    private static final String[] QUANTILE_NAMES = {"P50", "P90", "P99", "Max"};
+
+    private final MetricBuffer metrics;
     private final EpochCounterFactory processorFactory;
     private final NodesStatsService nodesStatsService;
+    private final MetricNameTable metricNames;
+
+    // Reused for responses bound to the object model
+    private final NodesStatsTable objectTable = new NodesStatsTable(new FieldSet(REPORTED_FIELDS));
+
+    // Field of every path in the FieldSet of the tables being reported
+    private final int[] fieldIds = new int[PATHS.size()];
+    private FieldSet resolvedFields;
+
+    // Table and row being reported, id of the node and time of the response for processed metrics
+    private NodesStatsTable table;
+    private int row;
+    private int nodeId;
+    private long sampleTime;
 
-    public NodesStatsReporter(AgentInterface agent) {
-        this.agent = agent;
+    // Cluster wide rates of operation counts and times, summed over the nodes whose latency is known
+    private final double[] clusterCountRates = new double[LATENCY_METRICS.length];
+    private final double[] clusterTimeRates = new double[LATENCY_METRICS.length];
+
+    // Values of the nodes, filled in the same pass over the nodes which reports them
+    private final LogHistogram[] distributions = new LogHistogram[DISTRIBUTION_METRICS.length];
+    private final int[][] distributionMetricIds = new int[DISTRIBUTION_METRICS.length][QUANTILES.length];
+
+    public NodesStatsReporter(MetricBuffer metrics) {
+        this.metrics = metrics;
         this.nodesStatsService = new NodesStatsService();
         this.processorFactory = new EpochCounterFactory();
+        this.metricNames = metrics.getMetricNames();
+        for (int i = 0; i < DISTRIBUTION_METRICS.length; i++) {
+            distributions[i] = new LogHistogram();
+            for (int q = 0; q < QUANTILES.length; q++) {
+                distributionMetricIds[i][q] = metricNames.getMetricId(
+                    DISTRIBUTION_METRICS[i][0] + "/" + QUANTILE_NAMES[q], DISTRIBUTION_METRICS[i][1], false);
+            }
+        }
+    }
+
+    /**
+     * @param maxIdleCycles Cycles after which counters of a node which is gone are evicted
+     * @param maxCounters Number of counters kept at most
+     */
+    public void setCounterLimits(int maxIdleCycles, int maxCounters) {
+        processorFactory.setLimits(maxIdleCycles, maxCounters);
+        metricNames.setMaxIdleCycles(maxIdleCycles);
     }
 
+    @Override
+    public void saveCounters(DataOutput out) throws IOException {
+        processorFactory.save(out, metricNames);
+    }
+
+    @Override
+    public int loadCounters(DataInput in, long minTimeMillis) throws IOException {
+        return processorFactory.load(in, metricNames, minTimeMillis);
+    }
+
+    /**
+     * Reports nodes bound to the object model
+     */
     public void reportNodesStats(NodesStats nodesStats) {
-        if (nodesStats.nodes != null) {
-            reportCalculatedClusterStats(nodesStats);
-            for (NodesStats.NodeStats nodeStats : nodesStats.nodes.values()) {
-                reportNodeStats(nodeStats);
-            }
+        objectTable.clear();
+        objectTable.add(nodesStats);
+        reportNodesStats(objectTable);
+    }
+
+    public void reportNodesStats(NodesStatsTable nodesStats) {
+        reportNodesStats(nodesStats, System.currentTimeMillis());
+    }
+
+    /**
+     * @param timeMillis Time of the response, for processed metrics
+     */
+    public void reportNodesStats(NodesStatsTable nodesStats, long timeMillis) {
+        sampleTime = timeMillis;
+        processorFactory.startCycle();
+        metricNames.startCycle();
+        Arrays.fill(clusterCountRates, 0);
+        Arrays.fill(clusterTimeRates, 0);
+        for (LogHistogram distribution : distributions) {
+            distribution.clear();
         }
+
+        resolveFields(nodesStats.getFields());
+        table = nodesStats;
+        reportCalculatedClusterStats(nodesStats);
+        for (row = 0; row < nodesStats.size(); row++) {
+            reportNodeStats();
+        }
+        table = null;
+        reportClusterLatency();
+        reportNodeDistributions();
+
+        // Component/V1/Agent/Counters
+        metrics.reportMetric("V1/Agent/Counters", "counters", processorFactory.size());
+        // Component/V1/Agent/MetricNames
+        metrics.reportMetric("V1/Agent/MetricNames", "metrics", metricNames.size());
     }
 
-    private void reportCalculatedClusterStats(NodesStats nodesStats) {
-        /******************* Queries stats *******************/
+    private void reportCalculatedClusterStats(NodesStatsTable nodesStats) {
+        // Groups left out of the poll are not reported
+        if (hasAnyNode(nodesStats, fieldIds[INDICES])) {
+            /******************* Queries stats *******************/
+
+            NodesStatsService.QueriesStat queriesStat = nodesStatsService.getTotalNumberOfQueries(nodesStats);
 
-        NodesStatsService.QueriesStat queriesStat = nodesStatsService.getTotalNumberOfQueries(nodesStats);
+            // Component/V1/QueriesPerSecond/*
+            reportProcessedMetric("V1/QueriesPerSecond/Search", "requests/second", queriesStat.search);
+            reportProcessedMetric("V1/QueriesPerSecond/Fetch", "requests/second", queriesStat.fetch);
+            reportProcessedMetric("V1/QueriesPerSecond/Get", "requests/second", queriesStat.get);
+            reportProcessedMetric("V1/QueriesPerSecond/Index", "requests/second", queriesStat.index);
+            reportProcessedMetric("V1/QueriesPerSecond/Delete", "requests/second", queriesStat.delete);
+        }
 
-        // Component/V1/QueriesPerSecond/*
-        reportProcessedMetric("V1/QueriesPerSecond/Search", "requests/second", queriesStat.search);
-        reportProcessedMetric("V1/QueriesPerSecond/Fetch", "requests/second", queriesStat.fetch);
-        reportProcessedMetric("V1/QueriesPerSecond/Get", "requests/second", queriesStat.get);
-        reportProcessedMetric("V1/QueriesPerSecond/Index", "requests/second", queriesStat.index);
-        reportProcessedMetric("V1/QueriesPerSecond/Delete", "requests/second", queriesStat.delete);
+        if (!hasAnyNode(nodesStats, fieldIds[JVM])) {
+            return;
+        }
 
         /******************* Max heap used, % *******************/
         int maxHeapPercent = 0;
-        for (NodesStats.NodeStats nodeStats : nodesStats.nodes.values()) {
-            if (nodeStats.jvm != null && nodeStats.jvm.mem.heap_used_percent.intValue() > maxHeapPercent) {
-                maxHeapPercent = nodeStats.jvm.mem.heap_used_percent.intValue();
+        int heapUsedPercent = fieldIds[JVM_MEM_HEAP_USED_PERCENT];
+        for (int i = 0; i < nodesStats.size(); i++) {
+            if (nodesStats.has(i, heapUsedPercent) && (int) nodesStats.getValue(i, heapUsedPercent) > maxHeapPercent) {
+                maxHeapPercent = (int) nodesStats.getValue(i, heapUsedPercent);
             }
         }
 
         // Max heap used, %
         // Component/V1/Summary/Jvm/Mem/MaxHeapUsedPercent
-        agent.reportMetric("V1/Summary/Jvm/Mem/MaxHeapUsedPercent", "percent", maxHeapPercent);
+        metrics.reportMetric("V1/Summary/Jvm/Mem/MaxHeapUsedPercent", "percent", maxHeapPercent);
     }
 
-    private String nodeMetricName(String metricName, String nodeName) {
-        return metricName + "/" + nodeName;
+    private static boolean hasAnyNode(NodesStatsTable nodesStats, int field) {
+        for (int i = 0; i < nodesStats.size(); i++) {
+            if (nodesStats.has(i, field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int path(String path) {
+        PATHS.add(path);
+        return PATHS.size() - 1;
+    }
+
+    private void resolveFields(FieldSet fields) {
+        if (fields == resolvedFields) {
+            return;
+        }
+        for (int path = 0; path < fieldIds.length; path++) {
+            fieldIds[path] = fields.getField(PATHS.get(path));
+        }
+        resolvedFields = fields;
     }
 
-    private void reportNodeMetric(String metricName, String units, String nodeName, Number value)
+    private boolean has(int path) {
+        return table.has(row, fieldIds[path]);
+    }
+
+    /**
+     * @return Value of the node being reported, NaN if it is absent
+     */
+    private double value(int path) {
+        return table.getValue(row, fieldIds[path]);
+    }
+
+    private void reportNodeMetric(String metricName, String units, String nodeName, int path)
+    {
+        reportNodeMetric(metricName, units, nodeName, value(path));
+    }
+
+    private void reportNodeMetric(String metricName, String units, String nodeName, double value)
+    {
+        if (!Double.isNaN(value)) {
+            int metricId = metricNames.getMetricId(metricName, units, false);
+            metrics.add(metricNames.getNodeMetricId(metricId, nodeName), value);
+        }
+    }
+
+    /**
+     * @return Rate of the counter, NaN if it is not known
+     */
+    private double reportNodeProcessedMetric(String metricName, String units, String nodeName, int path)
+    {
+        int metricId = metricNames.getMetricId(metricName, units, true);
+        double processedValue = processorFactory.process(metricId, nodeId, value(path), sampleTime);
+        if (!Double.isNaN(processedValue)) {
+            metrics.add(metricNames.getNodeMetricId(metricId, nodeName), processedValue);
+        }
+        return processedValue;
+    }
+
+    /**
+     * Reports time per operation of the node over the interval, the rates of both counters share it.
+     * Rates are unknown on the first poll of a node and after its counters were reset by a restart, such a node
+     * is left out of the cluster wide latency as well.
+     */
+    private void reportNodeLatency(int operation, String metricName, String nodeName, double countRate,
+                                   double timeRate)
+    {
+        if (Double.isNaN(countRate) || Double.isNaN(timeRate)) {
+            return;
+        }
+        clusterCountRates[operation] += countRate;
+        clusterTimeRates[operation] += timeRate;
+        // No operations, no latency
+        if (countRate > 0) {
+            reportNodeMetric(metricName, "milliseconds", nodeName, timeRate / countRate);
+            distributions[LATENCY + operation].add(timeRate / countRate);
+        }
+    }
+
+    private void reportClusterLatency()
     {
-        agent.reportMetric(nodeMetricName(metricName, nodeName), units, value);
+        for (int operation = 0; operation < LATENCY_METRICS.length; operation++) {
+            if (clusterCountRates[operation] > 0) {
+                // Component/V1/Latency/*
+                metrics.reportMetric(LATENCY_METRICS[operation], "milliseconds",
+                    clusterTimeRates[operation] / clusterCountRates[operation]);
+            }
+        }
     }
 
-    private void reportNodeProcessedMetric(String metricName, String units, String nodeName, Number value)
+    /**
+     * Reports percentiles of the values of all nodes, within the accuracy of {@link LogHistogram}; max is exact
+     */
+    private void reportNodeDistributions()
     {
-        Number processedValue = processorFactory.getProcessorForNode(metricName, nodeName).process(value);
-        reportNodeMetric(metricName, units, nodeName, processedValue);
+        for (int i = 0; i < DISTRIBUTION_METRICS.length; i++) {
+            // Groups left out of the poll are not reported
+            if (distributions[i].getCount() == 0) {
+                continue;
+            }
+            // Component/V1/Summary/Nodes/*
+            for (int q = 0; q < QUANTILES.length; q++) {
+                metrics.add(distributionMetricIds[i][q], distributions[i].getQuantile(QUANTILES[q]));
+            }
+        }
     }
 
     private void reportProcessedMetric(String metricName, String units, Number value)
     {
-        Number processedValue = processorFactory.getProcessor(metricName).process(value);
-        agent.reportMetric(metricName, units, processedValue);
+        int metricId = metricNames.getMetricId(metricName, units, true);
+        double processedValue = processorFactory.process(metricId, EpochCounterFactory.NO_NODE, value, sampleTime);
+        if (!Double.isNaN(processedValue)) {
+            metrics.add(metricId, processedValue);
+        }
     }
 
-    private void reportNodeStats(NodesStats.NodeStats nodeStats) {
-        String nodeName = nodeStats.name;
-
-        reportGeneral(nodeStats, nodeName);
-        reportIndexing(nodeStats, nodeName);
-        reportSearch(nodeStats, nodeName);
-        reportMerges(nodeStats, nodeName);
-        reportCache(nodeStats, nodeName);
-        reportSystem(nodeStats, nodeName);
-        reportJvm(nodeStats, nodeName);
-        reportIo(nodeStats, nodeName);
-        reportNetwork(nodeStats, nodeName);
-        reportThreadPool(nodeStats, nodeName);
+    private void reportNodeStats() {
+        String nodeName = table.getString(row, fieldIds[NAME]);
+        nodeId = processorFactory.getNodeId(nodeName);
+
+        // Missing if the poll left indices out, its counters must not be touched until it is requested again
+        if (has(INDICES)) {
+            reportGeneral(nodeName);
+            reportIndexing(nodeName);
+            reportSearch(nodeName);
+            reportMerges(nodeName);
+            reportCache(nodeName);
+        }
+        reportSystem(nodeName);
+        reportJvm(nodeName);
+        reportIo(nodeName);
+        reportNetwork(nodeName);
+        reportThreadPool(nodeName);
     }
 
     /**
      * Thread pool
      */
-    private void reportThreadPool(NodesStats.NodeStats nodeStats, String nodeName) {
-        if (nodeStats.thread_pool != null) {
+    private void reportThreadPool(String nodeName) {
+        if (has(THREAD_POOL)) {
             // Search
             // Component/V1/NodeStats/ThreadPool/Search/Completed/*
             reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Search/Completed", "threads/second", nodeName,
-                    nodeStats.thread_pool.search.completed);
+                    THREAD_POOL_SEARCH_COMPLETED);
 
             // Search: queue
             // Component/V1/NodeStats/ThreadPool/Search/Queue/*
             reportNodeMetric("V1/NodeStats/ThreadPool/Search/Queue", "threads", nodeName,
-                    nodeStats.thread_pool.search.queue);
+                    THREAD_POOL_SEARCH_QUEUE);
+            distributions[SEARCH_QUEUE].add(value(THREAD_POOL_SEARCH_QUEUE));
 
             // Search: rejected
             // Component/V1/NodeStats/ThreadPool/Search/Rejected/*
             reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Search/Rejected", "threads/second", nodeName,
-                    nodeStats.thread_pool.search.rejected);
+                    THREAD_POOL_SEARCH_REJECTED);
 
             // Get
             // Component/V1/NodeStats/ThreadPool/Get/Completed/*
             reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Get/Completed", "threads/second", nodeName,
-                    nodeStats.thread_pool.get.completed);
+                    THREAD_POOL_GET_COMPLETED);
 
             // Get: queue
             // Component/V1/NodeStats/ThreadPool/Get/Queue/*
             reportNodeMetric("V1/NodeStats/ThreadPool/Get/Queue", "threads", nodeName,
-                    nodeStats.thread_pool.get.queue);
+                    THREAD_POOL_GET_QUEUE);
 
             // Get: rejected
             // Component/V1/NodeStats/ThreadPool/Get/Rejected/*
             reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Get/Rejected", "threads/second", nodeName,
-                    nodeStats.thread_pool.get.rejected);
+                    THREAD_POOL_GET_REJECTED);
 
-            if(nodeStats.thread_pool.suggest != null) {
+            if(has(THREAD_POOL_SUGGEST)) {
                 // Suggest
                 // Component/V1/NodeStats/ThreadPool/Suggest/Completed/*
                 reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Suggest/Completed", "threads/second", nodeName,
-                        nodeStats.thread_pool.suggest.completed);
+                        THREAD_POOL_SUGGEST_COMPLETED);
 
                 // Suggest: queue
                 // Component/V1/NodeStats/ThreadPool/Suggest/Queue/*
                 reportNodeMetric("V1/NodeStats/ThreadPool/Suggest/Queue", "threads", nodeName,
-                        nodeStats.thread_pool.suggest.queue);
+                        THREAD_POOL_SUGGEST_QUEUE);
 
                 // Suggest: rejected
                 // Component/V1/NodeStats/ThreadPool/Suggest/Rejected/*
                 reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Suggest/Rejected", "threads/second", nodeName,
-                        nodeStats.thread_pool.suggest.rejected);
+                        THREAD_POOL_SUGGEST_REJECTED);
 
                 // Index
                 // Component/V1/NodeStats/ThreadPool/Index/Completed/*
                 reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Index/Completed", "threads/second", nodeName,
-                        nodeStats.thread_pool.index.completed);
+                        THREAD_POOL_INDEX_COMPLETED);
 
                 // Index queue
                 // Component/V1/NodeStats/ThreadPool/Index/Queue/*
                 reportNodeMetric("V1/NodeStats/ThreadPool/Index/Queue", "threads", nodeName,
-                        nodeStats.thread_pool.index.queue);
+                        THREAD_POOL_INDEX_QUEUE);
 
                 // Index rejected
                 // Component/V1/NodeStats/ThreadPool/Index/Rejected/*
                 reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Index/Rejected", "threads/second", nodeName,
-                        nodeStats.thread_pool.index.rejected);
+                        THREAD_POOL_INDEX_REJECTED);
             }
 
-            if (nodeStats.thread_pool.force_merge != null) {
+            if (has(THREAD_POOL_FORCE_MERGE)) {
                 // Merge
                 // Component/V1/NodeStats/ThreadPool/Merge/Completed/*
                 reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Merge/Completed", "threads/second", nodeName,
-                        nodeStats.thread_pool.force_merge.completed);
+                        THREAD_POOL_FORCE_MERGE_COMPLETED);
 
                 // Merge: queue
                 // Component/V1/NodeStats/ThreadPool/Merge/Queue/*
                 reportNodeMetric("V1/NodeStats/ThreadPool/Merge/Queue", "threads", nodeName,
-                        nodeStats.thread_pool.force_merge.queue);
+                        THREAD_POOL_FORCE_MERGE_QUEUE);
 
                 // Merge: rejected
                 // Component/V1/NodeStats/ThreadPool/Merge/Rejected/*
                 reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Merge/Rejected", "threads/second", nodeName,
-                        nodeStats.thread_pool.force_merge.rejected);
-            } else if (nodeStats.thread_pool.merge != null) {
+                        THREAD_POOL_FORCE_MERGE_REJECTED);
+            } else if (has(THREAD_POOL_MERGE)) {
                 // Merge
                 // Component/V1/NodeStats/ThreadPool/Merge/Completed/*
                 reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Merge/Completed", "threads/second", nodeName,
-                        nodeStats.thread_pool.merge.completed);
+                        THREAD_POOL_MERGE_COMPLETED);
 
                 // Merge: queue
                 // Component/V1/NodeStats/ThreadPool/Merge/Queue/*
                 reportNodeMetric("V1/NodeStats/ThreadPool/Merge/Queue", "threads", nodeName,
-                        nodeStats.thread_pool.merge.queue);
+                        THREAD_POOL_MERGE_QUEUE);
 
                 // Merge: rejected
                 // Component/V1/NodeStats/ThreadPool/Merge/Rejected/*
                 reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Merge/Rejected", "threads/second", nodeName,
-                        nodeStats.thread_pool.merge.rejected);
+                        THREAD_POOL_MERGE_REJECTED);
             }
 
             // Bulk
             // Component/V1/NodeStats/ThreadPool/Bulk/Completed/*
             reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Bulk/Completed", "threads/second", nodeName,
-                    nodeStats.thread_pool.bulk.completed);
+                    THREAD_POOL_BULK_COMPLETED);
 
             // Bulk: queue
             // Component/V1/NodeStats/ThreadPool/Bulk/Queue/*
             reportNodeMetric("V1/NodeStats/ThreadPool/Bulk/Queue", "threads", nodeName,
-                    nodeStats.thread_pool.bulk.queue);
+                    THREAD_POOL_BULK_QUEUE);
 
             // Bulk: rejected
             // Component/V1/NodeStats/ThreadPool/Bulk/Rejected/*
             reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Bulk/Rejected", "threads/second", nodeName,
-                    nodeStats.thread_pool.bulk.rejected);
+                    THREAD_POOL_BULK_REJECTED);
 
             // Warmer
             // Component/V1/NodeStats/ThreadPool/Warmer/Completed/*
             reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Warmer/Completed", "threads/second", nodeName,
-                    nodeStats.thread_pool.warmer.completed);
+                    THREAD_POOL_WARMER_COMPLETED);
 
             // Warmer: queue
             // Component/V1/NodeStats/ThreadPool/Warmer/Queue/*
             reportNodeMetric("V1/NodeStats/ThreadPool/Warmer/Queue", "threads", nodeName,
-                    nodeStats.thread_pool.warmer.queue);
+                    THREAD_POOL_WARMER_QUEUE);
 
             // Warmer: rejected
             // Component/V1/NodeStats/ThreadPool/Warmer/Rejected/*
             reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Warmer/Rejected", "threads/second", nodeName,
-                    nodeStats.thread_pool.warmer.rejected);
+                    THREAD_POOL_WARMER_REJECTED);
 
             // Flush
             // Component/V1/NodeStats/ThreadPool/Flush/Completed/*
             reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Flush/Completed", "threads/second", nodeName,
-                    nodeStats.thread_pool.flush.completed);
+                    THREAD_POOL_FLUSH_COMPLETED);
 
             // Flush: queue
             // Component/V1/NodeStats/ThreadPool/Flush/Queue/*
             reportNodeMetric("V1/NodeStats/ThreadPool/Flush/Queue", "threads", nodeName,
-                    nodeStats.thread_pool.flush.queue);
+                    THREAD_POOL_FLUSH_QUEUE);
 
             // Flush: rejected
             // Component/V1/NodeStats/ThreadPool/Flush/Rejected/*
             reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Flush/Rejected", "threads/second", nodeName,
-                    nodeStats.thread_pool.flush.rejected);
+                    THREAD_POOL_FLUSH_REJECTED);
 
             // Refresh
             // Component/V1/NodeStats/ThreadPool/Refresh/Completed/*
             reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Refresh/Completed", "threads/second", nodeName,
-                    nodeStats.thread_pool.refresh.completed);
+                    THREAD_POOL_REFRESH_COMPLETED);
 
             // Refresh: queue
             // Component/V1/NodeStats/ThreadPool/Refresh/Queue/*
             reportNodeMetric("V1/NodeStats/ThreadPool/Refresh/Queue", "threads", nodeName,
-                    nodeStats.thread_pool.refresh.queue);
+                    THREAD_POOL_REFRESH_QUEUE);
 
             // Refresh: rejected
             // Component/V1/NodeStats/ThreadPool/Refresh/Rejected/*
             reportNodeProcessedMetric("V1/NodeStats/ThreadPool/Refresh/Rejected", "threads/second", nodeName,
-                    nodeStats.thread_pool.refresh.rejected);
+                    THREAD_POOL_REFRESH_REJECTED);
         }
     }
 
     /**
      * Network
      */
-    private void reportNetwork(NodesStats.NodeStats nodeStats, String nodeName) {
-        if (nodeStats.transport != null) {
+    private void reportNetwork(String nodeName) {
+        if (has(TRANSPORT)) {
             // Opened transport connections
             // Component/V1/NodeStats/Transport/ServerOpen/*
             reportNodeMetric("V1/NodeStats/Transport/ServerOpen", "connections", nodeName,
-                    nodeStats.transport.server_open);
+                    TRANSPORT_SERVER_OPEN);
 
             // Transmit
             // Component/V1/NodeStats/Transport/TxSizeInBytes/*
             reportNodeProcessedMetric("V1/NodeStats/Transport/TxSizeInBytes", "bytes/second", nodeName,
-                    nodeStats.transport.tx_size_in_bytes);
+                    TRANSPORT_TX_SIZE_IN_BYTES);
 
             // Receive
             // Component/V1/NodeStats/Transport/RxSizeInBytes/*
             reportNodeProcessedMetric("V1/NodeStats/Transport/RxSizeInBytes", "bytes/second", nodeName,
-                    nodeStats.transport.rx_size_in_bytes);
+                    TRANSPORT_RX_SIZE_IN_BYTES);
         }
 
-        if (nodeStats.http != null) {
+        if (has(HTTP)) {
             // Client connections
             // Component/V1/NodeStats/Http/CurrentOpen/*
             reportNodeMetric("V1/NodeStats/Http/CurrentOpen", "connections", nodeName,
-                    nodeStats.http.current_open);
+                    HTTP_CURRENT_OPEN);
         }
     }
 
     /**
      * I/O
      */
-    private void reportIo(NodesStats.NodeStats nodeStats, String nodeName) {
-        if (nodeStats.fs != null) {
+    private void reportIo(String nodeName) {
+        if (has(FS) && has(FS_TOTAL)) {
             // Disk reads
             // Component/V1/NodeStats/Fs/Total/DiskReadSizeInBytes/*
             reportNodeProcessedMetric("V1/NodeStats/Fs/Total/DiskReadSizeInBytes", "bytes/second", nodeName,
-                    nodeStats.fs.total.disk_read_size_in_bytes);
+                    FS_TOTAL_DISK_READ_SIZE_IN_BYTES);
 
             // Disk writes
             // Component/V1/NodeStats/Fs/Total/DiskWriteSizeInBytes/*
             reportNodeProcessedMetric("V1/NodeStats/Fs/Total/DiskWriteSizeInBytes", "bytes/second", nodeName,
-                    nodeStats.fs.total.disk_write_size_in_bytes);
+                    FS_TOTAL_DISK_WRITE_SIZE_IN_BYTES);
+        }
 
+        // Checked separately, with filter_path fs is missing when disk stats are not available (2.0+)
+        if (has(PROCESS)) {
             // Open file descriptors
             // Component/V1/NodeStats/Process/OpenFileDescriptors/*
             reportNodeMetric("V1/NodeStats/Process/OpenFileDescriptors", "descriptors", nodeName,
-                    nodeStats.process.open_file_descriptors);
+                    PROCESS_OPEN_FILE_DESCRIPTORS);
+        }
 
+        if (has(INDICES_STORE)) {
             // Store throttle time
             // Component/V1/NodeStats/Indices/Store/ThrottleTimeInMillis/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Store/ThrottleTimeInMillis", "milliseconds", nodeName,
-                    nodeStats.indices.store.throttle_time_in_millis);
+                    INDICES_STORE_THROTTLE_TIME_IN_MILLIS);
         }
     }
 
     /**
      * JVM
      */
-    private void reportJvm(NodesStats.NodeStats nodeStats, String nodeName) {
-        if (nodeStats.jvm != null) {
+    private void reportJvm(String nodeName) {
+        if (has(JVM)) {
             // Heap used, %
             // Component/V1/NodeStats/Jvm/Mem/HeapUsedPercent/*
             reportNodeMetric("V1/NodeStats/Jvm/Mem/HeapUsedPercent", "percent", nodeName,
-                    nodeStats.jvm.mem.heap_used_percent);
+                    JVM_MEM_HEAP_USED_PERCENT);
+            distributions[HEAP_USED].add(value(JVM_MEM_HEAP_USED_PERCENT));
 
             // Heap used, bytes
             // Component/V1/NodeStats/Jvm/Mem/HeapUsedInBytes/*
             reportNodeMetric("V1/NodeStats/Jvm/Mem/HeapUsedInBytes", "bytes", nodeName,
-                    nodeStats.jvm.mem.heap_used_in_bytes);
+                    JVM_MEM_HEAP_USED_IN_BYTES);
 
             // Non-Heap used, bytes
             // Component/V1/NodeStats/Jvm/Mem/NonHeapUsedInBytes/*
             reportNodeMetric("V1/NodeStats/Jvm/Mem/NonHeapUsedInBytes", "bytes", nodeName,
-                    nodeStats.jvm.mem.non_heap_used_in_bytes);
+                    JVM_MEM_NON_HEAP_USED_IN_BYTES);
 
             // GC collections (old)
             // Component/V1/NodeStats/Jvm/Gc/Old/CollectionCount/*
             reportNodeProcessedMetric("V1/NodeStats/Jvm/Gc/Old/CollectionCount", "collections/second", nodeName,
-                    nodeStats.jvm.gc.collectors.old.collection_count);
+                    JVM_GC_COLLECTORS_OLD_COLLECTION_COUNT);
 
             // GC collection time (old)
             // Component/V1/NodeStats/Jvm/Gc/Old/CollectionTime/*
-            reportNodeProcessedMetric("V1/NodeStats/Jvm/Gc/Old/CollectionTime", "milliseconds", nodeName,
-                    nodeStats.jvm.gc.collectors.old.collection_time_in_millis);
+            double oldGcTimeRate = reportNodeProcessedMetric("V1/NodeStats/Jvm/Gc/Old/CollectionTime",
+                    "milliseconds", nodeName, JVM_GC_COLLECTORS_OLD_COLLECTION_TIME_IN_MILLIS);
 
             // GC collections (young)
             // Component/V1/NodeStats/Jvm/Gc/Young/CollectionCount/*
             reportNodeProcessedMetric("V1/NodeStats/Jvm/Gc/Young/CollectionCount", "collections/second", nodeName,
-                    nodeStats.jvm.gc.collectors.young.collection_count);
+                    JVM_GC_COLLECTORS_YOUNG_COLLECTION_COUNT);
 
             // GC collection time (young)
             // Component/V1/NodeStats/Jvm/Gc/Young/CollectionTime/*
-            reportNodeProcessedMetric("V1/NodeStats/Jvm/Gc/Young/CollectionTime", "milliseconds", nodeName,
-                    nodeStats.jvm.gc.collectors.young.collection_time_in_millis);
+            double youngGcTimeRate = reportNodeProcessedMetric("V1/NodeStats/Jvm/Gc/Young/CollectionTime",
+                    "milliseconds", nodeName, JVM_GC_COLLECTORS_YOUNG_COLLECTION_TIME_IN_MILLIS);
+
+            // GC time of both generations, NaN until both rates are known
+            distributions[GC_TIME].add(oldGcTimeRate + youngGcTimeRate);
 
             // JVM uptime
             // Component/V1/NodeStats/Jvm/UptimeInMillis/*
-            reportNodeMetric("V1/NodeStats/Jvm/UptimeInMillis", "milliseconds", nodeName, nodeStats.jvm.uptime_in_millis);
+            reportNodeMetric("V1/NodeStats/Jvm/UptimeInMillis", "milliseconds", nodeName, JVM_UPTIME_IN_MILLIS);
         }
     }
 
     /**
      * System
      */
-    private void reportSystem(NodesStats.NodeStats nodeStats, String nodeName) {
-        if (nodeStats.os == null) {
+    private void reportSystem(String nodeName) {
+        if (!has(OS)) {
             return;
         }
 
-        if (nodeStats.process != null && nodeStats.process.cpu != null && nodeStats.process.cpu.percent != null) {
+        if (has(PROCESS_CPU_PERCENT)) {
             // CPU used, %
             // Component/V1/NodeStats/Os/Cpu/Usage/*
-            reportNodeMetric("V1/NodeStats/Os/Cpu/Usage", "percent", nodeName, nodeStats.process.cpu.percent);
+            reportNodeMetric("V1/NodeStats/Os/Cpu/Usage", "percent", nodeName, PROCESS_CPU_PERCENT);
+            distributions[CPU_USAGE].add(value(PROCESS_CPU_PERCENT));
         }
 
-        if (nodeStats.os.mem != null) {
+        if (has(OS_MEM)) {
             // Memory used, %
             // Component/V1/NodeStats/Os/Mem/UsedPercent/*
             reportNodeMetric("V1/NodeStats/Os/Mem/UsedPercent", "percent", nodeName,
-                    nodeStats.os.mem.used_percent);
+                    OS_MEM_USED_PERCENT);
 
             // Memory used
             // Component/V1/NodeStats/Os/Mem/UsedInBytes/*
             reportNodeMetric("V1/NodeStats/Os/Mem/UsedInBytes", "bytes", nodeName,
-                    nodeStats.os.mem.used_in_bytes);
+                    OS_MEM_USED_IN_BYTES);
         }
 
         // Load average
         // Component/V1/NodeStats/Os/LoadAverage/*
-        if (nodeStats.os.getLoadAverage() != null) {
-            reportNodeMetric("V1/NodeStats/Os/LoadAverage", "units", nodeName, nodeStats.os.getLoadAverage());
+        if (has(OS_LOAD_AVERAGE)) {
+            reportNodeMetric("V1/NodeStats/Os/LoadAverage", "units", nodeName, OS_LOAD_AVERAGE);
         }
 
         // Uptime
         // Component/V1/NodeStats/Os/UptimeInMillis/*
-        if (nodeStats.os.uptime_in_millis != null) {
+        if (has(OS_UPTIME_IN_MILLIS)) {
             reportNodeMetric("V1/NodeStats/Os/UptimeInMillis", "milliseconds", nodeName,
-                    nodeStats.os.uptime_in_millis);
+                    OS_UPTIME_IN_MILLIS);
         }
 
-        if (nodeStats.os.swap != null) {
+        if (has(OS_SWAP)) {
             // Swap usage
             // Component/V1/NodeStats/Os/Swap/Percent/*
-            Long swapUsed = 0l;
-            if (nodeStats.os.swap.used_in_bytes != null && nodeStats.os.swap.free_in_bytes != null) {
-                Long swapTotal = nodeStats.os.swap.used_in_bytes.longValue() + nodeStats.os.swap.free_in_bytes.longValue();
+            long swapUsed = 0;
+            if (has(OS_SWAP_USED_IN_BYTES) && has(OS_SWAP_FREE_IN_BYTES)) {
+                long swapTotal = (long) value(OS_SWAP_USED_IN_BYTES) + (long) value(OS_SWAP_FREE_IN_BYTES);
                 swapUsed = swapTotal > 0
-                        ? nodeStats.os.swap.used_in_bytes.longValue() / swapTotal
+                        ? (long) value(OS_SWAP_USED_IN_BYTES) / swapTotal
                         : 0;
             }
             reportNodeMetric("V1/NodeStats/Os/Swap/Percent", "percent", nodeName, swapUsed);
@@ -406,204 +863,220 @@ public class NodesStatsReporter {
     /**
      * Cache
      */
-    private void reportCache(NodesStats.NodeStats nodeStats, String nodeName) {
-        if (nodeStats.indices.filter_cache != null) {
+    private void reportCache(String nodeName) {
+        if (has(INDICES_FILTER_CACHE)) {
             // Filter cache
             // Component/V1/NodeStats/Indices/FilterCache/Size/*
             reportNodeMetric("V1/NodeStats/Indices/FilterCache/Size", "bytes", nodeName,
-                    nodeStats.indices.filter_cache.memory_size_in_bytes);
+                    INDICES_FILTER_CACHE_MEMORY_SIZE_IN_BYTES);
 
             // Filter evictions
             // Component/V1/NodeStats/Indices/FilterCache/Evictions/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/FilterCache/Evictions", "evictions/second", nodeName,
-                    nodeStats.indices.filter_cache.evictions);
+                    INDICES_FILTER_CACHE_EVICTIONS);
         }
 
-        if (nodeStats.indices.fielddata != null) {
+        if (has(INDICES_FIELDDATA)) {
             // Field data
             // Component/V1/NodeStats/Indices/Fielddata/Size/*
             reportNodeMetric("V1/NodeStats/Indices/Fielddata/Size", "bytes", nodeName,
-                    nodeStats.indices.fielddata.memory_size_in_bytes);
+                    INDICES_FIELDDATA_MEMORY_SIZE_IN_BYTES);
 
             // Field evictions
             // Component/V1/NodeStats/Indices/Fielddata/Evictions/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Fielddata/Evictions", "evictions/second", nodeName,
-                    nodeStats.indices.fielddata.evictions);
+                    INDICES_FIELDDATA_EVICTIONS);
         }
 
-        if (nodeStats.indices.id_cache != null) {
+        if (has(INDICES_ID_CACHE)) {
             // Id cache
             // Component/V1/NodeStats/Indices/IdCache/Size/*
             reportNodeMetric("V1/NodeStats/Indices/IdCache/Size", "bytes", nodeName,
-                    nodeStats.indices.id_cache.memory_size_in_bytes);
+                    INDICES_ID_CACHE_MEMORY_SIZE_IN_BYTES);
         }
 
-        if (nodeStats.indices.completion != null) {
+        if (has(INDICES_COMPLETION)) {
             // Completion
             // Component/V1/NodeStats/Indices/Completion/Size/*
             reportNodeMetric("V1/NodeStats/Indices/Completion/Size", "bytes", nodeName,
-                    nodeStats.indices.completion.size_in_bytes);
+                    INDICES_COMPLETION_SIZE_IN_BYTES);
         }
     }
 
     /**
      * Merges
      */
-    private void reportMerges(NodesStats.NodeStats nodeStats, String nodeName) {
-        if (nodeStats.indices.merges != null) {
+    private void reportMerges(String nodeName) {
+        if (has(INDICES_MERGES)) {
             // Merges
             // Component/V1/NodeStats/Indices/Merges/Total/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Merges/Total", "merges/second", nodeName,
-                    nodeStats.indices.merges.total);
+                    INDICES_MERGES_TOTAL);
 
             // Merge size
             // Component/V1/NodeStats/Indices/Merges/TotalSizeInBytes/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Merges/TotalSizeInBytes", "bytes/second", nodeName,
-                    nodeStats.indices.merges.total_size_in_bytes);
+                    INDICES_MERGES_TOTAL_SIZE_IN_BYTES);
 
             // Merge time
             // Component/V1/NodeStats/Indices/Merges/TotalTimeInMillis/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Merges/TotalTimeInMillis", "milliseconds", nodeName,
-                    nodeStats.indices.merges.total_time_in_millis);
+                    INDICES_MERGES_TOTAL_TIME_IN_MILLIS);
 
             // Merged docs
             // Component/V1/NodeStats/Indices/Merges/TotalDocs/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Merges/TotalDocs", "docs/second", nodeName,
-                    nodeStats.indices.merges.total_docs);
+                    INDICES_MERGES_TOTAL_DOCS);
         }
 
-        if (nodeStats.indices.segments != null) {
+        if (has(INDICES_SEGMENTS)) {
             // Component/V1/NodeStats/Indices/Segments/Count/*
             reportNodeMetric("V1/NodeStats/Indices/Segments/Count", "segments", nodeName,
-                    nodeStats.indices.segments.count);
+                    INDICES_SEGMENTS_COUNT);
         }
     }
 
     /**
      * Search
      */
-    private void reportSearch(NodesStats.NodeStats nodeStats, String nodeName) {
+    private void reportSearch(String nodeName) {
         // Query
         // Component/V1/NodeStats/Indices/Search/QueryTotal/*
-        reportNodeProcessedMetric("V1/NodeStats/Indices/Search/QueryTotal", "requests/second", nodeName,
-                nodeStats.indices.search.query_total);
+        double queryRate = reportNodeProcessedMetric("V1/NodeStats/Indices/Search/QueryTotal", "requests/second",
+                nodeName, INDICES_SEARCH_QUERY_TOTAL);
 
         // Query time
         // Component/V1/NodeStats/Indices/Search/QueryTimeInMillis/*
-        reportNodeProcessedMetric("V1/NodeStats/Indices/Search/QueryTimeInMillis", "milliseconds", nodeName,
-                nodeStats.indices.search.query_time_in_millis);
+        double queryTimeRate = reportNodeProcessedMetric("V1/NodeStats/Indices/Search/QueryTimeInMillis",
+                "milliseconds", nodeName, INDICES_SEARCH_QUERY_TIME_IN_MILLIS);
+
+        // Query latency
+        // Component/V1/NodeStats/Indices/Search/QueryLatency/*
+        reportNodeLatency(QUERY, "V1/NodeStats/Indices/Search/QueryLatency", nodeName, queryRate, queryTimeRate);
 
         // Fetch
         // Component/V1/NodeStats/Indices/Search/FetchTotal/*
-        reportNodeProcessedMetric("V1/NodeStats/Indices/Search/FetchTotal", "requests/second", nodeName,
-                nodeStats.indices.search.fetch_total);
+        double fetchRate = reportNodeProcessedMetric("V1/NodeStats/Indices/Search/FetchTotal", "requests/second",
+                nodeName, INDICES_SEARCH_FETCH_TOTAL);
 
         // Fetch time
         // Component/V1/NodeStats/Indices/Search/FetchTimeInMillis/*
-        reportNodeProcessedMetric("V1/NodeStats/Indices/Search/FetchTimeInMillis", "milliseconds", nodeName,
-                nodeStats.indices.search.fetch_time_in_millis);
+        double fetchTimeRate = reportNodeProcessedMetric("V1/NodeStats/Indices/Search/FetchTimeInMillis",
+                "milliseconds", nodeName, INDICES_SEARCH_FETCH_TIME_IN_MILLIS);
+
+        // Fetch latency
+        // Component/V1/NodeStats/Indices/Search/FetchLatency/*
+        reportNodeLatency(FETCH, "V1/NodeStats/Indices/Search/FetchLatency", nodeName, fetchRate, fetchTimeRate);
 
         // Get
         // Component/V1/NodeStats/Indices/Get/Total/*
-        reportNodeProcessedMetric("V1/NodeStats/Indices/Get/Total", "requests/second", nodeName,
-                nodeStats.indices.get.total);
+        double getRate = reportNodeProcessedMetric("V1/NodeStats/Indices/Get/Total", "requests/second", nodeName,
+                INDICES_GET_TOTAL);
 
         // Get time
         // Component/V1/NodeStats/Indices/Get/TimeInMillis/*
-        reportNodeProcessedMetric("V1/NodeStats/Indices/Get/TimeInMillis", "milliseconds", nodeName,
-                nodeStats.indices.get.time_in_millis);
+        double getTimeRate = reportNodeProcessedMetric("V1/NodeStats/Indices/Get/TimeInMillis", "milliseconds",
+                nodeName, INDICES_GET_TIME_IN_MILLIS);
 
-        if (nodeStats.indices.suggest != null) {
+        // Get latency
+        // Component/V1/NodeStats/Indices/Get/Latency/*
+        reportNodeLatency(GET, "V1/NodeStats/Indices/Get/Latency", nodeName, getRate, getTimeRate);
+
+        if (has(INDICES_SUGGEST)) {
             // Suggest
             // Component/V1/NodeStats/Indices/Suggest/Total/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Suggest/Total", "requests/second", nodeName,
-                    nodeStats.indices.suggest.total);
+                    INDICES_SUGGEST_TOTAL);
 
             // Suggest time
             // Component/V1/NodeStats/Indices/Suggest/TimeInMillis/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Suggest/TimeInMillis", "milliseconds", nodeName,
-                    nodeStats.indices.suggest.time_in_millis);
+                    INDICES_SUGGEST_TIME_IN_MILLIS);
         }
     }
 
     /**
      * Indexing
      */
-    private void reportIndexing(NodesStats.NodeStats nodeStats, String nodeName) {
+    private void reportIndexing(String nodeName) {
         // Index
         // Component/V1/NodeStats/Indices/Indexing/Index/*
-        reportNodeProcessedMetric("V1/NodeStats/Indices/Indexing/Index", "operations/second", nodeName,
-                nodeStats.indices.indexing.index_total);
+        double indexRate = reportNodeProcessedMetric("V1/NodeStats/Indices/Indexing/Index", "operations/second",
+                nodeName, INDICES_INDEXING_INDEX_TOTAL);
 
         // Index time
         // Component/V1/NodeStats/Indices/Indexing/IndexTimeInMillis/*
-        reportNodeProcessedMetric("V1/NodeStats/Indices/Indexing/IndexTimeInMillis", "milliseconds", nodeName,
-                nodeStats.indices.indexing.index_time_in_millis);
+        double indexTimeRate = reportNodeProcessedMetric("V1/NodeStats/Indices/Indexing/IndexTimeInMillis",
+                "milliseconds", nodeName, INDICES_INDEXING_INDEX_TIME_IN_MILLIS);
+
+        // Index latency
+        // Component/V1/NodeStats/Indices/Indexing/IndexLatency/*
+        reportNodeLatency(INDEX, "V1/NodeStats/Indices/Indexing/IndexLatency", nodeName, indexRate, indexTimeRate);
 
         // Delete
         // Component/V1/NodeStats/Indices/Indexing/DeleteTotal/*
         reportNodeProcessedMetric("V1/NodeStats/Indices/Indexing/DeleteTotal", "operations/second", nodeName,
-                nodeStats.indices.indexing.delete_total);
+                INDICES_INDEXING_DELETE_TOTAL);
 
         // Delete time
         // Component/V1/NodeStats/Indices/Indexing/DeleteTimeInMillis/*
         reportNodeProcessedMetric("V1/NodeStats/Indices/Indexing/DeleteTimeInMillis", "milliseconds", nodeName,
-                nodeStats.indices.indexing.delete_time_in_millis);
+                INDICES_INDEXING_DELETE_TIME_IN_MILLIS);
 
-        if (nodeStats.indices.refresh != null) {
+        if (has(INDICES_REFRESH)) {
             // Refresh
             // Component/V1/NodeStats/Indices/Refresh/Total/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Refresh/Total", "operations/second", nodeName,
-                    nodeStats.indices.refresh.total);
+                    INDICES_REFRESH_TOTAL);
 
             // Refresh time
             // Component/V1/NodeStats/Indices/Refresh/TotalTimeInMillis/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Refresh/TotalTimeInMillis", "milliseconds", nodeName,
-                    nodeStats.indices.refresh.total_time_in_millis);
+                    INDICES_REFRESH_TOTAL_TIME_IN_MILLIS);
         }
 
-        if (nodeStats.indices.flush != null) {
+        if (has(INDICES_FLUSH)) {
             // Flush
             // Component/V1/NodeStats/Indices/Flush/Total/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Flush/Total", "operations/second", nodeName,
-                    nodeStats.indices.flush.total);
+                    INDICES_FLUSH_TOTAL);
 
             // Flush time
             // Component/V1/NodeStats/Indices/Flush/TotalTimeInMillis/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Flush/TotalTimeInMillis", "milliseconds", nodeName,
-                    nodeStats.indices.flush.total_time_in_millis);
+                    INDICES_FLUSH_TOTAL_TIME_IN_MILLIS);
         }
 
-        if (nodeStats.indices.warmer != null) {
+        if (has(INDICES_WARMER)) {
             // Warmer
             // Component/V1/NodeStats/Indices/Warmer/Total/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Warmer/Total", "operations/second", nodeName,
-                    nodeStats.indices.warmer.total);
+                    INDICES_WARMER_TOTAL);
 
             // Warmer time
             // Component/V1/NodeStats/Indices/Warmer/TotalTimeInMillis/*
             reportNodeProcessedMetric("V1/NodeStats/Indices/Warmer/TotalTimeInMillis", "milliseconds", nodeName,
-                    nodeStats.indices.warmer.total_time_in_millis);
+                    INDICES_WARMER_TOTAL_TIME_IN_MILLIS);
         }
     }
 
     /**
      * Nodes
      */
-    private void reportGeneral(NodesStats.NodeStats nodeStats, String nodeName) {
+    private void reportGeneral(String nodeName) {
         // Documents
         // Component/V1/NodeStats/Nodes/Indices/Docs/Count/*
         reportNodeMetric("V1/NodeStats/Nodes/Indices/Docs/Count", "documents", nodeName,
-                nodeStats.indices.docs.count);
+                INDICES_DOCS_COUNT);
 
         // Store size
         // Component/V1/NodeStats/Indices/Store/Size/*
         reportNodeMetric("V1/NodeStats/Indices/Store/Size", "bytes", nodeName,
-                nodeStats.indices.store.size_in_bytes);
+                INDICES_STORE_SIZE_IN_BYTES);
 
         // Deleted documents
         // Component/V1/NodeStats/Nodes/Indices/Docs/Deleted/*
         reportNodeMetric("V1/NodeStats/Nodes/Indices/Docs/Deleted", "documents", nodeName,
-                nodeStats.indices.docs.deleted);
+                INDICES_DOCS_DELETED);
     }
 }
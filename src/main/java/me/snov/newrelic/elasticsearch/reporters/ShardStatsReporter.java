@@ -0,0 +1,108 @@
+package me.snov.newrelic.elasticsearch.reporters;
+
+import me.snov.newrelic.elasticsearch.services.MetricNameTable;
+import me.snov.newrelic.elasticsearch.services.ShardSkew;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reports shard skew of every node, and the hottest shards of the most skewed nodes
+ */
+public class ShardStatsReporter {
+
+    private static final Comparator<ShardSkew.NodeShards> BY_STORE_SKEW = new Comparator<ShardSkew.NodeShards>() {
+        @Override
+        public int compare(ShardSkew.NodeShards a, ShardSkew.NodeShards b) {
+            return compareDescending(a.getStoreSkew(), b.getStoreSkew());
+        }
+    };
+
+    private static final Comparator<ShardSkew.NodeShards> BY_INDEXING_SKEW = new Comparator<ShardSkew.NodeShards>() {
+        @Override
+        public int compare(ShardSkew.NodeShards a, ShardSkew.NodeShards b) {
+            return compareDescending(a.getIndexingSkew(), b.getIndexingSkew());
+        }
+    };
+
+    private final MetricBuffer metrics;
+    private final MetricNameTable metricNames;
+    private final int worstNodes;
+    private final int shardCount;
+    private final int storeSkew;
+    private final int indexingSkew;
+    private final int hotStoreSize;
+    private final int hotIndexingRate;
+    private final List<ShardSkew.NodeShards> ranked = new ArrayList<ShardSkew.NodeShards>();
+
+    /**
+     * @param worstNodes Number of most skewed nodes whose hottest shards are reported
+     */
+    public ShardStatsReporter(MetricBuffer metrics, int worstNodes) {
+        this.metrics = metrics;
+        this.metricNames = metrics.getMetricNames();
+        this.worstNodes = worstNodes;
+        // Per node and per shard names are dropped once they are not reported for a while
+        this.shardCount = metricNames.getMetricId("V1/ShardStats/Shards", "shards", false);
+        this.storeSkew = metricNames.getMetricId("V1/ShardStats/StoreSkew", "ratio", false);
+        this.indexingSkew = metricNames.getMetricId("V1/ShardStats/IndexingSkew", "ratio", false);
+        this.hotStoreSize = metricNames.getMetricId("V1/ShardStats/HotShards/StoreSize", "bytes", false);
+        this.hotIndexingRate = metricNames.getMetricId("V1/ShardStats/HotShards/Indexing", "documents/second", true);
+    }
+
+    public void reportShardStats(ShardSkew shardSkew) {
+        metricNames.startCycle(MetricNameTable.SHARD);
+        List<ShardSkew.NodeShards> nodes = shardSkew.getNodes();
+        for (ShardSkew.NodeShards node : nodes) {
+            // Component/V1/ShardStats/*/{node}
+            reportNodeMetric(shardCount, node.getNode(), node.getShardCount());
+            reportNodeMetric(storeSkew, node.getNode(), node.getStoreSkew());
+            reportNodeMetric(indexingSkew, node.getNode(), node.getIndexingSkew());
+        }
+
+        ranked.clear();
+        ranked.addAll(nodes);
+        Collections.sort(ranked, BY_STORE_SKEW);
+        for (int i = 0; i < Math.min(worstNodes, ranked.size()); i++) {
+            ShardSkew.NodeShards node = ranked.get(i);
+            if (node.getLargestShard() != null) {
+                // Component/V1/ShardStats/HotShards/StoreSize/{index}/{shard}
+                reportShardMetric(hotStoreSize, node.getLargestShard(), node.getLargestStoreSize());
+            }
+        }
+
+        Collections.sort(ranked, BY_INDEXING_SKEW);
+        for (int i = 0; i < Math.min(worstNodes, ranked.size()); i++) {
+            ShardSkew.NodeShards node = ranked.get(i);
+            if (node.getBusiestShard() != null) {
+                // Component/V1/ShardStats/HotShards/Indexing/{index}/{shard}
+                reportShardMetric(hotIndexingRate, node.getBusiestShard(), node.getBusiestIndexingRate());
+            }
+        }
+        ranked.clear();
+    }
+
+    private void reportNodeMetric(int metricId, String node, double value) {
+        if (!Double.isNaN(value)) {
+            metrics.add(metricNames.getNodeMetricId(metricId, node), value);
+        }
+    }
+
+    private void reportShardMetric(int metricId, String shard, double value) {
+        if (!Double.isNaN(value)) {
+            metrics.add(metricNames.getShardMetricId(metricId, shard), value);
+        }
+    }
+
+    /**
+     * Highest first, unknown skew last
+     */
+    private static int compareDescending(double a, double b) {
+        if (Double.isNaN(a) || Double.isNaN(b)) {
+            return Double.isNaN(a) ? (Double.isNaN(b) ? 0 : 1) : -1;
+        }
+        return Double.compare(b, a);
+    }
+}
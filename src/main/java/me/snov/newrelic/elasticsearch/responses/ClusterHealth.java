@@ -0,0 +1,13 @@
+package me.snov.newrelic.elasticsearch.responses;
+
+public class ClusterHealth {
+    public String cluster_name;
+    public String status;
+    public Number number_of_nodes;
+    public Number relocating_shards;
+    public Number initializing_shards;
+    public Number unassigned_shards;
+    public Number number_of_pending_tasks;
+    // 5.0+
+    public Number task_max_waiting_in_queue_millis;
+}
@@ -2,6 +2,11 @@ package me.snov.newrelic.elasticsearch.responses;
 
 import java.util.ArrayList;
 
+/**
+ * Cluster stats bound to the object model. Unlike nodes stats, see {@link NodesStatsTable}, the response holds
+ * the same few values however large the cluster is, and filter_path cuts it to the reported ones: boxing them
+ * costs a few dozen small objects per poll.
+ */
 public class ClusterStats {
     public static class Indices {
         public static class Shards {
@@ -0,0 +1,17 @@
+package me.snov.newrelic.elasticsearch.responses;
+
+import java.util.Map;
+
+public class NodesInfo {
+    public static class NodeInfo {
+        public static class Http {
+            public String publish_address;
+        }
+
+        public String name;
+        public String host;
+        public Http http;
+    }
+
+    public Map<String, NodeInfo> nodes;
+}
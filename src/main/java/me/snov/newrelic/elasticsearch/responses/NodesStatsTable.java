@@ -0,0 +1,234 @@
+package me.snov.newrelic.elasticsearch.responses;
+
+import me.snov.newrelic.elasticsearch.interfaces.StatsSinkInterface;
+import me.snov.newrelic.elasticsearch.parsers.FieldSet;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nodes stats as flat primitive columns: one row per node, one column per field of a {@link FieldSet}.
+ * A bit per row and field tells whether the value (or object) was present in the response, absent values
+ * read as NaN. The table is meant to be cleared and refilled every cycle, so a poll allocates nothing
+ * once the table has grown to the size of the cluster.
+ */
+public class NodesStatsTable implements StatsSinkInterface {
+
+    private static final int INITIAL_ROWS = 16;
+
+    private final FieldSet fields;
+    private final int columns;
+    private final int wordsPerRow;
+    private String[] keys;
+    private double[] values;
+    private long[] present;
+    private String[] strings;
+    private int size;
+    private int row = -1;
+
+    // Fields of the object model, resolved on first use by add(NodesStats)
+    private Field[] javaFields;
+
+    public NodesStatsTable(FieldSet fields) {
+        this.fields = fields;
+        this.columns = fields.size();
+        this.wordsPerRow = (columns + 63) / 64;
+        allocate(INITIAL_ROWS);
+    }
+
+    public FieldSet getFields() {
+        return fields;
+    }
+
+    /**
+     * @return Number of nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    public String getKey(int row) {
+        return keys[row];
+    }
+
+    /**
+     * @return true if the numeric value or the object was present in the response
+     */
+    public boolean has(int row, int field) {
+        return field >= 0 && (present[row * wordsPerRow + (field >>> 6)] & (1L << field)) != 0;
+    }
+
+    /**
+     * @return Value or NaN if it is absent
+     */
+    public double getValue(int row, int field) {
+        return has(row, field) ? values[row * columns + field] : Double.NaN;
+    }
+
+    public String getString(int row, int field) {
+        return field >= 0 && strings != null ? strings[row * columns + field] : null;
+    }
+
+    public void clear() {
+        Arrays.fill(present, 0, size * wordsPerRow, 0L);
+        if (strings != null) {
+            Arrays.fill(strings, 0, size * columns, null);
+        }
+        size = 0;
+        row = -1;
+    }
+
+    public int addRow(String key) {
+        if (size == keys.length) {
+            grow();
+        }
+        keys[size] = key;
+        return size++;
+    }
+
+    /**
+     * Sets the value, and marks it and its parent objects as present
+     */
+    public void setValue(int row, int field, double value) {
+        values[row * columns + field] = value;
+        setPresent(row, field);
+    }
+
+    public void setString(int row, int field, String value) {
+        if (strings == null) {
+            strings = new String[keys.length * columns];
+        }
+        strings[row * columns + field] = value;
+    }
+
+    public void setPresent(int row, int field) {
+        for (int f = field; f != FieldSet.ROOT; f = fields.getParent(f)) {
+            present[row * wordsPerRow + (f >>> 6)] |= 1L << f;
+        }
+    }
+
+    /**
+     * Appends all rows of a table with the same fields, e.g. a response of a single node
+     */
+    public void addAll(NodesStatsTable other) {
+        for (int otherRow = 0; otherRow < other.size; otherRow++) {
+            int newRow = addRow(other.keys[otherRow]);
+            System.arraycopy(other.values, otherRow * columns, values, newRow * columns, columns);
+            System.arraycopy(other.present, otherRow * wordsPerRow, present, newRow * wordsPerRow, wordsPerRow);
+            if (other.strings != null) {
+                for (int field = 0; field < columns; field++) {
+                    String value = other.strings[otherRow * columns + field];
+                    if (value != null) {
+                        setString(newRow, field, value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends nodes of the object model, for responses bound by Gson
+     */
+    public void add(NodesStats nodesStats) {
+        if (nodesStats == null || nodesStats.nodes == null) {
+            return;
+        }
+        if (javaFields == null) {
+            javaFields = resolveFields();
+        }
+
+        Object[] objects = new Object[columns];
+        for (Map.Entry<String, NodesStats.NodeStats> entry : nodesStats.nodes.entrySet()) {
+            int newRow = addRow(entry.getKey());
+            for (int field = 0; field < columns; field++) {
+                int parent = fields.getParent(field);
+                Object target = parent == FieldSet.ROOT ? entry.getValue() : objects[parent];
+                Object value = target != null && javaFields[field] != null ? get(javaFields[field], target) : null;
+                objects[field] = value;
+
+                if (value instanceof List) {
+                    // os.load_average in 1.x
+                    value = ((List) value).isEmpty() ? null : ((List) value).get(0);
+                }
+                if (value instanceof Number) {
+                    setValue(newRow, field, ((Number) value).doubleValue());
+                } else if (value instanceof String) {
+                    setString(newRow, field, (String) value);
+                } else if (value != null && fields.isObject(field)) {
+                    setPresent(newRow, field);
+                }
+            }
+        }
+    }
+
+    private Field[] resolveFields() {
+        Field[] resolved = new Field[columns];
+        for (int field = 0; field < columns; field++) {
+            int parent = fields.getParent(field);
+            Class<?> parentClass = parent == FieldSet.ROOT
+                ? NodesStats.NodeStats.class
+                : (resolved[parent] != null ? resolved[parent].getType() : null);
+            if (parentClass == null) {
+                continue;
+            }
+            try {
+                resolved[field] = parentClass.getDeclaredField(fields.getName(field));
+                resolved[field].setAccessible(true);
+            } catch (NoSuchFieldException e) {
+                resolved[field] = null;
+            }
+        }
+        return resolved;
+    }
+
+    private static Object get(Field field, Object target) {
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void startEntry(String key) {
+        row = addRow(key);
+    }
+
+    @Override
+    public void startObject(int field) {
+        setPresent(row, field);
+    }
+
+    @Override
+    public void value(int field, double value) {
+        setValue(row, field, value);
+    }
+
+    @Override
+    public void value(int field, String value) {
+        setString(row, field, value);
+    }
+
+    @Override
+    public void endEntry() {
+        row = -1;
+    }
+
+    private void allocate(int rows) {
+        keys = new String[rows];
+        values = new double[rows * columns];
+        present = new long[rows * wordsPerRow];
+    }
+
+    private void grow() {
+        int rows = keys.length * 2;
+        keys = Arrays.copyOf(keys, rows);
+        values = Arrays.copyOf(values, rows * columns);
+        present = Arrays.copyOf(present, rows * wordsPerRow);
+        if (strings != null) {
+            strings = Arrays.copyOf(strings, rows * columns);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package me.snov.newrelic.elasticsearch.responses;
+
+/**
+ * Summary of /_cluster/pending_tasks, the tasks themselves are not kept
+ */
+public class PendingTasks {
+    public int count;
+    public long max_time_in_queue_millis;
+}
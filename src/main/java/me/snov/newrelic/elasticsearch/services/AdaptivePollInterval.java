@@ -0,0 +1,68 @@
+package me.snov.newrelic.elasticsearch.services;
+
+/**
+ * Interval between polls of a cluster. Polls are frequent while the cluster is red or its thread pool queues
+ * are backing up, and back off gradually while it is quiet.
+ */
+public class AdaptivePollInterval {
+
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = 10000;
+    public static final long DEFAULT_MAX_INTERVAL_MILLIS = 300000;
+
+    /**
+     * Interval at which the Runner calls pollCycle()
+     */
+    public static final long RUNNER_INTERVAL_MILLIS = 60000;
+
+    /**
+     * Queued requests in a thread pool of a node from which on the cluster is considered busy
+     */
+    public static final double BUSY_QUEUE_SIZE = 10;
+
+    private static final double BACK_OFF = 1.5;
+
+    // Polls are at least this many times as far apart as the last one took
+    private static final int MIN_INTERVAL_PER_DURATION = 2;
+
+    private final long minInterval;
+    private final long maxInterval;
+    private long interval;
+
+    public AdaptivePollInterval(long minInterval, long maxInterval) {
+        if (minInterval <= 0 || maxInterval < minInterval) {
+            throw new IllegalArgumentException(String.format("Invalid poll interval bounds: %d - %d ms",
+                minInterval, maxInterval));
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.interval = bound(RUNNER_INTERVAL_MILLIS);
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * @param red Whether the cluster is red
+     * @param yellow Whether the cluster is yellow
+     * @param maxQueueSize Longest thread pool queue of any node, NaN if unknown
+     * @param pollDuration Milliseconds the last poll took
+     * @return Milliseconds from the start of the last poll to the next one
+     */
+    public long next(boolean red, boolean yellow, double maxQueueSize, long pollDuration) {
+        long next;
+        if (red || maxQueueSize >= BUSY_QUEUE_SIZE) {
+            next = minInterval;
+        } else if (yellow) {
+            next = interval / 2;
+        } else {
+            next = (long) (interval * BACK_OFF);
+        }
+        interval = bound(Math.max(next, pollDuration * MIN_INTERVAL_PER_DURATION));
+        return interval;
+    }
+
+    private long bound(long interval) {
+        return Math.min(Math.max(interval, minInterval), maxInterval);
+    }
+}
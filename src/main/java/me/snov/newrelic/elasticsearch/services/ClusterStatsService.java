@@ -1,5 +1,6 @@
 package me.snov.newrelic.elasticsearch.services;
 
+import me.snov.newrelic.elasticsearch.responses.ClusterHealth;
 import me.snov.newrelic.elasticsearch.responses.ClusterStats;
 
 import java.util.HashSet;
@@ -25,6 +26,58 @@ public class ClusterStatsService {
             : getNumberOfVersions(clusterStats.nodes.versions);
     }
 
+    /**
+     * @return Lowest version of a node in cluster or null if unknown
+     */
+    public String getMinimumVersion(ClusterStats clusterStats) {
+        if (clusterStats == null || clusterStats.nodes == null || clusterStats.nodes.versions == null) {
+            return null;
+        }
+        String minimum = null;
+        for (String version : clusterStats.nodes.versions) {
+            if (minimum == null || compareVersions(version, minimum) < 0) {
+                minimum = version;
+            }
+        }
+        return minimum;
+    }
+
+    /**
+     * Compares numeric parts of versions, qualifiers like "-beta1" are ignored
+     */
+    public int compareVersions(String a, String b) {
+        int[] left = parseVersion(a);
+        int[] right = parseVersion(b);
+        for (int i = 0; i < Math.max(left.length, right.length); i++) {
+            int l = i < left.length ? left[i] : 0;
+            int r = i < right.length ? right[i] : 0;
+            if (l != r) {
+                return l < r ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    public boolean isVersionAtLeast(String version, int major, int minor) {
+        return version != null && compareVersions(version, major + "." + minor) >= 0;
+    }
+
+    private int[] parseVersion(String version) {
+        String[] parts = version.split("[.-]");
+        int[] numbers = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                numbers[i] = Integer.parseInt(parts[i]);
+            } catch (NumberFormatException e) {
+                // Qualifier, e.g. "5.0.0-alpha1"
+                int[] truncated = new int[i];
+                System.arraycopy(numbers, 0, truncated, 0, i);
+                return truncated;
+            }
+        }
+        return numbers;
+    }
+
     public boolean isYellow(ClusterStats clusterStats) {
         return "yellow".equals(clusterStats.status);
     }
@@ -32,4 +85,23 @@ public class ClusterStatsService {
     public boolean isRed(ClusterStats clusterStats) {
         return "red".equals(clusterStats.status);
     }
+
+    public boolean isYellow(ClusterHealth clusterHealth) {
+        return "yellow".equals(clusterHealth.status);
+    }
+
+    public boolean isRed(ClusterHealth clusterHealth) {
+        return "red".equals(clusterHealth.status);
+    }
+
+    /**
+     * Before 5.0 cluster health has no longest wait of pending tasks, it is only known from the tasks themselves
+     *
+     * @return Whether the pending tasks must be requested to know how long they have been waiting
+     */
+    public boolean isPendingTasksRequestNeeded(ClusterHealth clusterHealth) {
+        return clusterHealth.task_max_waiting_in_queue_millis == null
+            && clusterHealth.number_of_pending_tasks != null
+            && clusterHealth.number_of_pending_tasks.intValue() > 0;
+    }
 }
@@ -0,0 +1,68 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import me.snov.newrelic.elasticsearch.interfaces.PublisherStatusInterface;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Checks whether the New Relic metric service can be reached, with the same proxy settings the publisher uses.
+ * The publisher doesn't tell its agents whether a delivery failed, so the service is probed before metrics are
+ * handed over. Any response other than a server error means the service is up, the probe doesn't authenticate.
+ */
+public class CollectorProbe implements PublisherStatusInterface {
+
+    /**
+     * Metric service of the plugin API, the one the publisher sends to
+     */
+    public static final String DEFAULT_URL = "https://platform-api.newrelic.com/platform/v1/metrics";
+    public static final int DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    // Agents of all clusters ask in the same cycle of the Runner, they share one probe
+    private static final long MAX_AGE_MILLIS = 10000;
+
+    private final URL url;
+    private final int timeout;
+    private boolean reachable = true;
+    private long probedAt = Long.MIN_VALUE;
+
+    public CollectorProbe(URL url) {
+        this(url, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param timeout Milliseconds to wait for the connection and for the response
+     */
+    public CollectorProbe(URL url, int timeout) {
+        this.url = url;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public synchronized boolean isReachable() {
+        long now = System.currentTimeMillis();
+        if (now - probedAt >= MAX_AGE_MILLIS) {
+            reachable = probe();
+            probedAt = now;
+        }
+        return reachable;
+    }
+
+    private boolean probe() {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("HEAD");
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            return connection.getResponseCode() < 500;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+}
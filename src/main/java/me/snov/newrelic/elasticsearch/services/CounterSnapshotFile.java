@@ -0,0 +1,137 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import me.snov.newrelic.elasticsearch.interfaces.CounterStateInterface;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Counter state kept in a memory mapped file, so that rates go on across restarts of the agent.
+ * The snapshot is written in place after every poll; the OS writes the pages back to disk, also when the agent
+ * is killed, so nothing is synced explicitly.
+ */
+public class CounterSnapshotFile implements Closeable {
+
+    public static final long DEFAULT_MAX_AGE_MILLIS = 600000;
+
+    private static final int MAGIC = 0x4E524553;
+    private static final int VERSION = 1;
+
+    // Magic, version, time of the snapshot, length and checksum of the payload
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 8;
+    private static final int MIN_SIZE = 64 * 1024;
+
+    private final File file;
+    private final Buffer payload = new Buffer();
+    private RandomAccessFile randomAccessFile;
+    private MappedByteBuffer buffer;
+
+    public CounterSnapshotFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return Name of the snapshot file of a cluster
+     */
+    public static String getFileName(String clusterName) {
+        return clusterName.replaceAll("[^A-Za-z0-9._-]", "_") + ".counters";
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized void save(CounterStateInterface counters, long timeMillis) throws IOException {
+        payload.reset();
+        DataOutputStream out = new DataOutputStream(payload);
+        counters.saveCounters(out);
+        out.flush();
+
+        map(HEADER_SIZE + payload.size());
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.getBytes(), 0, payload.size());
+
+        // Header is valid only once the payload is complete, a torn snapshot is never loaded
+        buffer.putInt(0, 0);
+        buffer.position(HEADER_SIZE);
+        buffer.put(payload.getBytes(), 0, payload.size());
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, timeMillis);
+        buffer.putInt(16, payload.size());
+        buffer.putLong(20, checksum.getValue());
+        buffer.putInt(0, MAGIC);
+    }
+
+    /**
+     * @param minTimeMillis Counters last updated before are discarded
+     * @return Number of restored counters, 0 if there is no valid snapshot
+     */
+    public synchronized int load(CounterStateInterface counters, long minTimeMillis) throws IOException {
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return 0;
+        }
+
+        map((int) Math.min(file.length(), Integer.MAX_VALUE));
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a counter snapshot: " + file);
+        }
+        if (buffer.getLong(8) < minTimeMillis) {
+            return 0;
+        }
+        int length = buffer.getInt(16);
+        if (length < 0 || length > buffer.capacity() - HEADER_SIZE) {
+            throw new IOException("Counter snapshot is corrupt: " + file);
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.position(HEADER_SIZE);
+        buffer.get(bytes);
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes);
+        if (checksum.getValue() != buffer.getLong(20)) {
+            throw new IOException("Counter snapshot is corrupt: " + file);
+        }
+
+        return counters.loadCounters(new DataInputStream(new ByteArrayInputStream(bytes)), minTimeMillis);
+    }
+
+    /**
+     * Maps at least size bytes of the file, growing it in powers of two
+     */
+    private void map(int size) throws IOException {
+        if (buffer != null && buffer.capacity() >= size) {
+            return;
+        }
+        if (randomAccessFile == null) {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+        }
+        int capacity = Math.max(MIN_SIZE, Integer.highestOneBit(size - 1) << 1);
+        capacity = (int) Math.max(capacity, Math.min(randomAccessFile.length(), Integer.MAX_VALUE));
+        buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer = null;
+        if (randomAccessFile != null) {
+            randomAccessFile.close();
+            randomAccessFile = null;
+        }
+    }
+
+    /**
+     * Exposes its array, so the payload is not copied before it is written to the file
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+
+        Buffer() {
+            super(MIN_SIZE);
+        }
+
+        byte[] getBytes() {
+            return buf;
+        }
+    }
+}
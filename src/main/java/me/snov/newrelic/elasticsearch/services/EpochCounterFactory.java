@@ -1,40 +1,379 @@
 package me.snov.newrelic.elasticsearch.services;
 
-import com.newrelic.metrics.publish.processors.EpochCounter;
-import com.newrelic.metrics.publish.processors.Processor;
-
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * Rates of counters per second, per metric and node. Like {@link com.newrelic.metrics.publish.processors.EpochCounter},
+ * but counters are kept in an open addressing table keyed by (metric id, node id), so processing a value
+ * allocates nothing once metric and node names have been seen. Unlike EpochCounter the elapsed time is not
+ * truncated to whole seconds, which would skew rates of polls a few seconds apart.
+ *
+ * Counters and node names not touched for a number of cycles are evicted, so nodes which left the cluster
+ * don't hold memory forever.
+ */
 public class EpochCounterFactory {
 
-    private HashMap<String, Processor> processors;
+    /**
+     * Node id of metrics which are not reported per node
+     */
+    public static final int NO_NODE = 0;
+
+    public static final int DEFAULT_MAX_IDLE_CYCLES = 10;
+    public static final int DEFAULT_MAX_COUNTERS = 100000;
+
+    private static final long EMPTY = 0;
+    private static final int INITIAL_CAPACITY = 1024;
+    // Share of maxCounters evicted at once when the limit is reached, so that inserts past it don't each scan the table
+    private static final int EVICTION_BATCH_DIVISOR = 16;
+
+    private static class Node {
+        final int id;
+        int lastCycle;
+
+        Node(int id) {
+            this.id = id;
+        }
+    }
+
+    private final Map<String, Integer> metricIds;
+    private final Map<String, Node> nodes;
+    private int nextNodeId = NO_NODE + 1;
+
+    private long[] keys;
+    private double[] lastValues;
+    private long[] lastTimes;
+    private int[] lastCycles;
+    private int size;
+
+    private int cycle;
+    private int maxIdleCycles = DEFAULT_MAX_IDLE_CYCLES;
+    private int maxCounters = DEFAULT_MAX_COUNTERS;
 
     public EpochCounterFactory()
     {
-        processors = new HashMap<String, Processor>();
+        metricIds = new HashMap<String, Integer>();
+        nodes = new HashMap<String, Node>();
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param maxIdleCycles Cycles after which a counter which hasn't been touched is evicted
+     * @param maxCounters Number of counters above which the least recently touched ones are evicted, a batch of
+     * 1/16 of them at a time
+     */
+    public void setLimits(int maxIdleCycles, int maxCounters)
+    {
+        this.maxIdleCycles = maxIdleCycles;
+        this.maxCounters = maxCounters;
+    }
+
+    /**
+     * Starts a poll cycle, evicting counters which haven't been touched in the last maxIdleCycles cycles
+     */
+    public void startCycle()
+    {
+        cycle++;
+        for (int slot = 0; slot < keys.length; slot++) {
+            // Removal shifts a later entry into this slot, check it again
+            while (keys[slot] != EMPTY && cycle - lastCycles[slot] > maxIdleCycles) {
+                remove(slot);
+            }
+        }
+
+        Iterator<Node> iterator = nodes.values().iterator();
+        while (iterator.hasNext()) {
+            if (cycle - iterator.next().lastCycle > maxIdleCycles) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public int getMetricId(String metricName)
+    {
+        Integer id = metricIds.get(metricName);
+        if (id == null) {
+            // Ids start at 1, so that no key is EMPTY
+            id = metricIds.size() + 1;
+            metricIds.put(metricName, id);
+        }
+        return id;
+    }
+
+    public int getNodeId(String nodeName)
+    {
+        Node node = nodes.get(nodeName);
+        if (node == null) {
+            // Ids of evicted nodes are not reused, so their counters can't be mixed up
+            node = new Node(nextNodeId++);
+            nodes.put(nodeName, node);
+        }
+        node.lastCycle = cycle;
+        return node.id;
     }
 
-    private String getProcessorKey(String nodeName, String id)
+    /**
+     * @return Change of the counter per second since the previous value, NaN if there is no previous value,
+     * less than a second has passed or the counter was reset
+     */
+    public double process(int metricId, int nodeId, Number value, long timeMillis)
     {
-        return id + "-" + nodeName;
+        return process(metricId, nodeId, value != null ? value.doubleValue() : Double.NaN, timeMillis);
     }
 
-    public Processor getProcessorForNode(String id, String nodeName)
+    /**
+     * @param value Value of the counter, NaN if it is absent
+     */
+    public double process(int metricId, int nodeId, double value, long timeMillis)
     {
-        String key = getProcessorKey(id, nodeName);
-        if (!processors.containsKey(key)) {
-            processors.put(key, new EpochCounter());
+        double current = value;
+        long key = ((long) metricId << 32) | (nodeId & 0xFFFFFFFFL);
+        int slot = findSlot(key);
+
+        double rate = Double.NaN;
+        if (keys[slot] == EMPTY) {
+            if (size >= maxCounters) {
+                evictLeastRecentlyTouched();
+                slot = findSlot(key);
+            }
+            keys[slot] = key;
+            size++;
+        } else {
+            // Elapsed time in milliseconds, so rates stay exact when the poll interval changes
+            long elapsed = timeMillis - lastTimes[slot];
+            if (elapsed >= 1000) {
+                rate = (current - lastValues[slot]) * 1000 / elapsed;
+                if (rate < 0) {
+                    rate = Double.NaN;
+                }
+            }
         }
 
-        return processors.get(key);
+        lastValues[slot] = current;
+        lastTimes[slot] = timeMillis;
+        lastCycles[slot] = cycle;
+
+        if (size * 2 > keys.length) {
+            resize();
+        }
+        return rate;
     }
 
-    public Processor getProcessor(String key)
+    /**
+     * Writes the last value and time of every counter, with names of its metric and node as ids are not stable
+     * across restarts
+     *
+     * @param metricNames Names of the metric ids passed to process()
+     */
+    public void save(DataOutput out, MetricNameTable metricNames) throws IOException
     {
-        if (!processors.containsKey(key)) {
-            processors.put(key, new EpochCounter());
+        Map<Integer, String> nodeNames = new HashMap<Integer, String>();
+        for (Map.Entry<String, Node> node : nodes.entrySet()) {
+            nodeNames.put(node.getValue().id, node.getKey());
+        }
+
+        // Index of every saved metric and node in the order they are written, nodes start at 1 after NO_NODE
+        Map<Integer, Integer> savedMetrics = new LinkedHashMap<Integer, Integer>();
+        Map<Integer, Integer> savedNodes = new LinkedHashMap<Integer, Integer>();
+        int count = 0;
+        for (long key : keys) {
+            if (key == EMPTY) {
+                continue;
+            }
+            int metricId = (int) (key >>> 32);
+            int nodeId = (int) key;
+            // Counters of evicted nodes and metrics are left for eviction
+            if ((nodeId != NO_NODE && !nodeNames.containsKey(nodeId)) || metricNames.getName(metricId) == null) {
+                continue;
+            }
+            if (!savedMetrics.containsKey(metricId)) {
+                savedMetrics.put(metricId, savedMetrics.size());
+            }
+            if (nodeId != NO_NODE && !savedNodes.containsKey(nodeId)) {
+                savedNodes.put(nodeId, savedNodes.size() + 1);
+            }
+            count++;
+        }
+
+        out.writeInt(savedMetrics.size());
+        for (int metricId : savedMetrics.keySet()) {
+            out.writeUTF(metricNames.getName(metricId));
+            out.writeUTF(metricNames.getUnits(metricId));
         }
+        out.writeInt(savedNodes.size());
+        for (int nodeId : savedNodes.keySet()) {
+            out.writeUTF(nodeNames.get(nodeId));
+        }
+
+        out.writeInt(count);
+        for (int slot = 0; slot < keys.length; slot++) {
+            int metricId = (int) (keys[slot] >>> 32);
+            int nodeId = (int) keys[slot];
+            if (keys[slot] == EMPTY || !savedMetrics.containsKey(metricId)
+                || (nodeId != NO_NODE && !savedNodes.containsKey(nodeId))) {
+                continue;
+            }
+            out.writeInt(savedMetrics.get(metricId));
+            out.writeInt(nodeId == NO_NODE ? NO_NODE : savedNodes.get(nodeId));
+            out.writeDouble(lastValues[slot]);
+            out.writeLong(lastTimes[slot]);
+        }
+    }
 
-        return processors.get(key);
+    /**
+     * Restores counters written by {@link #save}
+     *
+     * @param minTimeMillis Counters last updated before are discarded
+     * @return Number of restored counters
+     */
+    public int load(DataInput in, MetricNameTable metricNames, long minTimeMillis) throws IOException
+    {
+        int[] metricIds = new int[in.readInt()];
+        for (int i = 0; i < metricIds.length; i++) {
+            String name = in.readUTF();
+            String units = in.readUTF();
+            metricIds[i] = metricNames.getMetricId(name, units, true);
+        }
+        int[] nodeIds = new int[in.readInt() + 1];
+        nodeIds[NO_NODE] = NO_NODE;
+        for (int i = 1; i < nodeIds.length; i++) {
+            nodeIds[i] = getNodeId(in.readUTF());
+        }
+
+        int restored = 0;
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int metricId = metricIds[in.readInt()];
+            int nodeId = nodeIds[in.readInt()];
+            double value = in.readDouble();
+            long time = in.readLong();
+            if (time < minTimeMillis) {
+                continue;
+            }
+            process(metricId, nodeId, value, time);
+            restored++;
+        }
+        return restored;
+    }
+
+    /**
+     * @return Number of counters
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Evicts a batch of the counters touched least recently, by cycle. Counters of the youngest evicted cycle
+     * are picked in table order.
+     */
+    private void evictLeastRecentlyTouched()
+    {
+        int batch = Math.max(1, Math.min(size, maxCounters / EVICTION_BATCH_DIVISOR));
+
+        // Counters by cycles since they were touched
+        int[] ages = new int[maxIdleCycles + 2];
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                ages[getAge(slot)]++;
+            }
+        }
+        // Counters older than cutoff are evicted, and the remaining ones of the batch of those as old as cutoff
+        int cutoff = ages.length - 1;
+        int remaining = batch;
+        while (remaining > ages[cutoff]) {
+            remaining -= ages[cutoff];
+            cutoff--;
+        }
+
+        for (int slot = 0; slot < keys.length; slot++) {
+            // Removal shifts a later entry into this slot, check it again
+            while (keys[slot] != EMPTY && (getAge(slot) > cutoff || (getAge(slot) == cutoff && remaining > 0))) {
+                if (getAge(slot) == cutoff) {
+                    remaining--;
+                }
+                remove(slot);
+            }
+        }
+    }
+
+    /**
+     * @return Cycles since the counter was touched, at most maxIdleCycles + 1
+     */
+    private int getAge(int slot)
+    {
+        return Math.min(cycle - lastCycles[slot], maxIdleCycles + 1);
+    }
+
+    /**
+     * Removes entry and moves entries of the same probe sequence back, so that none of them becomes unreachable
+     */
+    private void remove(int slot)
+    {
+        int mask = keys.length - 1;
+        int empty = slot;
+        int next = (slot + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = hash(keys[next]) & mask;
+            // Entry can move to the empty slot only if the empty slot lies between its home slot and its slot
+            if (((next - home) & mask) >= ((next - empty) & mask)) {
+                keys[empty] = keys[next];
+                lastValues[empty] = lastValues[next];
+                lastTimes[empty] = lastTimes[next];
+                lastCycles[empty] = lastCycles[next];
+                empty = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[empty] = EMPTY;
+        size--;
+    }
+
+    private int findSlot(long key)
+    {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        lastValues = new double[capacity];
+        lastTimes = new long[capacity];
+        lastCycles = new int[capacity];
+    }
+
+    private void resize()
+    {
+        long[] oldKeys = keys;
+        double[] oldValues = lastValues;
+        long[] oldTimes = lastTimes;
+        int[] oldCycles = lastCycles;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                lastValues[slot] = oldValues[i];
+                lastTimes[slot] = oldTimes[i];
+                lastCycles[slot] = oldCycles[i];
+            }
+        }
     }
 }
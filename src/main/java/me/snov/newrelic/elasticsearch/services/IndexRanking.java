@@ -0,0 +1,243 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import me.snov.newrelic.elasticsearch.interfaces.StatsSinkInterface;
+import me.snov.newrelic.elasticsearch.parsers.FieldSet;
+
+import java.util.Arrays;
+
+/**
+ * Hottest indices of a /_stats response by indexing rate, search rate and store growth. Indices are ranked one
+ * by one while the response is streamed, each ranking is a min-heap of the top N, so only the counters of an
+ * index are kept for the rates, and nothing else grows with the number of indices.
+ */
+public class IndexRanking implements StatsSinkInterface {
+
+    public static final int INDEXING = 0;
+    public static final int SEARCH = 1;
+    public static final int STORE_GROWTH = 2;
+    // Store size of an index, reported with its rates but not ranked
+    public static final int STORE_SIZE = 3;
+
+    private static final int RANKINGS = 3;
+    private static final int VALUES = 4;
+
+    /**
+     * Top N indices of one ranking, the root of the heap is the coldest of them
+     */
+    public static class Top {
+        private final String[] names;
+        // VALUES per index
+        private final double[] values;
+        private int size;
+        private final int ranked;
+
+        Top(int capacity, int ranked) {
+            this.names = new String[capacity];
+            this.values = new double[capacity * VALUES];
+            this.ranked = ranked;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public String getName(int index) {
+            return names[index];
+        }
+
+        /**
+         * @param value One of INDEXING, SEARCH, STORE_GROWTH or STORE_SIZE
+         */
+        public double getValue(int index, int value) {
+            return values[index * VALUES + value];
+        }
+
+        void clear() {
+            Arrays.fill(names, 0, size, null);
+            size = 0;
+        }
+
+        void offer(String name, double[] indexValues) {
+            double score = indexValues[ranked];
+            // Idle indices are not hot, also while there are fewer than N busy ones
+            if (!(score > 0)) {
+                return;
+            }
+            if (size < names.length) {
+                set(size, name, indexValues);
+                siftUp(size++);
+            } else if (score > score(0)) {
+                set(0, name, indexValues);
+                siftDown(0);
+            }
+        }
+
+        private double score(int index) {
+            return values[index * VALUES + ranked];
+        }
+
+        private void set(int index, String name, double[] indexValues) {
+            names[index] = name;
+            System.arraycopy(indexValues, 0, values, index * VALUES, VALUES);
+        }
+
+        private void swap(int a, int b) {
+            String name = names[a];
+            names[a] = names[b];
+            names[b] = name;
+            for (int i = 0; i < VALUES; i++) {
+                double value = values[a * VALUES + i];
+                values[a * VALUES + i] = values[b * VALUES + i];
+                values[b * VALUES + i] = value;
+            }
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (score(parent) <= score(index)) {
+                    return;
+                }
+                swap(parent, index);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int smallest = index;
+                int left = index * 2 + 1;
+                int right = left + 1;
+                if (left < size && score(left) < score(smallest)) {
+                    smallest = left;
+                }
+                if (right < size && score(right) < score(smallest)) {
+                    smallest = right;
+                }
+                if (smallest == index) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+    }
+
+    private final EpochCounterFactory processorFactory = new EpochCounterFactory();
+    private final int indexingField;
+    private final int searchField;
+    private final int storeField;
+    private final int indexingMetric;
+    private final int searchMetric;
+    private final int storeMetric;
+    private final Top[] tops = new Top[RANKINGS];
+
+    // Index being read and its values, ranked at the end of the entry
+    private String index;
+    private final double[] counters = new double[RANKINGS];
+    private final double[] indexValues = new double[VALUES];
+    private long sampleTime;
+    private int indexCount;
+
+    /**
+     * @param fields Fields of the index stats, with total.indexing.index_total, total.search.query_total and
+     *               total.store.size_in_bytes
+     * @param topIndices Number of indices kept per ranking
+     */
+    public IndexRanking(FieldSet fields, int topIndices) {
+        if (topIndices <= 0) {
+            throw new IllegalArgumentException("Number of top indices must be positive: " + topIndices);
+        }
+        indexingField = fields.getField("total.indexing.index_total");
+        searchField = fields.getField("total.search.query_total");
+        storeField = fields.getField("total.store.size_in_bytes");
+        indexingMetric = processorFactory.getMetricId("indexing");
+        searchMetric = processorFactory.getMetricId("search");
+        storeMetric = processorFactory.getMetricId("store");
+        for (int i = 0; i < RANKINGS; i++) {
+            tops[i] = new Top(topIndices, i);
+        }
+    }
+
+    /**
+     * @param maxIdleCycles Cycles after which counters of a deleted index are evicted
+     * @param maxCounters Number of counters kept at most, three per index
+     */
+    public void setCounterLimits(int maxIdleCycles, int maxCounters) {
+        processorFactory.setLimits(maxIdleCycles, maxCounters);
+    }
+
+    /**
+     * Clears the rankings before a response is read
+     *
+     * @param timeMillis Time of the response, for the rates
+     */
+    public void startCycle(long timeMillis) {
+        sampleTime = timeMillis;
+        processorFactory.startCycle();
+        for (Top top : tops) {
+            top.clear();
+        }
+        indexCount = 0;
+    }
+
+    /**
+     * @param ranking One of INDEXING, SEARCH or STORE_GROWTH
+     */
+    public Top getTop(int ranking) {
+        return tops[ranking];
+    }
+
+    /**
+     * @return Number of indices in the last response
+     */
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    @Override
+    public void startEntry(String key) {
+        index = key;
+        Arrays.fill(counters, Double.NaN);
+        indexValues[STORE_SIZE] = Double.NaN;
+    }
+
+    @Override
+    public void startObject(int field) {
+    }
+
+    @Override
+    public void value(int field, double value) {
+        if (field == indexingField) {
+            counters[INDEXING] = value;
+        } else if (field == searchField) {
+            counters[SEARCH] = value;
+        } else if (field == storeField) {
+            counters[STORE_GROWTH] = value;
+            indexValues[STORE_SIZE] = value;
+        }
+    }
+
+    @Override
+    public void value(int field, String value) {
+    }
+
+    @Override
+    public void endEntry() {
+        indexCount++;
+        int nodeId = processorFactory.getNodeId(index);
+        indexValues[INDEXING] = process(indexingMetric, nodeId, counters[INDEXING]);
+        indexValues[SEARCH] = process(searchMetric, nodeId, counters[SEARCH]);
+        // Shrinks on merges, then it is no growth
+        indexValues[STORE_GROWTH] = process(storeMetric, nodeId, counters[STORE_GROWTH]);
+
+        for (Top top : tops) {
+            top.offer(index, indexValues);
+        }
+        index = null;
+    }
+
+    private double process(int metricId, int nodeId, double counter) {
+        return Double.isNaN(counter) ? Double.NaN : processorFactory.process(metricId, nodeId, counter, sampleTime);
+    }
+}
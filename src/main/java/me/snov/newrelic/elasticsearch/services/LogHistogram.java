@@ -0,0 +1,110 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import java.util.Arrays;
+
+/**
+ * Counts of non-negative values in buckets growing by a constant factor, so quantiles are known to within about
+ * 6% of the value with a fixed amount of memory, no matter how many values are added.
+ */
+public class LogHistogram {
+
+    // Buckets per power of two
+    private static final int SUB_BUCKETS = 8;
+    // Zero and values below 2^-32 share the first bucket, values of 2^64 and above the last one
+    private static final int MIN_EXPONENT = -32;
+    private static final int MAX_EXPONENT = 64;
+    private static final double MIN_VALUE = Math.scalb(1.0, MIN_EXPONENT);
+    private static final int BUCKETS = (MAX_EXPONENT - MIN_EXPONENT) * SUB_BUCKETS + 2;
+
+    private final int[] counts = new int[BUCKETS];
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    public void add(double value) {
+        if (Double.isNaN(value) || value < 0) {
+            return;
+        }
+        counts[getBucket(value)]++;
+        count++;
+        if (!(value >= min)) {
+            min = value;
+        }
+        if (!(value <= max)) {
+            max = value;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        min = Double.NaN;
+        max = Double.NaN;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Exact smallest value, NaN if there is none
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return Exact largest value, NaN if there is none
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @param quantile Between 0 and 1, e.g. 0.5 for the median
+     * @return Middle of the bucket of the quantile, within min and max; the largest value for 1, NaN if there are no
+     *         values
+     */
+    public double getQuantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        // Rank of the value, 1 based
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        // The largest value is known exactly, and the last bucket has no upper bound
+        if (rank >= count) {
+            return max;
+        }
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(max, Math.max(min, getBucketMiddle(bucket)));
+            }
+        }
+        return max;
+    }
+
+    private static int getBucket(double value) {
+        if (value < MIN_VALUE) {
+            return 0;
+        }
+        int exponent = Math.getExponent(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        // Position within the power of two, from the top bits of the mantissa
+        int subBucket = (int) ((value / Math.scalb(1.0, exponent) - 1) * SUB_BUCKETS);
+        return 1 + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    private static double getBucketMiddle(int bucket) {
+        // Mostly zeros, e.g. empty queues
+        if (bucket == 0) {
+            return 0;
+        }
+        int exponent = (bucket - 1) / SUB_BUCKETS + MIN_EXPONENT;
+        int subBucket = (bucket - 1) % SUB_BUCKETS;
+        return Math.scalb(1.0 + (subBucket + 0.5) / SUB_BUCKETS, exponent);
+    }
+}
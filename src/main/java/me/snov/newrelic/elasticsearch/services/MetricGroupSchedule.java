@@ -0,0 +1,91 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interval of every metric group: cluster stats, and the top level objects of nodes stats (e.g. "thread_pool").
+ * A poll requests only the groups which are due, groups without an interval are requested by every poll.
+ */
+public class MetricGroupSchedule {
+
+    /**
+     * Group of /_cluster/stats
+     */
+    public static final String CLUSTER = "cluster";
+
+    private final Set<String> groups;
+    private final Map<String, Long> intervals;
+    private final Map<String, Long> lastPolls;
+
+    /**
+     * @param nodesStatsFields Fields of nodes stats, their top level objects are the groups next to "cluster"
+     */
+    public MetricGroupSchedule(String[] nodesStatsFields) {
+        groups = new LinkedHashSet<String>();
+        groups.add(CLUSTER);
+        for (String field : nodesStatsFields) {
+            int separator = field.indexOf('.');
+            if (separator > 0) {
+                groups.add(field.substring(0, separator));
+            }
+        }
+        intervals = new HashMap<String, Long>();
+        lastPolls = new HashMap<String, Long>();
+    }
+
+    public Set<String> getGroups() {
+        return groups;
+    }
+
+    public synchronized void setInterval(String group, long intervalMillis) {
+        if (!groups.contains(group)) {
+            throw new IllegalArgumentException(String.format("Unknown metric group '%s', known groups are %s",
+                group, groups));
+        }
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException(String.format("Invalid interval of metric group '%s': %d ms",
+                group, intervalMillis));
+        }
+        intervals.put(group, intervalMillis);
+    }
+
+    /**
+     * @return Longest interval of a group, 0 if every group is polled every time
+     */
+    public synchronized long getMaxInterval() {
+        long max = 0;
+        for (Long interval : intervals.values()) {
+            max = Math.max(max, interval);
+        }
+        return max;
+    }
+
+    /**
+     * A group is due a tenth of its interval early, so that it is not pushed back a whole poll by jitter
+     *
+     * @return Groups not polled within their interval
+     */
+    public synchronized Set<String> getDueGroups(long timeMillis) {
+        Set<String> due = new LinkedHashSet<String>();
+        for (String group : groups) {
+            Long interval = intervals.get(group);
+            Long lastPoll = lastPolls.get(group);
+            if (interval == null || lastPoll == null || timeMillis - lastPoll >= interval - interval / 10) {
+                due.add(group);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * @param timeMillis Start of the poll which has requested the groups
+     */
+    public synchronized void setPolled(Set<String> polledGroups, long timeMillis) {
+        for (String group : polledGroups) {
+            lastPolls.put(group, timeMillis);
+        }
+    }
+}
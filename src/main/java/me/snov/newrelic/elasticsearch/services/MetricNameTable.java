@@ -0,0 +1,261 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Descriptors (name, units, processed or not) of reported metrics, and their names per node, index or shard.
+ * A node metric name is built the first time the metric is reported for the node, then reused in every cycle.
+ *
+ * Nodes, indices and shards are separate dimensions: each one has its own cycles, advanced by the reporter of
+ * that dimension, and names of a node, index or shard are dropped once it wasn't reported for a while.
+ *
+ * Metrics and metrics per node, index or shard share one id space, so a metric can be passed around as an int id
+ * and resolved to its name only when it is published. Ids of evicted metrics are reused.
+ */
+public class MetricNameTable {
+
+    public static final int NODE = 0;
+    public static final int INDEX = 1;
+    public static final int SHARD = 2;
+
+    private static final String[] DIMENSION_LABELS = {"node", "index", "shard"};
+    private static final int INITIAL_CAPACITY = 128;
+
+    private static class Node {
+        int[] metricIds = new int[INITIAL_CAPACITY];
+        int lastCycle;
+    }
+
+    private final Map<String, Integer> metricIds;
+    private String[] names;
+    private String[] units;
+    private boolean[] processed;
+    // Metric, dimension and node, index or shard of metrics per node, index or shard.
+    // The metric itself, -1 and null otherwise
+    private int[] baseIds;
+    private int[] dimensions;
+    private String[] dimensionNames;
+    private int nextId = 1;
+    private int[] freeIds;
+    private int freeCount;
+
+    // Nodes, indices and shards by name, and the current cycle of each dimension
+    private final List<Map<String, Node>> dimensionNodes;
+    private final int[] cycles;
+    private int dimensionMetricCount;
+    private int maxIdleCycles = EpochCounterFactory.DEFAULT_MAX_IDLE_CYCLES;
+
+    public MetricNameTable() {
+        metricIds = new HashMap<String, Integer>();
+        names = new String[INITIAL_CAPACITY];
+        units = new String[INITIAL_CAPACITY];
+        processed = new boolean[INITIAL_CAPACITY];
+        baseIds = new int[INITIAL_CAPACITY];
+        dimensions = new int[INITIAL_CAPACITY];
+        dimensionNames = new String[INITIAL_CAPACITY];
+        freeIds = new int[INITIAL_CAPACITY];
+        dimensionNodes = new ArrayList<Map<String, Node>>(DIMENSION_LABELS.length);
+        for (int i = 0; i < DIMENSION_LABELS.length; i++) {
+            dimensionNodes.add(new HashMap<String, Node>());
+        }
+        cycles = new int[DIMENSION_LABELS.length];
+    }
+
+    /**
+     * @param maxIdleCycles Cycles of its dimension after which names of a node, index or shard which wasn't
+     *                      reported are dropped
+     */
+    public synchronized void setMaxIdleCycles(int maxIdleCycles) {
+        this.maxIdleCycles = maxIdleCycles;
+    }
+
+    /**
+     * Starts a cycle of nodes
+     */
+    public void startCycle() {
+        startCycle(NODE);
+    }
+
+    /**
+     * Starts a cycle of the dimension, called by its reporter before each report
+     */
+    public synchronized void startCycle(int dimension) {
+        int cycle = ++cycles[dimension];
+        Iterator<Node> iterator = dimensionNodes.get(dimension).values().iterator();
+        while (iterator.hasNext()) {
+            Node node = iterator.next();
+            if (cycle - node.lastCycle > maxIdleCycles) {
+                for (int id : node.metricIds) {
+                    if (id != 0) {
+                        release(id);
+                    }
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Registers the metric the first time it is seen
+     *
+     * @return Id of the metric, starting at 1
+     */
+    public synchronized int getMetricId(String metricName, String metricUnits, boolean isProcessed) {
+        Integer id = metricIds.get(metricName);
+        if (id == null) {
+            id = allocate(metricName, metricUnits, isProcessed);
+            baseIds[id] = id;
+            dimensions[id] = -1;
+            metricIds.put(metricName, id);
+        }
+        return id;
+    }
+
+    /**
+     * @return Id of metric name + "/" + node name
+     */
+    public int getNodeMetricId(int metricId, String nodeName) {
+        return getDimensionMetricId(metricId, NODE, nodeName);
+    }
+
+    /**
+     * @return Id of metric name + "/" + index name
+     */
+    public int getIndexMetricId(int metricId, String indexName) {
+        return getDimensionMetricId(metricId, INDEX, indexName);
+    }
+
+    /**
+     * @param shardName Index name + "/" + shard number
+     * @return Id of metric name + "/" + shard name
+     */
+    public int getShardMetricId(int metricId, String shardName) {
+        return getDimensionMetricId(metricId, SHARD, shardName);
+    }
+
+    /**
+     * @return Id of metric name + "/" + name of the node, index or shard
+     */
+    public synchronized int getDimensionMetricId(int metricId, int dimension, String name) {
+        Map<String, Node> nodes = dimensionNodes.get(dimension);
+        Node node = nodes.get(name);
+        if (node == null) {
+            node = new Node();
+            nodes.put(name, node);
+        }
+        node.lastCycle = cycles[dimension];
+
+        if (metricId >= node.metricIds.length) {
+            node.metricIds = Arrays.copyOf(node.metricIds, Math.max(node.metricIds.length * 2, metricId + 1));
+        }
+        int id = node.metricIds[metricId];
+        if (id == 0) {
+            id = allocate(names[metricId] + "/" + name, units[metricId], processed[metricId]);
+            baseIds[id] = metricId;
+            dimensions[id] = dimension;
+            dimensionNames[id] = name;
+            node.metricIds[metricId] = id;
+            dimensionMetricCount++;
+        }
+        return id;
+    }
+
+    /**
+     * @return metric name + "/" + node name
+     */
+    public String getNodeMetricName(int metricId, String nodeName) {
+        return getName(getNodeMetricId(metricId, nodeName));
+    }
+
+    public synchronized String getName(int id) {
+        return names[id];
+    }
+
+    public synchronized String getUnits(int id) {
+        return units[id];
+    }
+
+    public synchronized boolean isProcessed(int id) {
+        return processed[id];
+    }
+
+    /**
+     * @return Id of the metric a metric per node, index or shard was built from, the id itself otherwise
+     */
+    public synchronized int getBaseId(int id) {
+        return baseIds[id];
+    }
+
+    /**
+     * @return Node of a node metric, null if it is not a node metric
+     */
+    public synchronized String getNodeName(int id) {
+        return dimensions[id] == NODE ? dimensionNames[id] : null;
+    }
+
+    /**
+     * @return {@link #NODE}, {@link #INDEX} or {@link #SHARD}, -1 if the metric is not per node, index or shard
+     */
+    public synchronized int getDimension(int id) {
+        return dimensions[id];
+    }
+
+    /**
+     * @return Node, index or shard of the metric, null if it is not per node, index or shard
+     */
+    public synchronized String getDimensionName(int id) {
+        return dimensionNames[id];
+    }
+
+    /**
+     * @return "node", "index" or "shard"
+     */
+    public static String getDimensionLabel(int dimension) {
+        return DIMENSION_LABELS[dimension];
+    }
+
+    /**
+     * @return Number of distinct metric names, with and without node, index or shard
+     */
+    public synchronized int size() {
+        return metricIds.size() + dimensionMetricCount;
+    }
+
+    private int allocate(String name, String metricUnits, boolean isProcessed) {
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            id = nextId++;
+            if (id >= names.length) {
+                names = Arrays.copyOf(names, names.length * 2);
+                units = Arrays.copyOf(units, units.length * 2);
+                processed = Arrays.copyOf(processed, processed.length * 2);
+                baseIds = Arrays.copyOf(baseIds, baseIds.length * 2);
+                dimensions = Arrays.copyOf(dimensions, dimensions.length * 2);
+                dimensionNames = Arrays.copyOf(dimensionNames, dimensionNames.length * 2);
+            }
+        }
+        names[id] = name;
+        units[id] = metricUnits;
+        processed[id] = isProcessed;
+        return id;
+    }
+
+    private void release(int id) {
+        names[id] = null;
+        units[id] = null;
+        dimensions[id] = -1;
+        dimensionNames[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+        dimensionMetricCount--;
+    }
+}
@@ -1,6 +1,8 @@
 package me.snov.newrelic.elasticsearch.services;
 
+import me.snov.newrelic.elasticsearch.parsers.FieldSet;
 import me.snov.newrelic.elasticsearch.responses.NodesStats;
+import me.snov.newrelic.elasticsearch.responses.NodesStatsTable;
 
 public class NodesStatsService {
 
@@ -39,4 +41,56 @@ public class NodesStatsService {
 
         return result;
     }
+
+    /**
+     * @return Numbers of queries across the cluster
+     */
+    public QueriesStat getTotalNumberOfQueries(NodesStatsTable nodesStats) {
+        QueriesStat result = new QueriesStat();
+        if (nodesStats != null) {
+            FieldSet fields = nodesStats.getFields();
+            result.search = sum(nodesStats, fields.getField("indices.search.query_total"));
+            result.fetch = sum(nodesStats, fields.getField("indices.search.fetch_total"));
+            result.get = sum(nodesStats, fields.getField("indices.get.total"));
+            result.index = sum(nodesStats, fields.getField("indices.indexing.index_total"));
+            result.delete = sum(nodesStats, fields.getField("indices.indexing.delete_total"));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return Longest queue of any thread pool on any node, NaN if no queue is known
+     */
+    public double getMaxQueueSize(NodesStatsTable nodesStats) {
+        double max = Double.NaN;
+        if (nodesStats != null) {
+            FieldSet fields = nodesStats.getFields();
+            int threadPool = fields.getField("thread_pool");
+            for (int field = 0; field < fields.size(); field++) {
+                // thread_pool.<name>.queue
+                int pool = fields.getParent(field);
+                if (pool == FieldSet.ROOT || fields.getParent(pool) != threadPool
+                    || !"queue".equals(fields.getName(field))) {
+                    continue;
+                }
+                for (int row = 0; row < nodesStats.size(); row++) {
+                    if (nodesStats.has(row, field) && !(nodesStats.getValue(row, field) <= max)) {
+                        max = nodesStats.getValue(row, field);
+                    }
+                }
+            }
+        }
+        return max;
+    }
+
+    private static long sum(NodesStatsTable nodesStats, int field) {
+        long sum = 0;
+        for (int row = 0; row < nodesStats.size(); row++) {
+            if (nodesStats.has(row, field)) {
+                sum += (long) nodesStats.getValue(row, field);
+            }
+        }
+        return sum;
+    }
 }
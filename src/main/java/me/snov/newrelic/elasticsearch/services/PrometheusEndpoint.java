@@ -0,0 +1,101 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP endpoint serving /metrics for Prometheus, with the snapshots of all exporters registered with it.
+ * Scrapes only copy bytes, so a single thread serves them.
+ */
+public class PrometheusEndpoint implements Closeable {
+
+    public static final String PATH = "/metrics";
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final List<PrometheusExporter> exporters = new CopyOnWriteArrayList<PrometheusExporter>();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param port Port to listen on, 0 for any free one
+     */
+    public PrometheusEndpoint(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(PATH, new MetricsHandler());
+        executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("prometheus"));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void register(PrometheusExporter exporter) {
+        exporters.add(exporter);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private class MetricsHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+                // Snapshots of this scrape, each exporter may swap in a new one meanwhile
+                byte[][] bodies = new byte[exporters.size()][];
+                long length = 0;
+                int count = 0;
+                for (PrometheusExporter exporter : exporters) {
+                    if (count == bodies.length) {
+                        break;
+                    }
+                    PrometheusExporter.Snapshot snapshot = exporter.getSnapshot();
+                    bodies[count] = gzip ? snapshot.getGzipped() : snapshot.getText();
+                    length += bodies[count].length;
+                    count++;
+                }
+
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                if (gzip) {
+                    // Concatenated gzip members are one gzip stream
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(200, -1);
+                    return;
+                }
+                exchange.sendResponseHeaders(200, length == 0 ? -1 : length);
+                OutputStream body = exchange.getResponseBody();
+                for (int i = 0; i < count; i++) {
+                    body.write(bodies[i]);
+                }
+                body.close();
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
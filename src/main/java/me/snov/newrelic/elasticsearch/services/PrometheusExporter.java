@@ -0,0 +1,182 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import me.snov.newrelic.elasticsearch.interfaces.MetricSinkInterface;
+import me.snov.newrelic.elasticsearch.reporters.MetricBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Renders the metrics of a cluster in the Prometheus text format once per cycle. Scrapes are served the last
+ * rendered snapshot, which is swapped in as a whole, so they neither wait for a poll nor render anything.
+ *
+ * V1/NodeStats/Http/CurrentOpen/node-1 in connections becomes
+ * elasticsearch_nodestats_http_currentopen_connections{cluster="...",node="node-1"}.
+ * Metrics are untyped, the units of New Relic don't tell gauges from counters.
+ */
+public class PrometheusExporter implements MetricSinkInterface {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String PREFIX = "elasticsearch_";
+    private static final String VERSION_PREFIX = "V1/";
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Text of one cycle, gzipped the first time a scrape accepts it
+     */
+    public static class Snapshot {
+        private final byte[] text;
+        private volatile byte[] gzipped;
+
+        Snapshot(byte[] text) {
+            this.text = text;
+        }
+
+        public byte[] getText() {
+            return text;
+        }
+
+        /**
+         * @return Complete gzip member, members of several snapshots can be concatenated
+         */
+        public byte[] getGzipped() {
+            byte[] bytes = gzipped;
+            if (bytes == null) {
+                // Racing scrapes compress the same text, either result is fine
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(text.length / 8 + 64);
+                try {
+                    GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+                    gzip.write(text);
+                    gzip.close();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                bytes = compressed.toByteArray();
+                gzipped = bytes;
+            }
+            return bytes;
+        }
+    }
+
+    private final String clusterLabel;
+    private volatile Snapshot snapshot = new Snapshot(EMPTY);
+
+    // Rendered series by metric id, valid while the name of the id is the same instance
+    private String[] seriesNames = new String[0];
+    private String[] series = new String[0];
+    // Index of the last value of each metric id in the buffer being rendered, -1 if none
+    private int[] lastIndex = new int[0];
+
+    public PrometheusExporter(String clusterName) {
+        this.clusterLabel = "cluster=\"" + escapeLabel(clusterName) + "\"";
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Renders the buffer into a new snapshot. A metric reported more than once, by several polls of one cycle,
+     * is rendered with its last value, Prometheus rejects repeated series.
+     */
+    @Override
+    public synchronized void reportMetrics(MetricBuffer metrics) {
+        StringBuilder text;
+        synchronized (metrics) {
+            MetricNameTable metricNames = metrics.getMetricNames();
+            int size = metrics.size();
+            for (int i = 0; i < size; i++) {
+                int metricId = metrics.getMetricId(i);
+                if (metricId >= lastIndex.length) {
+                    int length = Math.max(lastIndex.length * 2, metricId + 1);
+                    int previous = lastIndex.length;
+                    lastIndex = Arrays.copyOf(lastIndex, length);
+                    Arrays.fill(lastIndex, previous, length, -1);
+                    seriesNames = Arrays.copyOf(seriesNames, length);
+                    series = Arrays.copyOf(series, length);
+                }
+                lastIndex[metricId] = i;
+            }
+
+            text = new StringBuilder(size * 96);
+            for (int i = 0; i < size; i++) {
+                int metricId = metrics.getMetricId(i);
+                if (lastIndex[metricId] != i) {
+                    continue;
+                }
+                text.append(getSeries(metricNames, metricId)).append(' ');
+                appendValue(text, metrics.getValue(i));
+                text.append('\n');
+            }
+            for (int i = 0; i < size; i++) {
+                lastIndex[metrics.getMetricId(i)] = -1;
+            }
+        }
+        snapshot = new Snapshot(text.toString().getBytes(UTF_8));
+    }
+
+    private String getSeries(MetricNameTable metricNames, int metricId) {
+        String name = metricNames.getName(metricId);
+        if (seriesNames[metricId] == name) {
+            return series[metricId];
+        }
+
+        int dimension = metricNames.getDimension(metricId);
+        int baseId = metricNames.getBaseId(metricId);
+        StringBuilder rendered = new StringBuilder(PREFIX);
+        appendName(rendered, metricNames.getName(baseId));
+        rendered.append('_');
+        appendName(rendered, metricNames.getUnits(baseId));
+        rendered.append('{').append(clusterLabel);
+        if (dimension >= 0) {
+            rendered.append(',').append(MetricNameTable.getDimensionLabel(dimension)).append("=\"")
+                .append(escapeLabel(metricNames.getDimensionName(metricId))).append('"');
+        }
+        rendered.append('}');
+
+        seriesNames[metricId] = name;
+        series[metricId] = rendered.toString();
+        return series[metricId];
+    }
+
+    /**
+     * Lower case letters and digits, anything else becomes a single underscore
+     */
+    private static void appendName(StringBuilder rendered, String name) {
+        int start = name.startsWith(VERSION_PREFIX) ? VERSION_PREFIX.length() : 0;
+        boolean separator = false;
+        for (int i = start; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                rendered.append(c);
+                separator = false;
+            } else if (c >= 'A' && c <= 'Z') {
+                rendered.append((char) (c - 'A' + 'a'));
+                separator = false;
+            } else if (!separator) {
+                rendered.append('_');
+                separator = true;
+            }
+        }
+    }
+
+    private static void appendValue(StringBuilder text, double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            text.append("+Inf");
+        } else if (value == Double.NEGATIVE_INFINITY) {
+            text.append("-Inf");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            text.append((long) value);
+        } else {
+            // NaN as well
+            text.append(value);
+        }
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
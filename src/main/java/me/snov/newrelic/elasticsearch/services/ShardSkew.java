@@ -0,0 +1,158 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Skew of the shards on every node: how the largest and the busiest shard compare to the median one. Shards are
+ * added one by one while the shard list is streamed; every node keeps a {@link LogHistogram} of store sizes and
+ * of indexing rates and its hottest shards, so memory grows with the number of nodes, not of shards. Only the
+ * indexing counters of the shard copies are kept for the rates, within the counter limits.
+ */
+public class ShardSkew {
+
+    /**
+     * Shards of one node in the last response
+     */
+    public static class NodeShards {
+        private final String node;
+        private final LogHistogram storeSizes = new LogHistogram();
+        private final LogHistogram indexingRates = new LogHistogram();
+        private String largestShard;
+        private String busiestShard;
+        private int lastCycle;
+
+        NodeShards(String node) {
+            this.node = node;
+        }
+
+        public String getNode() {
+            return node;
+        }
+
+        public long getShardCount() {
+            return storeSizes.getCount();
+        }
+
+        public String getLargestShard() {
+            return largestShard;
+        }
+
+        public double getLargestStoreSize() {
+            return storeSizes.getMax();
+        }
+
+        public String getBusiestShard() {
+            return busiestShard;
+        }
+
+        public double getBusiestIndexingRate() {
+            return indexingRates.getMax();
+        }
+
+        /**
+         * @return Store size of the largest shard over the median one, NaN without shards
+         */
+        public double getStoreSkew() {
+            return getSkew(storeSizes);
+        }
+
+        /**
+         * @return Indexing rate of the busiest shard over the median one, NaN before rates are known
+         */
+        public double getIndexingSkew() {
+            return getSkew(indexingRates);
+        }
+
+        private static double getSkew(LogHistogram histogram) {
+            // A median below 1 counts as 1, so idle shards don't make the skew infinite
+            return histogram.getMax() / Math.max(histogram.getQuantile(0.5), 1);
+        }
+
+        void clear() {
+            storeSizes.clear();
+            indexingRates.clear();
+            largestShard = null;
+            busiestShard = null;
+        }
+
+        void add(String shard, double storeSize, double indexingRate) {
+            if (!(storeSize <= storeSizes.getMax()) && !Double.isNaN(storeSize)) {
+                largestShard = shard;
+            }
+            storeSizes.add(storeSize);
+            if (!(indexingRate <= indexingRates.getMax()) && !Double.isNaN(indexingRate)) {
+                busiestShard = shard;
+            }
+            indexingRates.add(indexingRate);
+        }
+    }
+
+    private final EpochCounterFactory processorFactory = new EpochCounterFactory();
+    private final int indexingMetric = processorFactory.getMetricId("indexing");
+    private final Map<String, NodeShards> nodes = new HashMap<String, NodeShards>();
+    private final List<NodeShards> active = new ArrayList<NodeShards>();
+    private long sampleTime;
+    private int cycle;
+
+    /**
+     * @param maxIdleCycles Cycles after which counters of a shard which moved or was deleted are evicted
+     * @param maxCounters Number of shard counters kept at most
+     */
+    public void setCounterLimits(int maxIdleCycles, int maxCounters) {
+        processorFactory.setLimits(maxIdleCycles, maxCounters);
+    }
+
+    /**
+     * Forgets the shards of the previous response
+     *
+     * @param timeMillis Time of the response, for the rates
+     */
+    public void startCycle(long timeMillis) {
+        sampleTime = timeMillis;
+        cycle++;
+        processorFactory.startCycle();
+        // Nodes without shards in the previous response have left the cluster
+        Iterator<NodeShards> iterator = nodes.values().iterator();
+        while (iterator.hasNext()) {
+            NodeShards node = iterator.next();
+            if (node.lastCycle < cycle - 1) {
+                iterator.remove();
+            } else {
+                node.clear();
+            }
+        }
+        active.clear();
+    }
+
+    /**
+     * @param shard Index name and shard number, e.g. "logs/3"
+     * @param shardCopy Key of the shard copy for its indexing counter, e.g. "logs/3/p/node-1"
+     * @param indexTotal Documents indexed into the shard copy, NaN if unknown
+     */
+    public void addShard(String node, String shard, String shardCopy, double storeSize, double indexTotal) {
+        NodeShards nodeShards = nodes.get(node);
+        if (nodeShards == null) {
+            nodeShards = new NodeShards(node);
+            nodes.put(node, nodeShards);
+        }
+        if (nodeShards.lastCycle != cycle) {
+            nodeShards.lastCycle = cycle;
+            active.add(nodeShards);
+        }
+
+        double indexingRate = Double.isNaN(indexTotal) ? Double.NaN
+            : processorFactory.process(indexingMetric, processorFactory.getNodeId(shardCopy), indexTotal, sampleTime);
+        nodeShards.add(shard, storeSize, indexingRate);
+    }
+
+    /**
+     * @return Nodes with shards in the last response
+     */
+    public List<NodeShards> getNodes() {
+        return active;
+    }
+}
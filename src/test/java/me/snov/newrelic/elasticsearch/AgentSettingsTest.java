@@ -0,0 +1,88 @@
+package me.snov.newrelic.elasticsearch;
+
+import com.newrelic.metrics.publish.configuration.ConfigurationException;
+import me.snov.newrelic.elasticsearch.services.CollectorProbe;
+import me.snov.newrelic.elasticsearch.services.EpochCounterFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class AgentSettingsTest {
+
+    private Map<String, Object> properties;
+
+    @Before
+    public void setUp() {
+        properties = new HashMap<String, Object>();
+        properties.put("host", "localhost");
+        properties.put("port", 9200L);
+    }
+
+    @Test
+    public void testDefaults() throws ConfigurationException {
+        properties.put("basePath", "/es/");
+        AgentSettings settings = AgentSettings.parse(properties);
+
+        assertEquals("http", settings.protocol);
+        assertEquals(9200, settings.port);
+        assertEquals("/es", settings.basePath);
+        assertFalse(settings.nodeFanOut);
+        assertEquals(ElasticsearchAgent.DEFAULT_POLL_DEADLINE_MILLIS, settings.pollDeadline);
+        assertEquals(EpochCounterFactory.DEFAULT_MAX_IDLE_CYCLES, settings.counterIdleCycles);
+        assertNull(settings.pollInterval);
+        assertNull(settings.metricGroups);
+        assertNull(settings.healthPollInterval);
+    }
+
+    @Test
+    public void testIdleCyclesOutliveMetricGroups() throws ConfigurationException {
+        Map<String, Object> groupIntervals = new HashMap<String, Object>();
+        groupIntervals.put("indices", 180000L);
+        properties.put("groupIntervals", groupIntervals);
+
+        // Three Runner cycles between polls of the group
+        assertEquals(3 * EpochCounterFactory.DEFAULT_MAX_IDLE_CYCLES, AgentSettings.parse(properties).counterIdleCycles);
+    }
+
+    @Test
+    public void testCollectorUrl() throws ConfigurationException {
+        assertNull(AgentSettings.parse(properties).collectorUrl);
+
+        properties.put("collectorProbe", true);
+        assertEquals(CollectorProbe.DEFAULT_URL, AgentSettings.parse(properties).collectorUrl.toString());
+        properties.put("collectorUrl", "https://collector.example.com/platform/v1/metrics");
+        assertEquals("collector.example.com", AgentSettings.parse(properties).collectorUrl.getHost());
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testMissingPort() throws ConfigurationException {
+        properties.remove("port");
+        AgentSettings.parse(properties);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testWrongType() throws ConfigurationException {
+        properties.put("readTimeout", "5000");
+        AgentSettings.parse(properties);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testNonPositiveHealthPollInterval() throws ConfigurationException {
+        properties.put("healthPollInterval", 0L);
+        AgentSettings.parse(properties);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testInvalidPollIntervals() throws ConfigurationException {
+        properties.put("adaptivePolling", true);
+        properties.put("minPollInterval", 60000L);
+        properties.put("maxPollInterval", 10000L);
+        AgentSettings.parse(properties);
+    }
+}
@@ -0,0 +1,125 @@
+package me.snov.newrelic.elasticsearch.fixtures;
+
+import com.google.gson.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Builds responses of synthetic clusters from the recorded fixtures, e.g. /_nodes/stats of 1000 nodes
+ * out of nodes_stats_1.3.4.json with 3 nodes
+ */
+public class FixtureGenerator {
+
+    // Wall clock time between two cycles of the agent
+    public static final long CYCLE_MILLIS = 60000;
+
+    private static final Gson gson = new Gson();
+    private static final Pattern COUNTER = Pattern.compile(".*(total|count|_in_millis|_time)");
+
+    public static String readResource(String path) throws IOException {
+        InputStream stream = FixtureGenerator.class.getResourceAsStream(path);
+        if (stream == null) {
+            throw new IOException("Resource not found: " + path);
+        }
+        try {
+            return new JsonParser().parse(new InputStreamReader(stream, "UTF-8")).toString();
+        } finally {
+            stream.close();
+        }
+    }
+
+    public static String scaleNodesStats(String template, int nodeCount) {
+        return scaleNodesStats(template, nodeCount, 0);
+    }
+
+    /**
+     * Copies nodes of the template round robin, every copy gets its own id and name.
+     * Counters grow with every cycle at a rate which differs between nodes and counters.
+     */
+    public static String scaleNodesStats(String template, int nodeCount, int cycle) {
+        JsonObject response = new JsonParser().parse(template).getAsJsonObject();
+        JsonObject templateNodes = response.getAsJsonObject("nodes");
+        String[] nodes = new String[templateNodes.entrySet().size()];
+        int i = 0;
+        for (Map.Entry<String, JsonElement> entry : templateNodes.entrySet()) {
+            nodes[i++] = entry.getValue().toString();
+        }
+
+        JsonObject scaledNodes = new JsonObject();
+        for (int node = 0; node < nodeCount; node++) {
+            JsonObject copy = new JsonParser().parse(nodes[node % nodes.length]).getAsJsonObject();
+            copy.addProperty("name", getNodeName(node));
+            if (cycle > 0) {
+                advance(copy, node, cycle);
+            }
+            scaledNodes.add(getNodeId(node), copy);
+        }
+        response.add("nodes", scaledNodes);
+
+        return gson.toJson(response);
+    }
+
+    /**
+     * Cluster stats of the template with the node count of a scaled cluster
+     */
+    public static String scaleClusterStats(String template, int nodeCount) {
+        JsonObject response = new JsonParser().parse(template).getAsJsonObject();
+        JsonObject count = response.getAsJsonObject("nodes").getAsJsonObject("count");
+        if (count.has("total")) {
+            count.addProperty("total", nodeCount);
+        }
+        return gson.toJson(response);
+    }
+
+    /**
+     * Nodes stats with only the top level objects in groups, as returned for /_nodes/stats/jvm,os
+     */
+    public static String selectGroups(String nodesStats, Collection<String> groups) {
+        JsonObject response = new JsonParser().parse(nodesStats).getAsJsonObject();
+        for (Map.Entry<String, JsonElement> node : response.getAsJsonObject("nodes").entrySet()) {
+            Iterator<Map.Entry<String, JsonElement>> fields = node.getValue().getAsJsonObject().entrySet().iterator();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonElement> field = fields.next();
+                if (field.getValue().isJsonObject() && !groups.contains(field.getKey())) {
+                    fields.remove();
+                }
+            }
+        }
+        return gson.toJson(response);
+    }
+
+    private static void advance(JsonObject object, int node, int cycle) {
+        for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            String key = entry.getKey();
+            JsonElement value = entry.getValue();
+            if (value.isJsonObject()) {
+                advance(value.getAsJsonObject(), node, cycle);
+            } else if (isNumber(value)) {
+                if ("timestamp".equals(key)) {
+                    entry.setValue(new JsonPrimitive(value.getAsLong() + cycle * CYCLE_MILLIS));
+                } else if (COUNTER.matcher(key).matches()) {
+                    long increment = (1 + node % 5) * (10 + (key.hashCode() & 0xff));
+                    entry.setValue(new JsonPrimitive(value.getAsLong() + cycle * increment));
+                }
+            }
+        }
+    }
+
+    private static boolean isNumber(JsonElement element) {
+        return element.isJsonPrimitive() && element.getAsJsonPrimitive().isNumber();
+    }
+
+    public static String getNodeId(int node) {
+        return String.format("node%06dAAAAAAAAAAAAAA", node);
+    }
+
+    public static String getNodeName(int node) {
+        return "es-node-" + node;
+    }
+}
@@ -0,0 +1,58 @@
+package me.snov.newrelic.elasticsearch.fixtures;
+
+import me.snov.newrelic.elasticsearch.parsers.NodesStatsParser;
+import me.snov.newrelic.elasticsearch.responses.NodesStats;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FixtureGeneratorTest {
+
+    @Test
+    public void testScaleNodesStats() throws Exception {
+        String template = FixtureGenerator.readResource("/resources/nodes_stats_1.3.4.json");
+        String scaled = FixtureGenerator.scaleNodesStats(template, 100);
+
+        NodesStats nodesStats = new NodesStatsParser().parse(new ByteArrayInputStream(scaled.getBytes("UTF-8")));
+        assertEquals(100, nodesStats.nodes.size());
+        assertEquals("es-node-42", nodesStats.nodes.get(FixtureGenerator.getNodeId(42)).name);
+        // Copies keep the values of their template node
+        assertEquals(200L, nodesStats.nodes.get(FixtureGenerator.getNodeId(0))
+            .jvm.gc.collectors.young.collection_time_in_millis.longValue());
+    }
+
+    @Test
+    public void testCountersGrowWithCycles() throws Exception {
+        String template = FixtureGenerator.readResource("/resources/nodes_stats_1.3.4.json");
+        NodesStatsParser parser = new NodesStatsParser();
+        NodesStats first = parser.parse(new ByteArrayInputStream(
+            FixtureGenerator.scaleNodesStats(template, 10, 1).getBytes("UTF-8")));
+        NodesStats second = parser.parse(new ByteArrayInputStream(
+            FixtureGenerator.scaleNodesStats(template, 10, 2).getBytes("UTF-8")));
+
+        String nodeId = FixtureGenerator.getNodeId(7);
+        assertTrue(second.nodes.get(nodeId).indices.search.query_total.longValue()
+            > first.nodes.get(nodeId).indices.search.query_total.longValue());
+        // Gauges stay the same
+        assertEquals(first.nodes.get(nodeId).jvm.mem.heap_used_in_bytes, second.nodes.get(nodeId).jvm.mem.heap_used_in_bytes);
+    }
+
+    @Test
+    public void testSelectGroups() throws Exception {
+        String template = FixtureGenerator.readResource("/resources/nodes_stats_1.3.4.json");
+        String selected = FixtureGenerator.selectGroups(FixtureGenerator.scaleNodesStats(template, 5),
+            Collections.singleton("jvm"));
+
+        NodesStats nodesStats = new NodesStatsParser().parse(new ByteArrayInputStream(selected.getBytes("UTF-8")));
+        NodesStats.NodeStats nodeStats = nodesStats.nodes.get(FixtureGenerator.getNodeId(3));
+        assertEquals("es-node-3", nodeStats.name);
+        assertNotNull(nodeStats.jvm.mem.heap_used_in_bytes);
+        assertNull(nodeStats.indices);
+    }
+}
@@ -0,0 +1,137 @@
+package me.snov.newrelic.elasticsearch.fixtures;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for an elasticsearch cluster of any size, serves /_cluster/stats and /_nodes/stats (with metric groups)
+ * generated from the fixtures. filter_path is ignored. Every /_nodes/stats request is the next cycle, so counters grow between requests.
+ *
+ * Can be run on its own to point an agent at it:
+ * java -cp ... me.snov.newrelic.elasticsearch.fixtures.StandInServer [port] [nodes] [latency millis] [version]
+ */
+public class StandInServer {
+
+    public static final String DEFAULT_VERSION = "1.3.4";
+
+    private final String nodesStatsTemplate;
+    private final String clusterStats;
+    private final int nodeCount;
+    private final AtomicInteger cycle = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long latency;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public StandInServer(int nodeCount) throws IOException {
+        this(DEFAULT_VERSION, nodeCount);
+    }
+
+    public StandInServer(String version, int nodeCount) throws IOException {
+        this.nodeCount = nodeCount;
+        this.nodesStatsTemplate = FixtureGenerator.readResource("/resources/nodes_stats_" + version + ".json");
+        this.clusterStats = FixtureGenerator.scaleClusterStats(
+            FixtureGenerator.readResource("/resources/cluster_stats_" + version + ".json"), nodeCount);
+    }
+
+    /**
+     * @param latency Milliseconds to wait before every response
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    public int start() throws IOException {
+        return start(0);
+    }
+
+    /**
+     * @param port Port to listen on, 0 for any free port
+     * @return Port the server listens on
+     */
+    public int start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/_cluster/stats", new Handler() {
+            @Override
+            String getBody(String path) {
+                return clusterStats;
+            }
+        });
+        server.createContext("/_nodes/stats", new Handler() {
+            @Override
+            String getBody(String path) {
+                String nodesStats = FixtureGenerator.scaleNodesStats(nodesStatsTemplate, nodeCount,
+                    cycle.getAndIncrement());
+                // Metric groups, e.g. /_nodes/stats/jvm,thread_pool
+                String groups = path.substring("/_nodes/stats".length()).replaceFirst("^/", "");
+                return groups.isEmpty()
+                    ? nodesStats
+                    : FixtureGenerator.selectGroups(nodesStats, Arrays.asList(groups.split(",")));
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    private abstract class Handler implements HttpHandler {
+
+        abstract String getBody(String path);
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            try {
+                if (latency > 0) {
+                    Thread.sleep(latency);
+                }
+                byte[] body = getBody(exchange.getRequestURI().getPath()).getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream stream = exchange.getResponseBody();
+                stream.write(body);
+                stream.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9200;
+        int nodes = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        long latency = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        String version = args.length > 3 ? args[3] : DEFAULT_VERSION;
+
+        StandInServer server = new StandInServer(version, nodes);
+        server.setLatency(latency);
+        server.start(port);
+        System.out.println(String.format("Elasticsearch %s stand-in with %d nodes listening on 127.0.0.1:%d",
+            version, nodes, port));
+    }
+}
@@ -0,0 +1,73 @@
+package me.snov.newrelic.elasticsearch.fixtures;
+
+import me.snov.newrelic.elasticsearch.IntegrationTest;
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
+import me.snov.newrelic.elasticsearch.parsers.ClusterStatsParser;
+import me.snov.newrelic.elasticsearch.parsers.NodesStatsParser;
+import me.snov.newrelic.elasticsearch.reporters.ClusterStatsReporter;
+import me.snov.newrelic.elasticsearch.reporters.MetricBuffer;
+import me.snov.newrelic.elasticsearch.reporters.NodesStatsReporter;
+import me.snov.newrelic.elasticsearch.responses.NodesStatsTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StandInServerTest {
+
+    // Overridden by the integrationTest task, e.g. gradle integrationTest -PstandInNodes=1000
+    private static final int NODES = Integer.getInteger("standInNodes", 500);
+    private static final long LATENCY = Long.getLong("standInLatency", 0L);
+
+    private StandInServer server;
+    private HttpConnectionPool connectionPool;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StandInServer(NODES);
+        server.setLatency(LATENCY);
+        server.start();
+        connectionPool = new HttpConnectionPool();
+    }
+
+    @After
+    public void tearDown() {
+        connectionPool.close();
+        server.stop();
+    }
+
+    @Test
+    @Category(IntegrationTest.class)
+    public void testLargeCluster() throws Exception {
+        ClusterStatsParser clusterStatsParser = new ClusterStatsParser("http", "127.0.0.1", server.getPort(), "",
+            null, null, connectionPool);
+        NodesStatsParser nodesStatsParser = new NodesStatsParser("http", "127.0.0.1", server.getPort(), "",
+            null, null, connectionPool);
+        MetricBuffer metrics = new MetricBuffer();
+        ClusterStatsReporter clusterStatsReporter = new ClusterStatsReporter(metrics);
+        NodesStatsReporter nodesStatsReporter = new NodesStatsReporter(metrics);
+
+        int firstCycle = 0;
+        for (int cycle = 0; cycle < 2; cycle++) {
+            if (cycle > 0) {
+                // Counters are reported once at least a second has passed
+                Thread.sleep(1000);
+            }
+            metrics.clear();
+            clusterStatsReporter.reportClusterStats(clusterStatsParser.request());
+            NodesStatsTable table = nodesStatsParser.requestTable();
+            assertEquals(NODES, table.size());
+            nodesStatsReporter.reportNodesStats(table);
+            if (cycle == 0) {
+                firstCycle = metrics.size();
+            }
+        }
+
+        // The second cycle also has the rates of all counters
+        assertTrue(metrics.size() > firstCycle);
+        assertEquals(4, server.getRequests());
+    }
+}
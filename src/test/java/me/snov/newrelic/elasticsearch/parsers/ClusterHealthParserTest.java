@@ -0,0 +1,76 @@
+package me.snov.newrelic.elasticsearch.parsers;
+
+import me.snov.newrelic.elasticsearch.responses.ClusterHealth;
+import me.snov.newrelic.elasticsearch.responses.PendingTasks;
+import me.snov.newrelic.elasticsearch.services.ClusterStatsService;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterHealthParserTest {
+
+    private final ClusterStatsService clusterStatsService = new ClusterStatsService();
+
+    private ClusterHealth parseHealth(String path) throws IOException {
+        return new ClusterHealthParser().parse(getClass().getResourceAsStream(path));
+    }
+
+    @Test
+    public void testV175() throws Exception {
+        ClusterHealth clusterHealth = parseHealth("/resources/cluster_health_1.7.5.json");
+        assertEquals("yellow", clusterHealth.status);
+        assertEquals(1, clusterHealth.relocating_shards.intValue());
+        assertEquals(2, clusterHealth.initializing_shards.intValue());
+        assertEquals(4, clusterHealth.unassigned_shards.intValue());
+        assertEquals(3, clusterHealth.number_of_pending_tasks.intValue());
+        assertNull(clusterHealth.task_max_waiting_in_queue_millis);
+        assertTrue(clusterStatsService.isPendingTasksRequestNeeded(clusterHealth));
+    }
+
+    @Test
+    public void testV511() throws Exception {
+        ClusterHealth clusterHealth = parseHealth("/resources/cluster_health_5.1.1.json");
+        assertEquals("green", clusterHealth.status);
+        assertEquals(1250, clusterHealth.task_max_waiting_in_queue_millis.longValue());
+        assertFalse(clusterStatsService.isPendingTasksRequestNeeded(clusterHealth));
+    }
+
+    @Test
+    public void testNoPendingTasks() throws Exception {
+        ClusterHealth clusterHealth = parseHealth("/resources/cluster_health_1.7.5.json");
+        clusterHealth.number_of_pending_tasks = 0;
+        assertFalse(clusterStatsService.isPendingTasksRequestNeeded(clusterHealth));
+    }
+
+    @Test
+    public void testPendingTasks() throws Exception {
+        PendingTasks pendingTasks = new PendingTasksParser().parse(
+            getClass().getResourceAsStream("/resources/pending_tasks_1.7.5.json"));
+        assertEquals(3, pendingTasks.count);
+        assertEquals(858, pendingTasks.max_time_in_queue_millis);
+    }
+
+    @Test
+    public void testManyPendingTasks() throws Exception {
+        StringBuilder json = new StringBuilder("{\"tasks\":[");
+        for (int i = 0; i < 50000; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"insert_order\":").append(i).append(",\"source\":{\"nested\":[1,2]},")
+                .append("\"time_in_queue_millis\":").append(i % 1000).append('}');
+        }
+        json.append("]}");
+
+        PendingTasks pendingTasks = new PendingTasksParser().parse(
+            new ByteArrayInputStream(json.toString().getBytes("UTF-8")));
+        assertEquals(50000, pendingTasks.count);
+        assertEquals(999, pendingTasks.max_time_in_queue_millis);
+    }
+}
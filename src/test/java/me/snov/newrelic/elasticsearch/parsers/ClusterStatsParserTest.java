@@ -7,6 +7,7 @@ import org.junit.Test;
 import java.io.IOException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class ClusterStatsParserTest {
 
@@ -41,6 +42,7 @@ public class ClusterStatsParserTest {
         assertEquals("green", clusterStats.status);
         assertEquals(2L, clusterStats.nodes.count.total.longValue());
         assertEquals(1, clusterStats.nodes.versions.size());
+        assertEquals(2, clusterStatsParser.getNodeCount());
     }
 
     @Test
@@ -82,4 +84,18 @@ public class ClusterStatsParserTest {
         assertEquals(1L, clusterStats.nodes.count.total.longValue());
         assertEquals(1, clusterStats.nodes.versions.size());
     }
+
+    @Test
+    public void testClusterVersion() throws Exception {
+        clusterStatsParser = new ClusterStatsParser("http", "localhost", 9200, "", null, null, null);
+        assertEquals("/_cluster/stats", clusterStatsParser.getUrl().getFile());
+
+        parseJson("/resources/cluster_stats_1.5.1.json");
+        assertEquals("1.5.1", clusterStatsParser.getClusterVersion());
+        assertEquals("/_cluster/stats", clusterStatsParser.getUrl().getFile());
+
+        parseJson("/resources/cluster_stats_5.1.1.json");
+        assertEquals("5.1.1", clusterStatsParser.getClusterVersion());
+        assertTrue(clusterStatsParser.getUrl().getFile().startsWith("/_cluster/stats?filter_path=cluster_name,status,"));
+    }
 }
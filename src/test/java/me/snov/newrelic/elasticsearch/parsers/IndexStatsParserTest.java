@@ -0,0 +1,108 @@
+package me.snov.newrelic.elasticsearch.parsers;
+
+import me.snov.newrelic.elasticsearch.services.IndexRanking;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexStatsParserTest {
+
+    private static final int INDICES = 1000;
+
+    private IndexStatsParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new IndexStatsParser(3);
+    }
+
+    /**
+     * /_stats response, index i has indexed i * cycle documents, searched (INDICES - i) * cycle times and
+     * grown by i % 7 * cycle bytes
+     */
+    private InputStream indexStats(int cycle) throws Exception {
+        StringBuilder json = new StringBuilder("{\"_shards\":{\"total\":10},\"_all\":{\"total\":{\"indexing\":"
+            + "{\"index_total\":1}}},\"indices\":{");
+        for (int i = 0; i < INDICES; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\"index-").append(i).append("\":{\"primaries\":{\"indexing\":{\"index_total\":0}},")
+                .append("\"total\":{\"indexing\":{\"index_total\":").append(i * cycle)
+                .append(",\"index_time_in_millis\":5},\"search\":{\"query_total\":").append((INDICES - i) * cycle)
+                .append("},\"store\":{\"size_in_bytes\":").append(1000 + i % 7 * cycle).append("}}}");
+        }
+        json.append("}}");
+        return new ByteArrayInputStream(json.toString().getBytes("UTF-8"));
+    }
+
+    private Set<String> names(IndexRanking.Top top) {
+        Set<String> names = new HashSet<String>();
+        for (int i = 0; i < top.size(); i++) {
+            names.add(top.getName(i));
+        }
+        return names;
+    }
+
+    @Test
+    public void testFirstResponseHasNoRates() throws Exception {
+        IndexRanking ranking = parser.parse(indexStats(1), 0);
+
+        assertEquals(INDICES, ranking.getIndexCount());
+        assertEquals(0, ranking.getTop(IndexRanking.INDEXING).size());
+    }
+
+    @Test
+    public void testTopIndices() throws Exception {
+        parser.parse(indexStats(1), 0);
+        IndexRanking ranking = parser.parse(indexStats(3), 2000);
+
+        IndexRanking.Top indexing = ranking.getTop(IndexRanking.INDEXING);
+        assertEquals(3, indexing.size());
+        assertEquals(new HashSet<String>(Arrays.asList("index-999", "index-998", "index-997")),
+            names(indexing));
+        for (int i = 0; i < indexing.size(); i++) {
+            int index = Integer.parseInt(indexing.getName(i).substring("index-".length()));
+            assertEquals(index, indexing.getValue(i, IndexRanking.INDEXING), 0.001);
+            assertEquals(INDICES - index, indexing.getValue(i, IndexRanking.SEARCH), 0.001);
+            assertEquals(1000 + index % 7 * 3, indexing.getValue(i, IndexRanking.STORE_SIZE), 0.001);
+        }
+
+        assertEquals(new HashSet<String>(Arrays.asList("index-0", "index-1", "index-2")),
+            names(ranking.getTop(IndexRanking.SEARCH)));
+
+        IndexRanking.Top storeGrowth = ranking.getTop(IndexRanking.STORE_GROWTH);
+        assertEquals(3, storeGrowth.size());
+        for (int i = 0; i < storeGrowth.size(); i++) {
+            assertEquals(6, storeGrowth.getValue(i, IndexRanking.STORE_GROWTH), 0.001);
+        }
+    }
+
+    @Test
+    public void testIdleIndicesAreNotRanked() throws Exception {
+        parser.parse(indexStats(1), 0);
+        IndexRanking ranking = parser.parse(indexStats(1), 2000);
+
+        assertEquals(0, ranking.getTop(IndexRanking.INDEXING).size());
+        assertEquals(0, ranking.getTop(IndexRanking.STORE_GROWTH).size());
+    }
+
+    @Test
+    public void testUrl() throws Exception {
+        IndexStatsParser parser = new IndexStatsParser("http", "localhost", 9200, "", null, null, null, 3);
+        assertEquals("/_stats", parser.getUrl().getFile());
+
+        parser.setClusterVersion("5.1.1");
+        String file = parser.getUrl().getFile();
+        assertTrue(file, file.startsWith("/_stats/indexing,search,store?filter_path="));
+        assertTrue(file, file.contains("indices.*.total.search.query_total"));
+    }
+}
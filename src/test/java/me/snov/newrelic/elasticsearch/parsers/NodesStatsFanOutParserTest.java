@@ -0,0 +1,161 @@
+package me.snov.newrelic.elasticsearch.parsers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import me.snov.newrelic.elasticsearch.http.HttpConnectionPool;
+import me.snov.newrelic.elasticsearch.responses.NodesInfo;
+import me.snov.newrelic.elasticsearch.responses.NodesStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.*;
+
+public class NodesStatsFanOutParserTest {
+
+    private HttpServer firstNode;
+    private HttpServer secondNode;
+    private HttpConnectionPool connectionPool;
+    private NodesStatsFanOutParser parser;
+
+    @Before
+    public void setUp() throws Exception {
+        firstNode = startNode("first");
+        secondNode = startNode("second");
+        firstNode.createContext("/_nodes/http", new JsonHandler("{\"nodes\":{"
+            + "\"first\":{\"name\":\"first\",\"http\":{\"publish_address\":\"127.0.0.1:" + getPort(firstNode) + "\"}},"
+            + "\"second\":{\"name\":\"second\",\"http\":{\"publish_address\":\"inet[/127.0.0.1:" + getPort(secondNode) + "]\"}},"
+            + "\"client\":{\"name\":\"client\"}}}"));
+
+        connectionPool = new HttpConnectionPool();
+        parser = new NodesStatsFanOutParser("http", "127.0.0.1", getPort(firstNode), "", null, null, connectionPool);
+    }
+
+    @After
+    public void tearDown() {
+        firstNode.stop(0);
+        secondNode.stop(0);
+        connectionPool.close();
+    }
+
+    private static HttpServer startNode(String nodeId) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/_nodes/_local/stats", new JsonHandler(
+            "{\"nodes\":{\"" + nodeId + "\":{\"name\":\"" + nodeId + "\",\"indices\":{\"docs\":{\"count\":42}}}}}"));
+        server.start();
+        return server;
+    }
+
+    private static int getPort(HttpServer server) {
+        return server.getAddress().getPort();
+    }
+
+    private static String getNodeInfo(String nodeId, HttpServer node) {
+        return "\"" + nodeId + "\":{\"name\":\"" + nodeId + "\",\"http\":{\"publish_address\":\"127.0.0.1:"
+            + getPort(node) + "\"}}";
+    }
+
+    @Test
+    public void shouldMergeStatsOfAllNodes() throws Exception {
+        NodesStats nodesStats = parser.request();
+
+        assertEquals(2, nodesStats.nodes.size());
+        assertEquals("first", nodesStats.nodes.get("first").name);
+        assertEquals(42L, nodesStats.nodes.get("second").indices.docs.count);
+    }
+
+    @Test
+    public void shouldDiscoverNodeWhichJoined() throws Exception {
+        firstNode.removeContext("/_nodes/http");
+        firstNode.createContext("/_nodes/http",
+            new JsonHandler("{\"nodes\":{" + getNodeInfo("first", firstNode) + "}}"));
+        parser.setNodeCount(1);
+        assertEquals(1, parser.request().nodes.size());
+
+        firstNode.removeContext("/_nodes/http");
+        firstNode.createContext("/_nodes/http", new JsonHandler("{\"nodes\":{"
+            + getNodeInfo("first", firstNode) + "," + getNodeInfo("second", secondNode) + "}}"));
+        // Not discovered again until the cluster counts the new node
+        assertEquals(1, parser.request().nodes.size());
+        parser.setNodeCount(2);
+
+        NodesStats nodesStats = parser.request();
+
+        assertEquals(2, nodesStats.nodes.size());
+        assertTrue(nodesStats.nodes.containsKey("second"));
+    }
+
+    @Test
+    public void shouldReportNodesWhichResponded() throws Exception {
+        parser.request();
+        secondNode.stop(0);
+
+        NodesStats nodesStats = parser.request();
+
+        assertEquals(1, nodesStats.nodes.size());
+        assertTrue(nodesStats.nodes.containsKey("first"));
+    }
+
+    @Test
+    public void shouldNotWaitForSlowNodes() throws Exception {
+        secondNode.removeContext("/_nodes/_local/stats");
+        secondNode.createContext("/_nodes/_local/stats", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+            }
+        });
+        parser.setTimeout(200);
+
+        long startedAt = System.currentTimeMillis();
+        NodesStats nodesStats = parser.request();
+
+        assertTrue(System.currentTimeMillis() - startedAt < 1000);
+        assertEquals(1, nodesStats.nodes.size());
+        assertTrue(nodesStats.nodes.containsKey("first"));
+    }
+
+    @Test
+    public void testGetPublishAddress() {
+        assertEquals("10.0.0.1:9200", NodesInfoParser.getPublishAddress(nodeInfo("10.0.0.1:9200")));
+        assertEquals("10.0.0.1:9200", NodesInfoParser.getPublishAddress(nodeInfo("inet[/10.0.0.1:9200]")));
+        assertEquals("10.0.0.1:9200", NodesInfoParser.getPublishAddress(nodeInfo("es-node-1/10.0.0.1:9200")));
+        assertEquals("[::1]:9200", NodesInfoParser.getPublishAddress(nodeInfo("[::1]:9200")));
+        assertNull(NodesInfoParser.getPublishAddress(nodeInfo("10.0.0.1")));
+        assertNull(NodesInfoParser.getPublishAddress(new NodesInfo.NodeInfo()));
+    }
+
+    private static NodesInfo.NodeInfo nodeInfo(String publishAddress) {
+        NodesInfo.NodeInfo nodeInfo = new NodesInfo.NodeInfo();
+        nodeInfo.http = new NodesInfo.NodeInfo.Http();
+        nodeInfo.http.publish_address = publishAddress;
+        return nodeInfo;
+    }
+
+    private static class JsonHandler implements HttpHandler {
+
+        private final byte[] body;
+
+        JsonHandler(String body) {
+            this.body = body.getBytes();
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream stream = exchange.getResponseBody();
+            stream.write(body);
+            stream.close();
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package me.snov.newrelic.elasticsearch.parsers;
 
+import me.snov.newrelic.elasticsearch.reporters.NodesStatsReporter;
 import me.snov.newrelic.elasticsearch.responses.NodesStats;
+import me.snov.newrelic.elasticsearch.responses.NodesStatsTable;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.*;
@@ -29,6 +34,117 @@ public class NodesStatsParserTest {
         return nodesStatsParser.parse(stream);
     }
 
+    private NodesStats parseJsonWithoutStreaming(String path) throws IOException {
+        NodesStatsParser parser = new NodesStatsParser();
+        parser.setStreaming(false);
+        return parser.parse(getClass().getResourceAsStream(path));
+    }
+
+    private Object getField(Object object, String path) throws Exception {
+        for (String name : path.split("\\.")) {
+            if (object == null) {
+                return null;
+            }
+            Field field = object.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            object = field.get(object);
+        }
+        if (object instanceof java.util.List) {
+            // os.load_average
+            return ((java.util.List) object).get(0);
+        }
+        return object instanceof Number ? ((Number) object).doubleValue() : object;
+    }
+
+    private void assertStreamingMatchesBinding(String path) throws Exception {
+        NodesStats streamed = parseJson(path);
+        NodesStats bound = parseJsonWithoutStreaming(path);
+
+        assertEquals(bound.nodes.keySet(), streamed.nodes.keySet());
+        for (String nodeId : bound.nodes.keySet()) {
+            for (String field : NodesStatsReporter.REPORTED_FIELDS) {
+                assertEquals(path + " " + field,
+                    getField(bound.nodes.get(nodeId), field), getField(streamed.nodes.get(nodeId), field));
+
+                // Reporter relies on objects being present, e.g. thread_pool.suggest
+                String parent = field;
+                while (parent.contains(".")) {
+                    parent = parent.substring(0, parent.lastIndexOf('.'));
+                    assertEquals(path + " " + parent,
+                        getField(bound.nodes.get(nodeId), parent) == null,
+                        getField(streamed.nodes.get(nodeId), parent) == null);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStreamingMatchesBinding() throws Exception {
+        assertStreamingMatchesBinding("/resources/nodes_stats_0.90.12.json");
+        assertStreamingMatchesBinding("/resources/nodes_stats_1.3.4.json");
+        assertStreamingMatchesBinding("/resources/nodes_stats_1.4.2.json");
+        assertStreamingMatchesBinding("/resources/nodes_stats_1.4.2_incomplete_os_stats.json");
+        assertStreamingMatchesBinding("/resources/nodes_stats_1.5.1.json");
+        assertStreamingMatchesBinding("/resources/nodes_stats_2.1.1.json");
+        assertStreamingMatchesBinding("/resources/nodes_stats_5.1.1.json");
+    }
+
+    private void assertTableMatchesBinding(String path) throws Exception {
+        NodesStats bound = parseJsonWithoutStreaming(path);
+        NodesStatsTable table = new NodesStatsParser().parseTable(getClass().getResourceAsStream(path));
+        FieldSet fields = table.getFields();
+
+        assertEquals(bound.nodes.size(), table.size());
+        int row = 0;
+        for (String nodeId : bound.nodes.keySet()) {
+            assertEquals(nodeId, table.getKey(row));
+            for (int field = 0; field < fields.size(); field++) {
+                Object expected = getField(bound.nodes.get(nodeId), fields.getPath(field));
+                String message = path + " " + fields.getPath(field);
+                if (expected instanceof String) {
+                    assertEquals(message, expected, table.getString(row, field));
+                } else if (expected instanceof Double) {
+                    assertEquals(message, (Double) expected, table.getValue(row, field), 0.0);
+                } else {
+                    assertEquals(message, expected != null, table.has(row, field));
+                }
+            }
+            row++;
+        }
+    }
+
+    @Test
+    public void testTableMatchesBinding() throws Exception {
+        assertTableMatchesBinding("/resources/nodes_stats_0.90.12.json");
+        assertTableMatchesBinding("/resources/nodes_stats_1.3.4.json");
+        assertTableMatchesBinding("/resources/nodes_stats_1.4.2.json");
+        assertTableMatchesBinding("/resources/nodes_stats_1.4.2_incomplete_os_stats.json");
+        assertTableMatchesBinding("/resources/nodes_stats_1.5.1.json");
+        assertTableMatchesBinding("/resources/nodes_stats_2.1.1.json");
+        assertTableMatchesBinding("/resources/nodes_stats_5.1.1.json");
+    }
+
+    @Test
+    public void testTableIsReused() throws Exception {
+        NodesStatsParser parser = new NodesStatsParser();
+        parser.parseTable(getClass().getResourceAsStream("/resources/nodes_stats_1.3.4.json"));
+        NodesStatsTable table = parser.parseTable(getClass().getResourceAsStream("/resources/nodes_stats_2.1.1.json"));
+
+        assertEquals(2, table.size());
+        assertEquals("Everyman", table.getString(0, table.getFields().getField("name")));
+        assertFalse(table.has(0, table.getFields().getField("indices.id_cache")));
+    }
+
+    @Test
+    public void testStreamingSkipsUnreportedFields() throws Exception {
+        NodesStats nodesStats = parseJson("/resources/nodes_stats_2.1.1.json");
+        NodesStats.NodeStats nodeStats = nodesStats.nodes.get("nfxaGjN8QLqmru6bA2RoxQ");
+        assertNotNull(nodeStats.fs.total);
+        assertNull(nodeStats.fs.data);
+        assertNull(nodeStats.breakers);
+        assertNull(nodeStats.thread_pool.generic);
+    }
+
     @Test
     public void testV211() throws Exception {
         NodesStats nodesStats = parseJson("/resources/nodes_stats_2.1.1.json");
@@ -44,4 +160,50 @@ public class NodesStatsParserTest {
         assertEquals(200L, nodesStats.nodes.get("lNFk2gshR5GVDPmRrnDyoA")
             .jvm.gc.collectors.young.collection_time_in_millis.longValue());
     }
+
+    @Test
+    public void testUrlWithoutVersion() throws Exception {
+        NodesStatsParser parser = new NodesStatsParser("http", "localhost", 9200, "", null, null, null);
+        parser.setClusterVersion(null);
+        assertEquals("/_nodes/stats", parser.getUrl().getFile());
+    }
+
+    @Test
+    public void testUrlV090() throws Exception {
+        NodesStatsParser parser = new NodesStatsParser("http", "localhost", 9200, "", null, null, null);
+        parser.setClusterVersion("0.90.12");
+        assertEquals("/_nodes/stats", parser.getUrl().getFile());
+    }
+
+    @Test
+    public void testUrlV134() throws Exception {
+        NodesStatsParser parser = new NodesStatsParser("http", "localhost", 9200, "/es", null, null, null);
+        parser.setClusterVersion("1.3.4");
+        assertEquals("/es/_nodes/stats/indices,os,process,jvm,thread_pool,fs,transport,http", parser.getUrl().getFile());
+    }
+
+    @Test
+    public void testUrlV511() throws Exception {
+        NodesStatsParser parser = new NodesStatsParser("http", "localhost", 9200, "", null, null, null);
+        parser.setClusterVersion("5.1.1");
+        String file = parser.getUrl().getFile();
+        assertTrue(file.startsWith("/_nodes/stats/indices,os,process,jvm,thread_pool,fs,transport,http?filter_path="));
+        assertTrue(file.contains("nodes.*.name,"));
+        assertTrue(file.contains("nodes.*.jvm.mem"));
+        assertTrue(file.contains("nodes.*.thread_pool.search"));
+        assertTrue(file.length() < 4096);
+    }
+
+    @Test
+    public void testUrlMetricGroups() throws Exception {
+        NodesStatsParser parser = new NodesStatsParser("http", "localhost", 9200, "", null, null, null);
+        parser.setClusterVersion("5.1.1");
+        parser.setMetricGroups(new LinkedHashSet<String>(Arrays.asList("jvm", "thread_pool")));
+        String file = parser.getUrl().getFile();
+        assertTrue(file.startsWith("/_nodes/stats/jvm,thread_pool?filter_path=nodes.*.name,"));
+        assertFalse(file.contains("nodes.*.indices"));
+
+        parser.setMetricGroups(null);
+        assertTrue(parser.getUrl().getFile().startsWith("/_nodes/stats/indices,os,process,jvm,thread_pool,fs,transport,http?"));
+    }
 }
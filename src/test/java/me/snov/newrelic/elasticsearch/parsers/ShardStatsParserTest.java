@@ -0,0 +1,100 @@
+package me.snov.newrelic.elasticsearch.parsers;
+
+import me.snov.newrelic.elasticsearch.services.ShardSkew;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardStatsParserTest {
+
+    private ShardStatsParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new ShardStatsParser();
+    }
+
+    private InputStream stream(String text) throws Exception {
+        return new ByteArrayInputStream(text.getBytes("UTF-8"));
+    }
+
+    /**
+     * /_cat/shards table of 100 shards on node-1 and node-2; shard 0 of "hot" has ten times the store of the others
+     * and has indexed 100 * cycle documents, every other shard cycle documents
+     */
+    private InputStream shards(int cycle) throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            String index = i == 0 ? "hot" : "logs";
+            long store = i == 0 ? 10000 : 1000;
+            long indexed = i == 0 ? 100L * cycle : cycle;
+            text.append(index).append("   ").append(i).append(" p STARTED    ").append(store).append(' ')
+                .append(indexed).append(" 10.0.0.").append(i % 2 + 1).append(" node-").append(i % 2 + 1).append('\n');
+        }
+        text.append("logs  100 r UNASSIGNED\n");
+        text.append("logs  101 r INITIALIZING 0 0 10.0.0.1 node-1\n");
+        return stream(text.toString());
+    }
+
+    private Map<String, ShardSkew.NodeShards> byNode(ShardSkew shardSkew) {
+        Map<String, ShardSkew.NodeShards> nodes = new HashMap<String, ShardSkew.NodeShards>();
+        for (ShardSkew.NodeShards node : shardSkew.getNodes()) {
+            nodes.put(node.getNode(), node);
+        }
+        return nodes;
+    }
+
+    @Test
+    public void testStoreSkew() throws Exception {
+        Map<String, ShardSkew.NodeShards> nodes = byNode(parser.parse(shards(1), 0));
+
+        assertEquals(2, nodes.size());
+        ShardSkew.NodeShards node1 = nodes.get("10.0.0.1 node-1");
+        assertEquals(50, node1.getShardCount());
+        assertEquals("hot/0", node1.getLargestShard());
+        assertEquals(10000, node1.getLargestStoreSize(), 0.001);
+        // Median within the accuracy of the histogram
+        assertEquals(10, node1.getStoreSkew(), 0.7);
+        assertEquals(1, nodes.get("10.0.0.2 node-2").getStoreSkew(), 0.001);
+        // Rates need two responses
+        assertTrue(Double.isNaN(node1.getIndexingSkew()));
+    }
+
+    @Test
+    public void testIndexingSkew() throws Exception {
+        parser.parse(shards(1), 0);
+        Map<String, ShardSkew.NodeShards> nodes = byNode(parser.parse(shards(11), 10000));
+
+        ShardSkew.NodeShards node1 = nodes.get("10.0.0.1 node-1");
+        assertEquals("hot/0", node1.getBusiestShard());
+        assertEquals(100, node1.getBusiestIndexingRate(), 0.001);
+        assertEquals(100, node1.getIndexingSkew(), 7);
+        assertEquals(1, nodes.get("10.0.0.2 node-2").getIndexingSkew(), 0.001);
+    }
+
+    @Test
+    public void testRelocatingShard() throws Exception {
+        Map<String, ShardSkew.NodeShards> nodes = byNode(parser.parse(stream(
+            "logs 0 p RELOCATING 500 7 10.0.0.1 node-1 -> 10.0.0.3 abc node-3\n"), 0));
+
+        assertEquals(1, nodes.size());
+        assertEquals(1, nodes.get("10.0.0.1 node-1").getShardCount());
+    }
+
+    @Test
+    public void testNodeLeft() throws Exception {
+        parser.parse(shards(1), 0);
+        Map<String, ShardSkew.NodeShards> nodes = byNode(parser.parse(stream(
+            "logs 0 p STARTED 500 7 10.0.0.2 node-2\n"), 10000));
+
+        assertEquals(1, nodes.size());
+        assertEquals(1, nodes.get("10.0.0.2 node-2").getShardCount());
+    }
+}
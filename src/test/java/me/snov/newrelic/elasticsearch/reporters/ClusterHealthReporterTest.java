@@ -0,0 +1,77 @@
+package me.snov.newrelic.elasticsearch.reporters;
+
+import me.snov.newrelic.elasticsearch.parsers.ClusterHealthParser;
+import me.snov.newrelic.elasticsearch.parsers.PendingTasksParser;
+import me.snov.newrelic.elasticsearch.responses.ClusterHealth;
+import me.snov.newrelic.elasticsearch.services.MetricNameTable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ClusterHealthReporterTest {
+
+    private MetricBuffer metrics;
+    private ClusterHealthReporter reporter;
+
+    @Before
+    public void setUp() {
+        metrics = new MetricBuffer();
+        reporter = new ClusterHealthReporter(metrics);
+    }
+
+    private ClusterHealth parseHealth(String path) throws Exception {
+        return new ClusterHealthParser().parse(getClass().getResourceAsStream(path));
+    }
+
+    private Map<String, Double> reported() {
+        Map<String, Double> reported = new HashMap<String, Double>();
+        MetricNameTable metricNames = metrics.getMetricNames();
+        for (int i = 0; i < metrics.size(); i++) {
+            reported.put(metricNames.getName(metrics.getMetricId(i)), metrics.getValue(i));
+        }
+        return reported;
+    }
+
+    @Test
+    public void testReportWithPendingTasks() throws Exception {
+        reporter.reportClusterHealth(parseHealth("/resources/cluster_health_1.7.5.json"),
+            new PendingTasksParser().parse(getClass().getResourceAsStream("/resources/pending_tasks_1.7.5.json")));
+
+        Map<String, Double> reported = reported();
+        assertEquals(1, reported.get("V1/ClusterHealth/Status/IsYellow"), 0);
+        assertEquals(0, reported.get("V1/ClusterHealth/Status/IsRed"), 0);
+        assertEquals(4, reported.get("V1/ClusterHealth/Shards/Unassigned"), 0);
+        assertEquals(2, reported.get("V1/ClusterHealth/Shards/Initializing"), 0);
+        assertEquals(1, reported.get("V1/ClusterHealth/Shards/Relocating"), 0);
+        assertEquals(3, reported.get("V1/ClusterHealth/PendingTasks/Count"), 0);
+        assertEquals(858, reported.get("V1/ClusterHealth/PendingTasks/MaxTimeInQueue"), 0);
+    }
+
+    @Test
+    public void testReportMaxTimeInQueueOfHealth() throws Exception {
+        reporter.reportClusterHealth(parseHealth("/resources/cluster_health_5.1.1.json"), null);
+
+        assertEquals(1250, reported().get("V1/ClusterHealth/PendingTasks/MaxTimeInQueue"), 0);
+    }
+
+    @Test
+    public void testReportNoPendingTasks() throws Exception {
+        ClusterHealth clusterHealth = parseHealth("/resources/cluster_health_1.7.5.json");
+        clusterHealth.number_of_pending_tasks = 0;
+        reporter.reportClusterHealth(clusterHealth, null);
+
+        assertEquals(0, reported().get("V1/ClusterHealth/PendingTasks/MaxTimeInQueue"), 0);
+    }
+
+    @Test
+    public void testMaxTimeInQueueUnknown() throws Exception {
+        reporter.reportClusterHealth(parseHealth("/resources/cluster_health_1.7.5.json"), null);
+
+        assertNull(reported().get("V1/ClusterHealth/PendingTasks/MaxTimeInQueue"));
+    }
+}
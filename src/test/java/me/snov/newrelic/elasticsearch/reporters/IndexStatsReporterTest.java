@@ -0,0 +1,48 @@
+package me.snov.newrelic.elasticsearch.reporters;
+
+import me.snov.newrelic.elasticsearch.parsers.IndexStatsParser;
+import me.snov.newrelic.elasticsearch.services.MetricNameTable;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class IndexStatsReporterTest {
+
+    private InputStream indexStats(long logsIndexed, long logsSearched) throws Exception {
+        String json = "{\"indices\":{"
+            + "\"logs\":{\"total\":{\"indexing\":{\"index_total\":" + logsIndexed + "},"
+            + "\"search\":{\"query_total\":" + logsSearched + "},\"store\":{\"size_in_bytes\":100}}},"
+            + "\"users\":{\"total\":{\"indexing\":{\"index_total\":0},"
+            + "\"search\":{\"query_total\":0},\"store\":{\"size_in_bytes\":200}}}}}";
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testReportTopIndices() throws Exception {
+        MetricBuffer metrics = new MetricBuffer();
+        IndexStatsParser parser = new IndexStatsParser(5);
+        IndexStatsReporter reporter = new IndexStatsReporter(metrics);
+
+        parser.parse(indexStats(0, 0), 0);
+        reporter.reportIndexStats(parser.parse(indexStats(600, 60), 60000));
+
+        Map<String, Double> reported = new HashMap<String, Double>();
+        MetricNameTable metricNames = metrics.getMetricNames();
+        for (int i = 0; i < metrics.size(); i++) {
+            reported.put(metricNames.getName(metrics.getMetricId(i)), metrics.getValue(i));
+        }
+
+        // Top of indexing and of search, reported once; the idle index is left out
+        assertEquals(5, reported.size());
+        assertEquals(10, reported.get("V1/IndexStats/Indexing/logs"), 0.001);
+        assertEquals(1, reported.get("V1/IndexStats/Search/logs"), 0.001);
+        assertEquals(0, reported.get("V1/IndexStats/StoreGrowth/logs"), 0.001);
+        assertEquals(100, reported.get("V1/IndexStats/StoreSize/logs"), 0.001);
+        assertEquals(2, reported.get("V1/IndexStats/Count"), 0.001);
+    }
+}
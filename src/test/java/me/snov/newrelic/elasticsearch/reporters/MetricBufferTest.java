@@ -0,0 +1,56 @@
+package me.snov.newrelic.elasticsearch.reporters;
+
+import me.snov.newrelic.elasticsearch.services.MetricNameTable;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MetricBufferTest {
+
+    private MetricBuffer metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new MetricBuffer();
+    }
+
+    @Test
+    public void testReportMetric() {
+        metrics.reportMetric("V1/Agent/Errors/NodesStats", "errors", 1);
+        metrics.reportMetric("V1/Agent/Errors/ClusterStats", "errors", null);
+
+        assertEquals(1, metrics.size());
+        MetricNameTable metricNames = metrics.getMetricNames();
+        assertEquals("V1/Agent/Errors/NodesStats", metricNames.getName(metrics.getMetricId(0)));
+        assertEquals("errors", metricNames.getUnits(metrics.getMetricId(0)));
+        assertEquals(1.0, metrics.getValue(0), 0.0);
+    }
+
+    @Test
+    public void testAddAll() {
+        MetricBuffer request = new MetricBuffer(metrics.getMetricNames());
+        request.reportMetric("V1/Agent/Errors/NodesStats", "errors", 0);
+        metrics.reportMetric("V1/Agent/PollInterval", "milliseconds", 60000);
+
+        metrics.addAll(request);
+
+        assertEquals(2, metrics.size());
+        assertEquals("V1/Agent/Errors/NodesStats", metrics.getMetricNames().getName(metrics.getMetricId(1)));
+        assertEquals(1, request.size());
+    }
+
+    @Test
+    public void testAddGrowsColumns() {
+        int metricId = metrics.getMetricNames().getMetricId("metric", "units", false);
+        for (int i = 0; i < 5000; i++) {
+            metrics.add(metricId, i);
+        }
+
+        assertEquals(5000, metrics.size());
+        assertEquals(4999.0, metrics.getValue(4999), 0.0);
+
+        metrics.clear();
+        assertEquals(0, metrics.size());
+    }
+}
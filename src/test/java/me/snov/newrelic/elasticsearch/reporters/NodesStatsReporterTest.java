@@ -7,17 +7,22 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class NodesStatsReporterTest {
 
     private static final String nodesStatsUrl = "http://localhost:9200/_nodes/stats";
 
-    private MockAgent agent;
+    private MetricBuffer metrics;
     private NodesStatsParser parser;
     private NodesStatsReporter reporter;
 
@@ -27,9 +32,9 @@ public class NodesStatsReporterTest {
      */
     @Before
     public void setUp() {
-        agent = new MockAgent();
+        metrics = new MetricBuffer();
         parser = new NodesStatsParser();
-        reporter = new NodesStatsReporter(agent);
+        reporter = new NodesStatsReporter(metrics);
     }
 
     private NodesStats parseJson(InputStream stream) throws IOException {
@@ -44,53 +49,150 @@ public class NodesStatsReporterTest {
         return parseJson(new URL(url).openConnection().getInputStream());
     }
 
+    @Test
+    public void testReportNodesStatsTable() throws Exception {
+        reporter.reportNodesStats(parseJsonFromFile("/resources/nodes_stats_2.1.1.json"));
+        int reportedFromObjects = metrics.size();
+        metrics.clear();
+
+        MetricBuffer tableMetrics = new MetricBuffer();
+        new NodesStatsReporter(tableMetrics).reportNodesStats(
+            parser.parseTable(getClass().getResourceAsStream("/resources/nodes_stats_2.1.1.json")));
+
+        assertEquals(reportedFromObjects, tableMetrics.size());
+    }
+
     @Test
     public void testReportNodesStatsV090() throws Exception {
         NodesStats nodesStats = parseJsonFromFile("/resources/nodes_stats_0.90.12.json");
         reporter.reportNodesStats(nodesStats);
-        assertTrue("Number of reported metrics > 0", agent.getReportedMetricsCount() > 0);
+        assertTrue("Number of reported metrics > 0", metrics.size() > 0);
     }
 
     @Test
     public void testReportNodesStatsV134() throws Exception {
         NodesStats nodesStats = parseJsonFromFile("/resources/nodes_stats_1.3.4.json");
         reporter.reportNodesStats(nodesStats);
-        assertTrue("Number of reported metrics > 0", agent.getReportedMetricsCount() > 0);
+        assertTrue("Number of reported metrics > 0", metrics.size() > 0);
     }
 
     @Test
     public void testReportNodesStatsV142() throws Exception {
         NodesStats nodesStats = parseJsonFromFile("/resources/nodes_stats_1.4.2.json");
         reporter.reportNodesStats(nodesStats);
-        assertTrue("Number of reported metrics > 0", agent.getReportedMetricsCount() > 0);
+        assertTrue("Number of reported metrics > 0", metrics.size() > 0);
     }
 
     @Test
     public void testReportNodesStatsV142LimitedOsStats() throws Exception {
         NodesStats nodesStats = parseJsonFromFile("/resources/nodes_stats_1.4.2_incomplete_os_stats.json");
         reporter.reportNodesStats(nodesStats);
-        assertTrue("Number of reported metrics > 0", agent.getReportedMetricsCount() > 0);
+        assertTrue("Number of reported metrics > 0", metrics.size() > 0);
     }
 
     @Test
     public void testReportNodesStatsV151() throws Exception {
         NodesStats nodesStats = parseJsonFromFile("/resources/nodes_stats_1.5.1.json");
         reporter.reportNodesStats(nodesStats);
-        assertTrue("Number of reported metrics > 0", agent.getReportedMetricsCount() > 0);
+        assertTrue("Number of reported metrics > 0", metrics.size() > 0);
     }
 
     @Test
     public void testReportNodesStatsV211() throws Exception {
         NodesStats nodesStats = parseJsonFromFile("/resources/nodes_stats_2.1.1.json");
         reporter.reportNodesStats(nodesStats);
-        assertTrue("Number of reported metrics > 0", agent.getReportedMetricsCount() > 0);
+        assertTrue("Number of reported metrics > 0", metrics.size() > 0);
     }
 
     @Test
     public void testReportNodesStatsV511() throws Exception {
         NodesStats nodesStats = parseJsonFromFile("/resources/nodes_stats_5.1.1.json");
         reporter.reportNodesStats(nodesStats);
-        assertTrue("Number of reported metrics > 0", agent.getReportedMetricsCount() > 0);
+        assertTrue("Number of reported metrics > 0", metrics.size() > 0);
+    }
+
+    /**
+     * Nodes stats of two nodes with query and index counters and their times in milliseconds
+     */
+    private InputStream searchStats(long queries1, long queryTime1, long queries2, long queryTime2, long indexed)
+        throws Exception {
+        String json = "{\"cluster_name\":\"test\",\"nodes\":{"
+            + "\"a\":{\"name\":\"node-1\",\"indices\":{\"search\":{\"query_total\":" + queries1
+            + ",\"query_time_in_millis\":" + queryTime1 + "},\"indexing\":{\"index_total\":" + indexed
+            + ",\"index_time_in_millis\":" + indexed * 2 + "}}},"
+            + "\"b\":{\"name\":\"node-2\",\"indices\":{\"search\":{\"query_total\":" + queries2
+            + ",\"query_time_in_millis\":" + queryTime2 + "}}}}}";
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    private Map<String, Double> reported() {
+        Map<String, Double> reported = new HashMap<String, Double>();
+        for (int i = 0; i < metrics.size(); i++) {
+            reported.put(metrics.getMetricNames().getName(metrics.getMetricId(i)), metrics.getValue(i));
+        }
+        return reported;
+    }
+
+    @Test
+    public void testReportLatency() throws Exception {
+        reporter.reportNodesStats(parser.parseTable(searchStats(100, 1000, 100, 1000, 10)), 0);
+        metrics.clear();
+        reporter.reportNodesStats(parser.parseTable(searchStats(200, 2000, 400, 13000, 20)), 60000);
+
+        Map<String, Double> reported = reported();
+        assertEquals(10, reported.get("V1/NodeStats/Indices/Search/QueryLatency/node-1"), 0.001);
+        assertEquals(40, reported.get("V1/NodeStats/Indices/Search/QueryLatency/node-2"), 0.001);
+        assertEquals(2, reported.get("V1/NodeStats/Indices/Indexing/IndexLatency/node-1"), 0.001);
+        // Weighted by the number of queries of each node
+        assertEquals(13000.0 / 400, reported.get("V1/Latency/Query"), 0.001);
+        assertEquals(2, reported.get("V1/Latency/Index"), 0.001);
+        assertEquals(40, reported.get("V1/Summary/Nodes/Latency/Query/Max"), 0);
+        assertEquals(10, reported.get("V1/Summary/Nodes/Latency/Query/P50"), 10 * 0.07);
+        // Nothing fetched
+        assertNull(reported.get("V1/Latency/Fetch"));
+    }
+
+    @Test
+    public void testLatencyAfterRestart() throws Exception {
+        reporter.reportNodesStats(parser.parseTable(searchStats(100, 1000, 100, 1000, 10)), 0);
+        metrics.clear();
+        // node-2 restarted, its counters started over
+        reporter.reportNodesStats(parser.parseTable(searchStats(200, 2000, 50, 5000, 20)), 60000);
+
+        Map<String, Double> reported = reported();
+        assertNull(reported.get("V1/NodeStats/Indices/Search/QueryLatency/node-2"));
+        assertEquals(10, reported.get("V1/Latency/Query"), 0.001);
+
+        metrics.clear();
+        reporter.reportNodesStats(parser.parseTable(searchStats(300, 3000, 150, 7000, 30)), 120000);
+        assertEquals(20, reported().get("V1/NodeStats/Indices/Search/QueryLatency/node-2"), 0.001);
+    }
+
+    @Test
+    public void testReportNodeDistributions() throws Exception {
+        // Heap used of node i is i + 1 percent, one node in ten has queued searches
+        StringBuilder json = new StringBuilder("{\"cluster_name\":\"test\",\"nodes\":{");
+        for (int i = 0; i < 100; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\"n").append(i).append("\":{\"name\":\"node-").append(i)
+                .append("\",\"jvm\":{\"mem\":{\"heap_used_percent\":").append(i + 1).append("}},")
+                .append("\"thread_pool\":{\"search\":{\"queue\":").append(i % 10 == 9 ? 50 : 0).append("}}}");
+        }
+        json.append("}}");
+        reporter.reportNodesStats(parser.parseTable(new ByteArrayInputStream(json.toString().getBytes("UTF-8"))));
+
+        Map<String, Double> reported = reported();
+        assertEquals(50, reported.get("V1/Summary/Nodes/Jvm/Mem/HeapUsedPercent/P50"), 50 * 0.07);
+        assertEquals(90, reported.get("V1/Summary/Nodes/Jvm/Mem/HeapUsedPercent/P90"), 90 * 0.07);
+        assertEquals(99, reported.get("V1/Summary/Nodes/Jvm/Mem/HeapUsedPercent/P99"), 99 * 0.07);
+        assertEquals(100, reported.get("V1/Summary/Nodes/Jvm/Mem/HeapUsedPercent/Max"), 0);
+        assertEquals(0, reported.get("V1/Summary/Nodes/ThreadPool/Search/Queue/P50"), 0);
+        assertEquals(0, reported.get("V1/Summary/Nodes/ThreadPool/Search/Queue/P90"), 0);
+        assertEquals(50, reported.get("V1/Summary/Nodes/ThreadPool/Search/Queue/P99"), 50 * 0.07);
+        // Not in the response
+        assertNull(reported.get("V1/Summary/Nodes/Os/Cpu/Usage/P50"));
     }
 
     @Test
@@ -98,6 +200,6 @@ public class NodesStatsReporterTest {
     public void testReportNodesStatsIntegration() throws Exception {
         NodesStats nodesStats = parseJsonFromUrl(nodesStatsUrl);
         reporter.reportNodesStats(nodesStats);
-        assertTrue("Number of reported metrics > 0", agent.getReportedMetricsCount() > 0);
+        assertTrue("Number of reported metrics > 0", metrics.size() > 0);
     }
 }
@@ -0,0 +1,48 @@
+package me.snov.newrelic.elasticsearch.reporters;
+
+import me.snov.newrelic.elasticsearch.parsers.ShardStatsParser;
+import me.snov.newrelic.elasticsearch.services.MetricNameTable;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ShardStatsReporterTest {
+
+    private InputStream shards(long logsIndexed) throws Exception {
+        String text = "logs  0 p STARTED 4000 " + logsIndexed + " node-1\n"
+            + "logs  1 p STARTED 1000 0 node-1\n"
+            + "logs  2 p STARTED 1000 0 node-1\n"
+            + "users 0 p STARTED 1000 0 node-2\n";
+        return new ByteArrayInputStream(text.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testReportShardSkew() throws Exception {
+        MetricBuffer metrics = new MetricBuffer();
+        ShardStatsParser parser = new ShardStatsParser();
+        ShardStatsReporter reporter = new ShardStatsReporter(metrics, 1);
+
+        parser.parse(shards(0), 0);
+        reporter.reportShardStats(parser.parse(shards(600), 60000));
+
+        Map<String, Double> reported = new HashMap<String, Double>();
+        MetricNameTable metricNames = metrics.getMetricNames();
+        for (int i = 0; i < metrics.size(); i++) {
+            reported.put(metricNames.getName(metrics.getMetricId(i)), metrics.getValue(i));
+        }
+
+        // Three per node, hot shards of the most skewed node only
+        assertEquals(8, reported.size());
+        assertEquals(3, reported.get("V1/ShardStats/Shards/node-1"), 0.001);
+        assertEquals(4, reported.get("V1/ShardStats/StoreSkew/node-1"), 0.3);
+        assertEquals(10, reported.get("V1/ShardStats/IndexingSkew/node-1"), 0.001);
+        assertEquals(1, reported.get("V1/ShardStats/StoreSkew/node-2"), 0.001);
+        assertEquals(4000, reported.get("V1/ShardStats/HotShards/StoreSize/logs/0"), 0.001);
+        assertEquals(10, reported.get("V1/ShardStats/HotShards/Indexing/logs/0"), 0.001);
+    }
+}
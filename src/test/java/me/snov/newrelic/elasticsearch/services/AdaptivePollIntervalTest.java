@@ -0,0 +1,60 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptivePollIntervalTest {
+
+    private AdaptivePollInterval pollInterval;
+
+    @Before
+    public void setUp() {
+        pollInterval = new AdaptivePollInterval(10000, 300000);
+    }
+
+    @Test
+    public void testStartsAtRunnerInterval() {
+        assertEquals(AdaptivePollInterval.RUNNER_INTERVAL_MILLIS, pollInterval.getInterval());
+        assertEquals(20000, new AdaptivePollInterval(5000, 20000).getInterval());
+    }
+
+    @Test
+    public void testRedClusterIsPolledAtMinimumInterval() {
+        assertEquals(10000, pollInterval.next(true, false, 0, 100));
+    }
+
+    @Test
+    public void testBusyQueueIsPolledAtMinimumInterval() {
+        assertEquals(10000, pollInterval.next(false, false, AdaptivePollInterval.BUSY_QUEUE_SIZE, 100));
+        // Unknown queue size
+        assertEquals(15000, pollInterval.next(false, false, Double.NaN, 100));
+    }
+
+    @Test
+    public void testYellowClusterHalvesInterval() {
+        assertEquals(30000, pollInterval.next(false, true, 0, 100));
+        assertEquals(15000, pollInterval.next(false, true, 0, 100));
+        assertEquals(10000, pollInterval.next(false, true, 0, 100));
+    }
+
+    @Test
+    public void testQuietClusterBacksOff() {
+        assertEquals(90000, pollInterval.next(false, false, 0, 100));
+        assertEquals(135000, pollInterval.next(false, false, 0, 100));
+        assertEquals(202500, pollInterval.next(false, false, 0, 100));
+        assertEquals(300000, pollInterval.next(false, false, 0, 100));
+        assertEquals(300000, pollInterval.next(false, false, 0, 100));
+    }
+
+    @Test
+    public void testSlowPollsAreNotOverlapping() {
+        assertEquals(50000, pollInterval.next(true, false, 0, 25000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBounds() {
+        new AdaptivePollInterval(60000, 10000);
+    }
+}
@@ -34,4 +34,20 @@ public class ClusterStatsServiceTest {
         ClusterStats clusterStats = parseJson("/resources/cluster_stats_version_mismatch.json");
         assertEquals(2, clusterStatsService.getNumberOfVersionsInCluster(clusterStats));
     }
+
+    @Test
+    public void testGetMinimumVersion() throws Exception {
+        ClusterStats clusterStats = parseJson("/resources/cluster_stats_version_mismatch.json");
+        assertEquals("1.3.5", clusterStatsService.getMinimumVersion(clusterStats));
+    }
+
+    @Test
+    public void testCompareVersions() throws Exception {
+        assertTrue(clusterStatsService.compareVersions("1.10.0", "1.9.2") > 0);
+        assertTrue(clusterStatsService.compareVersions("0.90.12", "1.0") < 0);
+        assertEquals(0, clusterStatsService.compareVersions("5.0.0-alpha1", "5.0"));
+        assertTrue(clusterStatsService.isVersionAtLeast("1.6.0", 1, 6));
+        assertFalse(clusterStatsService.isVersionAtLeast("1.5.2", 1, 6));
+        assertFalse(clusterStatsService.isVersionAtLeast(null, 1, 0));
+    }
 }
@@ -0,0 +1,83 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import me.snov.newrelic.elasticsearch.parsers.NodesStatsParser;
+import me.snov.newrelic.elasticsearch.reporters.MetricBuffer;
+import me.snov.newrelic.elasticsearch.reporters.NodesStatsReporter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CounterSnapshotFileTest {
+
+    private File file;
+    private CounterSnapshotFile snapshot;
+    private NodesStatsReporter reporter;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("counters", ".counters");
+        file.delete();
+        snapshot = new CounterSnapshotFile(file);
+        reporter = new NodesStatsReporter(new MetricBuffer());
+        reporter.reportNodesStats(new NodesStatsParser().parse(
+            getClass().getResourceAsStream("/resources/nodes_stats_1.3.4.json")));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        snapshot.close();
+        file.delete();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        snapshot.save(reporter, System.currentTimeMillis());
+        snapshot.close();
+
+        NodesStatsReporter restarted = new NodesStatsReporter(new MetricBuffer());
+        int restored = new CounterSnapshotFile(file).load(restarted, 0);
+
+        assertTrue("Number of restored counters > 0", restored > 0);
+    }
+
+    @Test
+    public void testSnapshotIsOverwritten() throws Exception {
+        snapshot.save(reporter, System.currentTimeMillis());
+        long length = file.length();
+        snapshot.save(reporter, System.currentTimeMillis());
+
+        assertEquals(length, file.length());
+        assertTrue(new CounterSnapshotFile(file).load(new NodesStatsReporter(new MetricBuffer()), 0) > 0);
+    }
+
+    @Test
+    public void testOldSnapshotIsDiscarded() throws Exception {
+        snapshot.save(reporter, 1000);
+
+        assertEquals(0, new CounterSnapshotFile(file).load(new NodesStatsReporter(new MetricBuffer()), 2000));
+    }
+
+    @Test
+    public void testMissingSnapshot() throws Exception {
+        assertEquals(0, snapshot.load(reporter, 0));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptSnapshot() throws Exception {
+        snapshot.save(reporter, System.currentTimeMillis());
+        snapshot.close();
+        RandomAccessFile corrupt = new RandomAccessFile(file, "rw");
+        corrupt.seek(100);
+        corrupt.writeLong(-1);
+        corrupt.close();
+
+        new CounterSnapshotFile(file).load(new NodesStatsReporter(new MetricBuffer()), 0);
+    }
+}
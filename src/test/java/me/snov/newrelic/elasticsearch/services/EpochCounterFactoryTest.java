@@ -0,0 +1,200 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.junit.Assert.*;
+
+public class EpochCounterFactoryTest {
+
+    private EpochCounterFactory factory;
+
+    @Before
+    public void setUp() {
+        factory = new EpochCounterFactory();
+    }
+
+    @Test
+    public void testProcess() {
+        int metricId = factory.getMetricId("V1/NodeStats/Indices/Docs/Count");
+        int nodeId = factory.getNodeId("node-1");
+
+        assertTrue(Double.isNaN(factory.process(metricId, nodeId, 100, 0)));
+        assertEquals(5.0, factory.process(metricId, nodeId, 400, 60000), 0.0001);
+        // Less than a second
+        assertTrue(Double.isNaN(factory.process(metricId, nodeId, 500, 60500)));
+        // Counter reset
+        assertTrue(Double.isNaN(factory.process(metricId, nodeId, 10, 120000)));
+        assertTrue(Double.isNaN(factory.process(metricId, nodeId, null, 180000)));
+        assertTrue(Double.isNaN(factory.process(metricId, nodeId, 10, 240000)));
+    }
+
+    @Test
+    public void testProcessChangingInterval() {
+        int metricId = factory.getMetricId("V1/NodeStats/Indices/Search/QueryTotal");
+        int nodeId = factory.getNodeId("node-1");
+
+        factory.process(metricId, nodeId, 0, 0);
+        assertEquals(10.0, factory.process(metricId, nodeId, 600, 60000), 0.0001);
+        assertEquals(10.0, factory.process(metricId, nodeId, 700, 70000), 0.0001);
+        // Not truncated to whole seconds
+        assertEquals(10.0, factory.process(metricId, nodeId, 715, 71500), 0.0001);
+        assertEquals(10.0, factory.process(metricId, nodeId, 3715, 371500), 0.0001);
+    }
+
+    @Test
+    public void testCountersArePerMetricAndNode() {
+        int firstMetric = factory.getMetricId("first");
+        int secondMetric = factory.getMetricId("second");
+        int firstNode = factory.getNodeId("node-1");
+        int secondNode = factory.getNodeId("node-2");
+
+        assertEquals(firstMetric, factory.getMetricId("first"));
+        assertEquals(firstNode, factory.getNodeId("node-1"));
+
+        factory.process(firstMetric, firstNode, 0, 0);
+        factory.process(firstMetric, secondNode, 0, 0);
+        factory.process(secondMetric, EpochCounterFactory.NO_NODE, 0, 0);
+
+        assertEquals(3, factory.size());
+        assertEquals(1.0, factory.process(firstMetric, firstNode, 60, 60000), 0.0001);
+        assertEquals(2.0, factory.process(firstMetric, secondNode, 120, 60000), 0.0001);
+        assertEquals(3.0, factory.process(secondMetric, EpochCounterFactory.NO_NODE, 180, 60000), 0.0001);
+    }
+
+    @Test
+    public void testResize() {
+        int metricId = factory.getMetricId("metric");
+        for (int node = 1; node <= 5000; node++) {
+            factory.process(metricId, node, node, 0);
+        }
+        assertEquals(5000, factory.size());
+        for (int node = 1; node <= 5000; node++) {
+            assertEquals(node, factory.process(metricId, node, node * 2, 1000), 0.0001);
+        }
+    }
+
+    @Test
+    public void testEvictIdleCounters() {
+        factory.setLimits(2, EpochCounterFactory.DEFAULT_MAX_COUNTERS);
+        int metricId = factory.getMetricId("metric");
+
+        factory.startCycle();
+        int goneNode = factory.getNodeId("gone");
+        factory.process(metricId, goneNode, 0, 0);
+        for (int node = 1; node <= 100; node++) {
+            factory.process(metricId, factory.getNodeId("node-" + node), 0, 0);
+        }
+        assertEquals(101, factory.size());
+
+        for (int cycle = 1; cycle <= 3; cycle++) {
+            factory.startCycle();
+            for (int node = 1; node <= 100; node++) {
+                factory.process(metricId, factory.getNodeId("node-" + node), cycle * 60, cycle * 60000);
+            }
+        }
+
+        assertEquals(100, factory.size());
+        // Remaining counters are still reachable after entries were moved by the eviction
+        for (int node = 1; node <= 100; node++) {
+            assertEquals(1.0, factory.process(metricId, factory.getNodeId("node-" + node), 240, 240000), 0.0001);
+        }
+        // Node which is back starts over with a new id
+        assertNotEquals(goneNode, factory.getNodeId("gone"));
+    }
+
+    @Test
+    public void testMaxCounters() {
+        factory.setLimits(EpochCounterFactory.DEFAULT_MAX_IDLE_CYCLES, 10);
+        int metricId = factory.getMetricId("metric");
+
+        factory.startCycle();
+        factory.process(metricId, EpochCounterFactory.NO_NODE, 0, 0);
+        factory.startCycle();
+        for (int node = 1; node <= 20; node++) {
+            factory.process(metricId, node, 0, 0);
+        }
+
+        assertEquals(10, factory.size());
+        // Least recently touched counter was evicted first
+        assertTrue(Double.isNaN(factory.process(metricId, EpochCounterFactory.NO_NODE, 60, 60000)));
+        assertEquals(1.0, factory.process(metricId, 20, 60, 60000), 0.0001);
+    }
+
+    @Test
+    public void testMaxCountersEvictedInBatches() {
+        // A batch of 10 counters
+        factory.setLimits(EpochCounterFactory.DEFAULT_MAX_IDLE_CYCLES, 160);
+        int metricId = factory.getMetricId("metric");
+
+        factory.startCycle();
+        for (int node = 1; node <= 160; node++) {
+            factory.process(metricId, node, 0, 0);
+        }
+        factory.startCycle();
+        for (int node = 101; node <= 160; node++) {
+            factory.process(metricId, node, 60, 60000);
+        }
+
+        factory.process(metricId, 161, 0, 60000);
+        assertEquals(151, factory.size());
+        // No eviction until the limit is reached again
+        for (int node = 162; node <= 170; node++) {
+            factory.process(metricId, node, 0, 60000);
+        }
+        assertEquals(160, factory.size());
+
+        // Counters touched in the last cycle were kept
+        for (int node = 101; node <= 160; node++) {
+            assertEquals(1.0, factory.process(metricId, node, 120, 120000), 0.0001);
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        MetricNameTable metricNames = new MetricNameTable();
+        int metricId = metricNames.getMetricId("V1/NodeStats/Indices/Search/QueryTotal", "requests/second", true);
+        int totalId = metricNames.getMetricId("V1/QueriesPerSecond/Search", "requests/second", true);
+        factory.process(metricId, factory.getNodeId("node-1"), 100, 60000);
+        factory.process(metricId, factory.getNodeId("node-2"), 200, 60000);
+        factory.process(totalId, EpochCounterFactory.NO_NODE, 300, 60000);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        factory.save(new DataOutputStream(bytes), metricNames);
+
+        // Ids differ after a restart
+        MetricNameTable restartedNames = new MetricNameTable();
+        restartedNames.getMetricId("V1/Other", "units", false);
+        EpochCounterFactory restarted = new EpochCounterFactory();
+        restarted.getNodeId("node-0");
+        assertEquals(3, restarted.load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+            restartedNames, 0));
+
+        int restartedId = restartedNames.getMetricId("V1/NodeStats/Indices/Search/QueryTotal", "requests/second", true);
+        assertEquals(1.0, restarted.process(restartedId, restarted.getNodeId("node-1"), 160, 120000), 0.0001);
+        assertEquals(2.0, restarted.process(restartedId, restarted.getNodeId("node-2"), 320, 120000), 0.0001);
+        int restartedTotalId = restartedNames.getMetricId("V1/QueriesPerSecond/Search", "requests/second", true);
+        assertEquals(3.0, restarted.process(restartedTotalId, EpochCounterFactory.NO_NODE, 480, 120000), 0.0001);
+    }
+
+    @Test
+    public void testLoadDiscardsOldCounters() throws Exception {
+        MetricNameTable metricNames = new MetricNameTable();
+        int metricId = metricNames.getMetricId("V1/NodeStats/Indices/Search/QueryTotal", "requests/second", true);
+        factory.process(metricId, factory.getNodeId("node-1"), 100, 60000);
+        factory.process(metricId, factory.getNodeId("node-2"), 200, 120000);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        factory.save(new DataOutputStream(bytes), metricNames);
+
+        EpochCounterFactory restarted = new EpochCounterFactory();
+        assertEquals(1, restarted.load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+            new MetricNameTable(), 100000));
+        assertEquals(1, restarted.size());
+    }
+}
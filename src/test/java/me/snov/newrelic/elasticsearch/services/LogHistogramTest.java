@@ -0,0 +1,56 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogHistogramTest {
+
+    @Test
+    public void testQuantiles() {
+        LogHistogram histogram = new LogHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.add(i);
+        }
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(1, histogram.getMin(), 0);
+        assertEquals(10000, histogram.getMax(), 0);
+        assertEquals(5000, histogram.getQuantile(0.5), 5000 * 0.07);
+        assertEquals(9900, histogram.getQuantile(0.99), 9900 * 0.07);
+        assertEquals(10000, histogram.getQuantile(1), 0);
+    }
+
+    @Test
+    public void testIgnoresUnknownValues() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.add(Double.NaN);
+        histogram.add(-1);
+
+        assertEquals(0, histogram.getCount());
+        assertTrue(Double.isNaN(histogram.getQuantile(0.5)));
+    }
+
+    @Test
+    public void testSmallAndHugeValues() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.add(0);
+        histogram.add(0.25);
+        histogram.add(1e30);
+
+        assertEquals(0, histogram.getQuantile(0.3), 0);
+        assertEquals(0.25, histogram.getQuantile(0.6), 0.25 * 0.07);
+        assertEquals(1e30, histogram.getQuantile(1), 0);
+    }
+
+    @Test
+    public void testClear() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.add(42);
+        histogram.clear();
+
+        assertEquals(0, histogram.getCount());
+        assertTrue(Double.isNaN(histogram.getMax()));
+    }
+}
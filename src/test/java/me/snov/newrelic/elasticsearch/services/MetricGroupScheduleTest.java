@@ -0,0 +1,72 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricGroupScheduleTest {
+
+    private MetricGroupSchedule schedule;
+
+    @Before
+    public void setUp() {
+        schedule = new MetricGroupSchedule(new String[]{
+            "name", "indices.docs.count", "jvm.mem.heap_used_percent", "thread_pool.search.queue"});
+    }
+
+    private static Set<String> groups(String... groups) {
+        return new LinkedHashSet<String>(Arrays.asList(groups));
+    }
+
+    @Test
+    public void testGroups() {
+        assertEquals(groups(MetricGroupSchedule.CLUSTER, "indices", "jvm", "thread_pool"), schedule.getGroups());
+    }
+
+    @Test
+    public void testEveryGroupIsDueWithoutIntervals() {
+        schedule.setPolled(schedule.getGroups(), 0);
+
+        assertEquals(schedule.getGroups(), schedule.getDueGroups(1000));
+        assertEquals(0, schedule.getMaxInterval());
+    }
+
+    @Test
+    public void testGroupsAreDueAfterTheirInterval() {
+        schedule.setInterval(MetricGroupSchedule.CLUSTER, 300000);
+        schedule.setInterval("indices", 120000);
+        schedule.setInterval("thread_pool", 10000);
+
+        // Never polled
+        assertEquals(schedule.getGroups(), schedule.getDueGroups(0));
+        schedule.setPolled(schedule.getDueGroups(0), 0);
+
+        assertEquals(groups("jvm", "thread_pool"), schedule.getDueGroups(60000));
+        schedule.setPolled(groups("jvm", "thread_pool"), 60000);
+        // A bit early
+        assertEquals(groups("indices", "jvm", "thread_pool"), schedule.getDueGroups(119000));
+        assertEquals(groups(MetricGroupSchedule.CLUSTER, "indices", "jvm", "thread_pool"),
+            schedule.getDueGroups(300000));
+        assertEquals(300000, schedule.getMaxInterval());
+    }
+
+    @Test
+    public void testFailedPollIsRetried() {
+        schedule.setInterval("indices", 120000);
+        schedule.setPolled(Collections.singleton("jvm"), 0);
+
+        assertTrue(schedule.getDueGroups(10000).contains("indices"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownGroup() {
+        schedule.setInterval("translog", 60000);
+    }
+}
@@ -0,0 +1,99 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricNameTableTest {
+
+    private MetricNameTable table;
+
+    @Before
+    public void setUp() {
+        table = new MetricNameTable();
+    }
+
+    @Test
+    public void testGetMetricId() {
+        int id = table.getMetricId("V1/NodeStats/Http/CurrentOpen", "connections", false);
+
+        assertEquals(id, table.getMetricId("V1/NodeStats/Http/CurrentOpen", "connections", false));
+        assertEquals("V1/NodeStats/Http/CurrentOpen", table.getName(id));
+        assertEquals("connections", table.getUnits(id));
+        assertFalse(table.isProcessed(id));
+        assertTrue(table.isProcessed(table.getMetricId("V1/QueriesPerSecond/Search", "requests/second", true)));
+    }
+
+    @Test
+    public void testGetNodeMetricName() {
+        int id = table.getMetricId("V1/NodeStats/Http/CurrentOpen", "connections", false);
+
+        String name = table.getNodeMetricName(id, "node-1");
+        assertEquals("V1/NodeStats/Http/CurrentOpen/node-1", name);
+        assertSame(name, table.getNodeMetricName(id, "node-1"));
+        assertEquals("V1/NodeStats/Http/CurrentOpen/node-2", table.getNodeMetricName(id, "node-2"));
+        assertEquals(3, table.size());
+
+        int nodeId = table.getNodeMetricId(id, "node-1");
+        assertEquals(id, table.getBaseId(nodeId));
+        assertEquals("node-1", table.getNodeName(nodeId));
+        assertEquals(id, table.getBaseId(id));
+        assertNull(table.getNodeName(id));
+    }
+
+    @Test
+    public void testEvictIdleNodes() {
+        table.setMaxIdleCycles(1);
+        int id = table.getMetricId("metric", "units", false);
+
+        table.startCycle();
+        table.getNodeMetricName(id, "gone");
+        table.getNodeMetricName(id, "node");
+        table.startCycle();
+        table.getNodeMetricName(id, "node");
+        assertEquals(3, table.size());
+
+        table.startCycle();
+        table.getNodeMetricName(id, "node");
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void testIndicesHaveTheirOwnCycles() {
+        table.setMaxIdleCycles(1);
+        int id = table.getMetricId("metric", "units", false);
+
+        int indexMetricId = table.getIndexMetricId(id, "logs");
+        assertEquals("metric/logs", table.getName(indexMetricId));
+        assertEquals(MetricNameTable.INDEX, table.getDimension(indexMetricId));
+        assertEquals("logs", table.getDimensionName(indexMetricId));
+        assertNull(table.getNodeName(indexMetricId));
+
+        // Cycles of nodes don't evict indices
+        table.startCycle();
+        table.startCycle();
+        table.startCycle();
+        assertEquals("metric/logs", table.getName(indexMetricId));
+
+        table.startCycle(MetricNameTable.INDEX);
+        table.startCycle(MetricNameTable.INDEX);
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testReuseIdsOfEvictedNodes() {
+        table.setMaxIdleCycles(0);
+        int id = table.getMetricId("metric", "units", true);
+
+        table.startCycle();
+        int nodeMetricId = table.getNodeMetricId(id, "gone");
+        table.startCycle();
+
+        int reusedId = table.getNodeMetricId(id, "node");
+        assertEquals(nodeMetricId, reusedId);
+        assertEquals("metric/node", table.getName(reusedId));
+        assertEquals("units", table.getUnits(reusedId));
+        assertTrue(table.isProcessed(reusedId));
+    }
+}
@@ -0,0 +1,43 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import me.snov.newrelic.elasticsearch.parsers.FieldSet;
+import me.snov.newrelic.elasticsearch.reporters.NodesStatsReporter;
+import me.snov.newrelic.elasticsearch.responses.NodesStatsTable;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NodesStatsServiceTest {
+
+    private NodesStatsService service;
+    private NodesStatsTable table;
+
+    @Before
+    public void setUp() {
+        service = new NodesStatsService();
+        table = new NodesStatsTable(new FieldSet(NodesStatsReporter.REPORTED_FIELDS));
+    }
+
+    @Test
+    public void testGetMaxQueueSize() {
+        FieldSet fields = table.getFields();
+        int first = table.addRow("node-1");
+        table.setValue(first, fields.getField("thread_pool.search.queue"), 3);
+        table.setValue(first, fields.getField("thread_pool.bulk.queue"), 42);
+        // Not a queue
+        table.setValue(first, fields.getField("thread_pool.bulk.rejected"), 1000);
+        int second = table.addRow("node-2");
+        table.setValue(second, fields.getField("thread_pool.index.queue"), 7);
+
+        assertEquals(42, service.getMaxQueueSize(table), 0.0001);
+    }
+
+    @Test
+    public void testGetMaxQueueSizeUnknown() {
+        table.addRow("node-1");
+
+        assertTrue(Double.isNaN(service.getMaxQueueSize(table)));
+    }
+}
@@ -0,0 +1,129 @@
+package me.snov.newrelic.elasticsearch.services;
+
+import me.snov.newrelic.elasticsearch.reporters.MetricBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PrometheusExporterTest {
+
+    private MetricBuffer metrics;
+    private PrometheusExporter exporter;
+    private PrometheusEndpoint endpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        metrics = new MetricBuffer();
+        exporter = new PrometheusExporter("my \"cluster\"");
+        endpoint = new PrometheusEndpoint(0);
+        endpoint.register(exporter);
+    }
+
+    @After
+    public void tearDown() {
+        endpoint.close();
+    }
+
+    private String text(PrometheusExporter.Snapshot snapshot) throws Exception {
+        return new String(snapshot.getText(), "UTF-8");
+    }
+
+    @Test
+    public void testRenderMetrics() throws Exception {
+        MetricNameTable metricNames = metrics.getMetricNames();
+        int id = metricNames.getMetricId("V1/NodeStats/Http/CurrentOpen", "connections", false);
+        metrics.add(metricNames.getNodeMetricId(id, "node-1"), 3);
+        metrics.reportMetric("V1/QueriesPerSecond/Search", "requests/second", 2.5);
+        exporter.reportMetrics(metrics);
+
+        assertEquals(
+            "elasticsearch_nodestats_http_currentopen_connections{cluster=\"my \\\"cluster\\\"\",node=\"node-1\"} 3\n"
+                + "elasticsearch_queriespersecond_search_requests_second{cluster=\"my \\\"cluster\\\"\"} 2.5\n",
+            text(exporter.getSnapshot()));
+    }
+
+    @Test
+    public void testRenderIndexLabel() throws Exception {
+        MetricNameTable metricNames = metrics.getMetricNames();
+        int id = metricNames.getMetricId("V1/IndexStats/StoreSize", "bytes", false);
+        metrics.add(metricNames.getIndexMetricId(id, "logs"), 1024);
+        exporter.reportMetrics(metrics);
+
+        assertEquals(
+            "elasticsearch_indexstats_storesize_bytes{cluster=\"my \\\"cluster\\\"\",index=\"logs\"} 1024\n",
+            text(exporter.getSnapshot()));
+    }
+
+    @Test
+    public void testRepeatedMetricHasLastValue() throws Exception {
+        metrics.reportMetric("V1/ClusterStats/Nodes/Count/Total", "nodes", 3);
+        metrics.reportMetric("V1/ClusterStats/Status/IsRed", "bool", Double.NaN);
+        metrics.reportMetric("V1/ClusterStats/Nodes/Count/Total", "nodes", 4);
+        exporter.reportMetrics(metrics);
+
+        assertEquals("elasticsearch_clusterstats_status_isred_bool{cluster=\"my \\\"cluster\\\"\"} NaN\n"
+                + "elasticsearch_clusterstats_nodes_count_total_nodes{cluster=\"my \\\"cluster\\\"\"} 4\n",
+            text(exporter.getSnapshot()));
+    }
+
+    @Test
+    public void testSnapshotIsSwapped() throws Exception {
+        metrics.reportMetric("V1/ClusterStats/Nodes/Count/Total", "nodes", 3);
+        exporter.reportMetrics(metrics);
+        PrometheusExporter.Snapshot snapshot = exporter.getSnapshot();
+        assertSame(snapshot.getGzipped(), snapshot.getGzipped());
+
+        metrics.clear();
+        exporter.reportMetrics(metrics);
+
+        assertEquals("", text(exporter.getSnapshot()));
+        assertEquals("elasticsearch_clusterstats_nodes_count_total_nodes{cluster=\"my \\\"cluster\\\"\"} 3\n",
+            text(snapshot));
+    }
+
+    @Test
+    public void testScrape() throws Exception {
+        metrics.reportMetric("V1/ClusterStats/Nodes/Count/Total", "nodes", 3);
+        exporter.reportMetrics(metrics);
+        PrometheusExporter other = new PrometheusExporter("other");
+        endpoint.register(other);
+        metrics.clear();
+        metrics.reportMetric("V1/ClusterStats/Nodes/Count/Total", "nodes", 5);
+        other.reportMetrics(metrics);
+        String expected = "elasticsearch_clusterstats_nodes_count_total_nodes{cluster=\"my \\\"cluster\\\"\"} 3\n"
+            + "elasticsearch_clusterstats_nodes_count_total_nodes{cluster=\"other\"} 5\n";
+
+        assertEquals(expected, scrape(false));
+        assertEquals(expected, scrape(true));
+    }
+
+    private String scrape(boolean gzip) throws Exception {
+        URL url = new URL("http", "127.0.0.1", endpoint.getPort(), PrometheusEndpoint.PATH);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (gzip) {
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+        }
+        assertEquals(200, connection.getResponseCode());
+        InputStream stream = connection.getInputStream();
+        if (gzip) {
+            assertEquals("gzip", connection.getContentEncoding());
+            stream = new GZIPInputStream(stream);
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int c;
+        while ((c = stream.read()) != -1) {
+            body.write(c);
+        }
+        stream.close();
+        return body.toString("UTF-8");
+    }
+}